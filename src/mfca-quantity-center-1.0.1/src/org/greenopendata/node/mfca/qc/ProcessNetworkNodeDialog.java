@@ -0,0 +1,249 @@
+package org.greenopendata.node.mfca.qc;
+
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.BorderFactory;
+import javax.swing.DefaultCellEditor;
+import javax.swing.DefaultListModel;
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSplitPane;
+import javax.swing.JTable;
+import javax.swing.ListSelectionModel;
+import javax.swing.table.DefaultTableModel;
+
+import org.greenopendata.mfca.qc.QcSettingsPane;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeDialogPane;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.NotConfigurableException;
+import org.knime.core.node.port.PortObjectSpec;
+
+/**
+ * This is an implementation of the node dialog of the "MFCA Process Network" node. The processes
+ * are listed on the left, the selected process is edited in the same settings pane of Quantity
+ * Center node, and the connections are listed below.
+ *
+ * @author Green Open Data
+ */
+public class ProcessNetworkNodeDialog extends NodeDialogPane {
+
+	private final List<byte[]> m_processSettings = new ArrayList<byte[]>();
+
+	private final DefaultListModel<String> m_processLabels = new DefaultListModel<String>();
+
+	private final JList<String> m_processList = new JList<String>(m_processLabels);
+
+	private final QcSettingsPane m_pane = new QcSettingsPane();
+
+	/**
+	 * The connections by process number, starting from 1 as shown in the process list.
+	 */
+	private final DefaultTableModel m_connections = new DefaultTableModel(new Object[] { "From process", "To process" }, 0);
+
+	private final JComboBox<Integer> m_processNumbers = new JComboBox<Integer>();
+
+	/**
+	 * The process shown in the settings pane, -1 if there is none.
+	 */
+	private int m_selected = -1;
+
+	/**
+	 * New dialog pane for configuring the node.
+	 */
+	protected ProcessNetworkNodeDialog() {
+		super();
+
+		m_processList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		m_processList.addListSelectionListener(e -> {
+			if (!e.getValueIsAdjusting()) {
+				selectProcess(m_processList.getSelectedIndex());
+			}
+		});
+
+		JButton addProcess = new JButton("Add");
+		addProcess.addActionListener(e -> addProcess());
+		JButton removeProcess = new JButton("Remove");
+		removeProcess.addActionListener(e -> removeProcess());
+		JPanel processButtons = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		processButtons.add(addProcess);
+		processButtons.add(removeProcess);
+
+		JPanel processPanel = new JPanel(new BorderLayout());
+		processPanel.setBorder(BorderFactory.createTitledBorder("Processes"));
+		processPanel.add(new JScrollPane(m_processList), BorderLayout.CENTER);
+		processPanel.add(processButtons, BorderLayout.SOUTH);
+
+		JTable connectionTable = new JTable(m_connections);
+		connectionTable.setDefaultEditor(Object.class, new DefaultCellEditor(m_processNumbers));
+		JButton addConnection = new JButton("Add");
+		addConnection.addActionListener(e -> {
+			if (m_processSettings.size() > 1) {
+				m_connections.addRow(new Object[] { 1, 2 });
+			}
+		});
+		JButton removeConnection = new JButton("Remove");
+		removeConnection.addActionListener(e -> {
+			int row = connectionTable.getSelectedRow();
+			if (row >= 0) {
+				if (connectionTable.isEditing()) {
+					connectionTable.getCellEditor().cancelCellEditing();
+				}
+				m_connections.removeRow(row);
+			}
+		});
+		JPanel connectionButtons = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		connectionButtons.add(addConnection);
+		connectionButtons.add(removeConnection);
+
+		JPanel connectionPanel = new JPanel(new BorderLayout());
+		connectionPanel.setBorder(BorderFactory.createTitledBorder("Connections (Positive Output to material input)"));
+		connectionPanel.add(new JScrollPane(connectionTable), BorderLayout.CENTER);
+		connectionPanel.add(connectionButtons, BorderLayout.SOUTH);
+
+		JSplitPane networkPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, processPanel, connectionPanel);
+		networkPane.setResizeWeight(0.6);
+
+		JPanel mainPanel = new JPanel(new BorderLayout());
+		mainPanel.add(new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, networkPane, m_pane), BorderLayout.CENTER);
+		super.addTab("Process Network", mainPanel);
+	}
+
+	/**
+	 * Keep the settings of the process in the settings pane and show the settings of another process.
+	 */
+	private void selectProcess(final int process) {
+		if (process == m_selected) {
+			return;
+		}
+		storeSelectedProcess();
+		m_selected = process;
+		if (process >= 0) {
+			QuantityCenterDialogComponent.restoreSettings(m_pane, m_processSettings.get(process));
+		}
+		m_pane.setVisible(process >= 0);
+	}
+
+	private void storeSelectedProcess() {
+		if (m_selected >= 0 && m_selected < m_processSettings.size()) {
+			m_processSettings.set(m_selected, QuantityCenterDialogComponent.encodeSettings(m_pane));
+			m_processLabels.set(m_selected, createLabel(m_selected));
+		}
+	}
+
+	private void addProcess() {
+		storeSelectedProcess();
+		m_pane.reset();
+		m_processSettings.add(QuantityCenterDialogComponent.encodeSettings(m_pane));
+		m_processLabels.addElement(createLabel(m_processSettings.size() - 1));
+		m_processNumbers.addItem(m_processSettings.size());
+		m_selected = -1;
+		m_processList.setSelectedIndex(m_processSettings.size() - 1);
+	}
+
+	/**
+	 * Remove the selected process and its connections, the processes after it are renumbered.
+	 */
+	private void removeProcess() {
+		final int process = m_processList.getSelectedIndex();
+		if (process < 0) {
+			return;
+		}
+		m_selected = -1;
+		m_processSettings.remove(process);
+		for(int row = m_connections.getRowCount() - 1; row >= 0; row--) {
+			int from = (Integer) m_connections.getValueAt(row, 0) - 1;
+			int to = (Integer) m_connections.getValueAt(row, 1) - 1;
+			if (from == process || to == process) {
+				m_connections.removeRow(row);
+				continue;
+			}
+			m_connections.setValueAt((from > process ? from : from + 1), row, 0);
+			m_connections.setValueAt((to > process ? to : to + 1), row, 1);
+		}
+		refreshProcesses();
+		m_processList.setSelectedIndex(Math.min(process, m_processSettings.size() - 1));
+	}
+
+	private void refreshProcesses() {
+		m_processLabels.clear();
+		m_processNumbers.removeAllItems();
+		for(int p = 0; p < m_processSettings.size(); p++) {
+			m_processLabels.addElement(createLabel(p));
+			m_processNumbers.addItem(p + 1);
+		}
+	}
+
+	private String createLabel(final int process) {
+		String name = null;
+		try {
+			QcDecodedModel model = QcDecodedModel.decode(m_processSettings.get(process));
+			name = (model != null) ? model.getProcess() : null;
+		}
+		catch (InvalidSettingsException e) {
+			//: The process is shown without name.
+		}
+		return (process + 1) + ": " + ((name == null || name.isEmpty()) ? "(unnamed)" : name);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void loadSettingsFrom(final NodeSettingsRO settings, final PortObjectSpec[] specs)
+			throws NotConfigurableException {
+		QcProcessNetwork network;
+		try {
+			network = QcProcessNetwork.loadSettingsFrom(settings);
+		}
+		catch (InvalidSettingsException e) {
+			network = QcProcessNetwork.empty();
+		}
+
+		m_selected = -1;
+		m_processList.clearSelection();
+		m_processSettings.clear();
+		for(int p = 0; p < network.getProcessCount(); p++) {
+			m_processSettings.add(network.getProcessSettings(p));
+		}
+		m_connections.setRowCount(0);
+		for(int c = 0; c < network.getConnectionCount(); c++) {
+			m_connections.addRow(new Object[] { network.getConnectionFrom(c) + 1, network.getConnectionTo(c) + 1 });
+		}
+		refreshProcesses();
+		m_pane.setVisible(false);
+		if (!m_processSettings.isEmpty()) {
+			m_processList.setSelectedIndex(0);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void saveSettingsTo(final NodeSettingsWO settings) throws InvalidSettingsException {
+		if (m_selected >= 0) {
+			if (!m_pane.validateSettings()) {
+				throw new InvalidSettingsException("Check the settings of the process " + (m_selected + 1) + ".");
+			}
+			storeSelectedProcess();
+		}
+
+		final int[] from = new int[m_connections.getRowCount()];
+		final int[] to = new int[from.length];
+		for(int row = 0; row < from.length; row++) {
+			from[row] = (Integer) m_connections.getValueAt(row, 0) - 1;
+			to[row] = (Integer) m_connections.getValueAt(row, 1) - 1;
+		}
+		QcProcessNetwork network = new QcProcessNetwork(m_processSettings, from, to);
+		network.topologicalOrder();
+		network.saveSettingsTo(settings);
+	}
+}
@@ -0,0 +1,62 @@
+package org.greenopendata.node.mfca.qc;
+
+import org.knime.core.node.NodeDialogPane;
+import org.knime.core.node.NodeFactory;
+import org.knime.core.node.NodeView;
+
+/**
+ * This is an example implementation of the node factory of the
+ * "MFCA Process Network" node.
+ *
+ * @author Green Open Data
+ */
+public class ProcessNetworkNodeFactory 
+        extends NodeFactory<ProcessNetworkNodeModel> {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ProcessNetworkNodeModel createNodeModel() {
+		// Create and return a new node model.
+        return new ProcessNetworkNodeModel();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getNrNodeViews() {
+		// The number of views the node should have, in this cases there is none.
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NodeView<ProcessNetworkNodeModel> createNodeView(final int viewIndex,
+            final ProcessNetworkNodeModel nodeModel) {
+		// We return null as this example node does not provide a view. Also see "getNrNodeViews()".
+		return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasDialog() {
+		// Indication whether the node has a dialog or not.
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NodeDialogPane createNodeDialogPane() {
+		// This example node has a dialog, hence we create and return it here. Also see "hasDialog()".
+        return new ProcessNetworkNodeDialog();
+    }
+}
+
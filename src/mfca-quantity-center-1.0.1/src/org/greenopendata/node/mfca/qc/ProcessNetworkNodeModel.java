@@ -0,0 +1,307 @@
+package org.greenopendata.node.mfca.qc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.greenopendata.mfca.qc.QcCalcRowItem;
+import org.greenopendata.mfca.qc.QcRawItem;
+import org.greenopendata.mfca.qc.QcRawItemType;
+import org.greenopendata.mfca.qc.po.ProductOutputRowItem;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.KNIMEConstants;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.NodeModel;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+
+/**
+ * This class defining MFCA Process Network node's configuration. The node holds the settings of
+ * several quantity centers and their connections, and evaluates the whole network in one execution.
+ *
+ * @author Green Open Data
+ */
+public final class ProcessNetworkNodeModel extends NodeModel {
+
+	private static final NodeLogger LOGGER = NodeLogger.getLogger(ProcessNetworkNodeModel.class);
+
+	/**
+	 * The processes and connections of the network.
+	 */
+	private QcProcessNetwork m_network = QcProcessNetwork.empty();
+
+	/**
+	 * The decoded settings of every process, a process is decoded again only when its settings bytes change.
+	 */
+	private QcDecodedModel[] m_models = new QcDecodedModel[0];
+
+	/**
+	 * The decoded settings by their settings bytes, to find the unchanged processes in one lookup.
+	 */
+	private Map<ByteBuffer, QcDecodedModel> m_decodedModels = new HashMap<>();
+
+	/**
+	 * Constructor for the node model.
+	 */
+	protected ProcessNetworkNodeModel() {
+		/**
+		 * There is no input port and four output ports, the same as Quantity Center node for the whole network.
+		 * Output ports: Positive Output, Negative Loss, Calculation and Raw Data.
+		 */
+		super(0, 4);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected DataTableSpec[] configure(final DataTableSpec[] inSpecs) throws InvalidSettingsException {
+		checkConfigured();
+		return createOutputTableSpecs();
+	}
+
+	private void checkConfigured() throws InvalidSettingsException {
+		if (m_models.length == 0) {
+			throw new InvalidSettingsException("Please add the processes of the network before execute!");
+		}
+		for(int p = 0; p < m_models.length; p++) {
+			if (m_models[p] == null) {
+				throw new InvalidSettingsException("Please configure the process " + (p + 1) + " before execute!");
+			}
+		}
+	}
+
+	private static DataTableSpec[] createOutputTableSpecs() {
+		DataTableSpec[] outputTableSpec = new DataTableSpec[4];
+		outputTableSpec[0] = createProcessTableSpec(QuantityCenterNodeModel.createProductOutputTableSpec());
+		outputTableSpec[1] = createProcessTableSpec(QuantityCenterNodeModel.createNegativeOutputTableSpec());
+		outputTableSpec[2] = QuantityCenterNodeModel.createCalculationTableSpec(false, false);
+		outputTableSpec[3] = QuantityCenterNodeModel.createRawDataTableSpec();
+		return outputTableSpec;
+	}
+
+	/**
+	 * The spec of Quantity Center node with a leading process column.
+	 */
+	private static DataTableSpec createProcessTableSpec(final DataTableSpec spec) {
+		List<DataColumnSpec> columnSpecs = new ArrayList<>();
+		columnSpecs.add((new DataColumnSpecCreator("process", StringCell.TYPE)).createSpec());
+		for(int i = 0; i < spec.getNumColumns(); i++) {
+			columnSpecs.add(spec.getColumnSpec(i));
+		}
+		return new DataTableSpec(columnSpecs.toArray(new DataColumnSpec[columnSpecs.size()]));
+	}
+
+	/**
+	 * NODE EXECUTION
+	 */
+	@Override
+	protected BufferedDataTable[] execute(final BufferedDataTable[] inData, final ExecutionContext exec) throws Exception {
+		checkConfigured();
+		LOGGER.info("Executing process network of " + m_models.length + " processes.");
+
+		/*
+		 * The calculation of every process, scheduled in topological order.
+		 */
+		final QcCalcAccumulator[] totals = m_network.evaluate(m_models,
+				KNIMEConstants.GLOBAL_THREAD_POOL.createSubPool(), exec.createSubProgress(0.5));
+		final int[] order = m_network.topologicalOrder();
+
+		final DataTableSpec[] outputTableSpec = createOutputTableSpecs();
+		final BufferedDataContainer[] containers = new BufferedDataContainer[4];
+		for(int i = 0; i < containers.length; ++i) {
+			containers[i] = exec.createDataContainer(outputTableSpec[i]);
+		}
+
+		/*
+		 * Output Port 0 - Positive Output of the processes without downstream process, they are the
+		 * products of the network. Output Port 1 - Negative Loss of every process.
+		 */
+		final QcCellCache cellCache = new QcCellCache();
+		final DataCell[] productCells = new DataCell[7];
+		final DataCell[] rawCells = new DataCell[8];
+		long positiveRow = 0;
+		long negativeRow = 0;
+		for(int p : order) {
+			final QcDecodedModel model = m_models[p];
+			for(ProductOutputRowItem r : model.getProductOutputRowItems()) {
+				if (m_network.isSink(p)) {
+					containers[0].addRowToTable(new DefaultRow(QcCellCache.rowKey(positiveRow++),
+							setProductCells(productCells, cellCache, model.getProcess(), r, r.getQuantityPass())));
+				}
+				containers[1].addRowToTable(new DefaultRow(QcCellCache.rowKey(negativeRow++),
+						setProductCells(productCells, cellCache, model.getProcess(), r, r.getQuantityNG())));
+			}
+			exec.checkCanceled();
+		}
+
+		/*
+		 * Output Port 2 - Calculations, one row for every process.
+		 */
+		int calcRow = 0;
+		for(int p : order) {
+			QcCalcRowItem r = totals[p].toCalcRowItem(m_models[p].getProcess());
+
+			containers[2].addRowToTable(new DefaultRow(QcCellCache.rowKey(calcRow++),
+				cellCache.get(r.getProcess()),
+				new DoubleCell(r.getMaterial_input()),
+				new DoubleCell(r.getMaterial_cost()),
+				new DoubleCell(r.getEnergy_cost()),
+				new DoubleCell(r.getSystem_cost()),
+				new DoubleCell(r.getWaste_quantity()),
+				new DoubleCell(r.getWaste_cost()),
+				new DoubleCell(r.getPositive_product()),
+				new DoubleCell(r.getPositive_output_cost()),
+				new DoubleCell(r.getNagative_loss()),
+				new DoubleCell(r.getNagative_loss_cost()),
+				new DoubleCell(r.getBalance())));
+		}
+
+		/*
+		 * Output Port 3 - Raw Items, for every process the material from upstream processes first and
+		 * then the items of its settings, the same rows of a chain of Quantity Center nodes.
+		 */
+		long rawRow = 0;
+		for(int p : order) {
+			final String process = m_models[p].getProcess();
+			for(int u : m_network.getUpstream(p)) {
+				for(ProductOutputRowItem r : m_models[u].getProductOutputRowItems()) {
+					containers[3].addRowToTable(new DefaultRow(QcCellCache.rowKey(rawRow++), setRawCells(rawCells,
+							cellCache, process, QcRawItemType.DYNAMIC_MATERIAL_INPUT, r.getPartNo(), r.getPartName(),
+							r.getUnit(), r.getQuantityPass(), r.getUnitPrice(), r.getUnitPrice() * r.getQuantityPass())));
+				}
+			}
+			for(QcRawItem r : m_models[p].getRawItems()) {
+				containers[3].addRowToTable(new DefaultRow(QcCellCache.rowKey(rawRow++), setRawCells(rawCells,
+						cellCache, r.getProcess(), r.getType(), r.getItemNo(), r.getItemName(), r.getUnit(),
+						r.getQuantity(), r.getUnit_price(), r.getMonetary())));
+			}
+			exec.checkCanceled();
+		}
+
+		BufferedDataTable[] outputTables = new BufferedDataTable[4];
+		for(int i = 0; i < containers.length; ++i) {
+			containers[i].close();
+			outputTables[i] = containers[i].getTable();
+		}
+		return outputTables;
+	}
+
+	/**
+	 * Fill the row buffer with the cells of a Positive Output or Negative Loss row, the repeated texts
+	 * from the cell cache. A DefaultRow copies the cells, so the buffer is reused for every row.
+	 *
+	 * @return the buffer.
+	 */
+	private static DataCell[] setProductCells(final DataCell[] cells, final QcCellCache cellCache,
+			final String process, final ProductOutputRowItem r, final double quantity) {
+		cells[0] = cellCache.get(process);
+		cells[1] = cellCache.get(r.getPartNo());
+		cells[2] = cellCache.get(r.getPartName());
+		cells[3] = cellCache.get(r.getUnit());
+		cells[4] = new DoubleCell(r.getUnitPrice());
+		cells[5] = new DoubleCell(quantity);
+		cells[6] = new DoubleCell(r.getUnitPrice() * quantity);
+		return cells;
+	}
+
+	/**
+	 * Fill the row buffer with the cells of a Raw Data row, see
+	 * {@link #setProductCells(DataCell[], QcCellCache, String, ProductOutputRowItem, double)}.
+	 *
+	 * @return the buffer.
+	 */
+	private static DataCell[] setRawCells(final DataCell[] cells, final QcCellCache cellCache, final String process,
+			final String type, final String itemNo, final String itemName, final String unit, final double quantity,
+			final double unitPrice, final double monetary) {
+		cells[0] = cellCache.get(process);
+		cells[1] = cellCache.get(type);
+		cells[2] = cellCache.get(itemNo);
+		cells[3] = cellCache.get(itemName);
+		cells[4] = cellCache.get(unit);
+		cells[5] = new DoubleCell(quantity);
+		cells[6] = new DoubleCell(unitPrice);
+		cells[7] = new DoubleCell(monetary);
+		return cells;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void saveSettingsTo(final NodeSettingsWO settings) {
+		m_network.saveSettingsTo(settings);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void loadValidatedSettingsFrom(final NodeSettingsRO settings) throws InvalidSettingsException {
+		final QcProcessNetwork network = QcProcessNetwork.loadSettingsFrom(settings);
+
+		/*
+		 * Only the processes whose settings bytes changed are decoded again, processes with the same
+		 * settings bytes share one decoded model.
+		 */
+		final QcDecodedModel[] models = new QcDecodedModel[network.getProcessCount()];
+		final Map<ByteBuffer, QcDecodedModel> decodedModels = new HashMap<>();
+		for(int p = 0; p < models.length; p++) {
+			final byte[] bArr = network.getProcessSettings(p);
+			if (bArr == null) {
+				continue;
+			}
+			final ByteBuffer key = ByteBuffer.wrap(bArr);
+			QcDecodedModel model = decodedModels.get(key);
+			if (model == null) {
+				model = m_decodedModels.get(key);
+				if (model == null) {
+					model = QcDecodedModel.decode(bArr);
+				}
+				decodedModels.put(key, model);
+			}
+			models[p] = model;
+		}
+		m_network = network;
+		m_models = models;
+		m_decodedModels = decodedModels;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void validateSettings(final NodeSettingsRO settings) throws InvalidSettingsException {
+		QcProcessNetwork.loadSettingsFrom(settings);
+	}
+
+	@Override
+	protected void loadInternals(File nodeInternDir, ExecutionMonitor exec)
+			throws IOException, CanceledExecutionException {
+	}
+
+	@Override
+	protected void saveInternals(File nodeInternDir, ExecutionMonitor exec)
+			throws IOException, CanceledExecutionException {
+	}
+
+	@Override
+	protected void reset() {
+	}
+}
@@ -0,0 +1,378 @@
+package org.greenopendata.node.mfca.qc;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import org.greenopendata.mfca.qc.AbsQcRowItem;
+import org.greenopendata.mfca.qc.QcRawItemType;
+import org.greenopendata.mfca.qc.ec.EnergyCostRowItem;
+import org.greenopendata.mfca.qc.mi.MaterialInputRowItem;
+import org.greenopendata.mfca.qc.po.ProductOutputRowItem;
+import org.greenopendata.mfca.qc.sc.SystemCostRowItem;
+import org.greenopendata.mfca.qc.wt.WasteMgmtCostRowItem;
+
+/**
+ * Bulk import of the rows of a settings table from delimited text, such as a CSV file or cells
+ * copied from a spreadsheet. The columns are the ones of the table in the settings dialog, in the
+ * same order; a header line with these names is recognized and skipped. The delimiter is a tab, a
+ * semicolon or a comma, whichever the first line has. Numbers have a period as the decimal
+ * separator and no grouping, in any locale, so that the same file is imported the same everywhere.
+ * A yield or a load is a fraction up to 1, such as 0.95, or a percentage with the percent sign,
+ * such as 95%. A bare number above 1 is rejected rather than guessed: the override flow variables of
+ * a yield are percentages without the sign, see QcParameterOverrides.Slot#MATERIAL_YIELD, and a
+ * "95" copied from them would otherwise be a yield of 9500%.
+ *
+ * The text is parsed and validated off the EDT. The rows are appended to the settings model in one
+ * step by {@link #append}, the settings pane is restored from the result once instead of receiving
+ * every row as an edit.
+ *
+ * @author Green Open Data
+ */
+final class QcBulkImport {
+	/**
+	 * The number of invalid lines reported, the other errors are counted only.
+	 */
+	private static final int MAX_ERRORS = 20;
+
+	/**
+	 * The settings tables and their columns.
+	 */
+	enum Target {
+		MATERIAL_INPUT("Material input", "Part No", "Part Name", "Unit", "Unit Price", "Std. Usage", "Yield",
+				"Act. Usage"),
+		PRODUCT_OUTPUT("Product output", "Part No", "Part Name", "Unit", "Unit Price", "Qty. Pass", "Qty. NG"),
+		ENERGY_COST("Energy cost", "Consumer", "Unit", "Unit Price", "Std. Usage", "Load", "Act. Usage"),
+		SYSTEM_COST("System cost", "Item", "Unit", "Unit Price", "Std. Usage", "Act. Usage"),
+		WASTE_COST("Waste management cost", "Item", "Unit", "Unit Cost", "Quantity");
+
+		private final String m_label;
+
+		private final String[] m_columns;
+
+		Target(final String label, final String... columns) {
+			m_label = label;
+			m_columns = columns;
+		}
+
+		String[] getColumns() {
+			return m_columns.clone();
+		}
+
+		@Override
+		public String toString() {
+			return m_label;
+		}
+	}
+
+	/**
+	 * The rows parsed from the text, or the lines which are not valid.
+	 */
+	static final class Result {
+		private final Target m_target;
+
+		private final List<AbsQcRowItem> m_rows;
+
+		private final List<String> m_errors;
+
+		private final int m_errorCount;
+
+		private Result(final Target target, final List<AbsQcRowItem> rows, final List<String> errors,
+				final int errorCount) {
+			m_target = target;
+			m_rows = Collections.unmodifiableList(rows);
+			m_errors = Collections.unmodifiableList(errors);
+			m_errorCount = errorCount;
+		}
+
+		Target getTarget() {
+			return m_target;
+		}
+
+		/**
+		 * @return the rows in the order of the lines.
+		 */
+		List<AbsQcRowItem> getRows() {
+			return m_rows;
+		}
+
+		/**
+		 * @return true if every line is valid.
+		 */
+		boolean isValid() {
+			return m_errorCount == 0;
+		}
+
+		/**
+		 * @return the messages of the first invalid lines, and the number of the other ones.
+		 */
+		String getErrorMessage() {
+			final StringBuilder sb = new StringBuilder();
+			for(String e : m_errors) {
+				sb.append(e).append('\n');
+			}
+			if (m_errorCount > m_errors.size()) {
+				sb.append("... and ").append(m_errorCount - m_errors.size()).append(" more invalid lines.\n");
+			}
+			return sb.toString();
+		}
+	}
+
+	private final Target m_target;
+
+	/**
+	 * A decimal number with a period as the decimal separator, an optional exponent and no grouping.
+	 */
+	private static final Pattern NUMBER = Pattern.compile("[+-]?(\\d+(\\.\\d*)?|\\.\\d+)([eE][+-]?\\d+)?");
+
+	QcBulkImport(final Target target) {
+		m_target = target;
+	}
+
+	/**
+	 * Parse and validate the text, empty lines are ignored.
+	 *
+	 * @param text the delimited text, closed by the caller.
+	 * @param checkCanceled called every 1024 lines, it may throw to stop the parsing.
+	 */
+	Result parse(final Reader text, final Runnable checkCanceled) throws IOException {
+		final BufferedReader reader = new BufferedReader(text);
+		final List<AbsQcRowItem> rows = new ArrayList<>();
+		final List<String> errors = new ArrayList<>();
+		int errorCount = 0;
+		char delimiter = 0;
+		String line;
+		int lineNo = 0;
+		while ((line = reader.readLine()) != null) {
+			if ((++lineNo & 1023) == 0) {
+				checkCanceled.run();
+			}
+			if (line.trim().isEmpty()) {
+				continue;
+			}
+			if (delimiter == 0) {
+				delimiter = detectDelimiter(line);
+				if (isHeader(split(line, delimiter))) {
+					continue;
+				}
+			}
+			try {
+				rows.add(createRow(split(line, delimiter)));
+			}
+			catch (IllegalArgumentException e) {
+				if (++errorCount <= MAX_ERRORS) {
+					errors.add("Line " + lineNo + ": " + e.getMessage());
+				}
+			}
+		}
+		return new Result(m_target, rows, errors, errorCount);
+	}
+
+	private static char detectDelimiter(final String line) {
+		if (line.indexOf('\t') >= 0) {
+			return '\t';
+		}
+		return (line.indexOf(';') >= 0) ? ';' : ',';
+	}
+
+	/**
+	 * Split a line at the delimiter, a field may be quoted with double quotes and a quote in a
+	 * quoted field is doubled.
+	 */
+	static List<String> split(final String line, final char delimiter) {
+		final List<String> fields = new ArrayList<>();
+		final StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for(int i = 0; i < line.length(); i++) {
+			final char c = line.charAt(i);
+			if (quoted) {
+				if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					field.append('"');
+					i++;
+				}
+				else if (c == '"') {
+					quoted = false;
+				}
+				else {
+					field.append(c);
+				}
+			}
+			else if (c == '"' && field.toString().trim().isEmpty()) {
+				field.setLength(0);
+				quoted = true;
+			}
+			else if (c == delimiter) {
+				fields.add(field.toString().trim());
+				field.setLength(0);
+			}
+			else {
+				field.append(c);
+			}
+		}
+		fields.add(field.toString().trim());
+		return fields;
+	}
+
+	private boolean isHeader(final List<String> fields) {
+		final String[] columns = m_target.m_columns;
+		if (fields.size() < columns.length) {
+			return false;
+		}
+		for(int i = 0; i < columns.length; i++) {
+			if (!normalize(columns[i]).equals(normalize(fields.get(i)))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String normalize(final String name) {
+		return name.toLowerCase(Locale.ROOT).replaceAll("[^a-z]", "");
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the fields are not a valid row.
+	 */
+	private AbsQcRowItem createRow(final List<String> fields) {
+		final int columns = m_target.m_columns.length;
+		if (fields.size() != columns) {
+			throw new IllegalArgumentException(columns + " columns expected, " + fields.size() + " found.");
+		}
+		switch (m_target) {
+		case MATERIAL_INPUT: {
+			final MaterialInputRowItem r = new MaterialInputRowItem();
+			r.setSource(QcRawItemType.STATIC_MATERIAL_INPUT);
+			r.setPartNo(text(fields, 0));
+			r.setPartName(text(fields, 1));
+			r.setUnit(text(fields, 2));
+			r.setUnitPrice(number(fields, 3));
+			r.setStdUsage(number(fields, 4));
+			r.setYield(percent(fields, 5));
+			r.setActUsage(number(fields, 6));
+			return r;
+		}
+		case PRODUCT_OUTPUT: {
+			final ProductOutputRowItem r = new ProductOutputRowItem();
+			r.setPartNo(text(fields, 0));
+			r.setPartName(text(fields, 1));
+			r.setUnit(text(fields, 2));
+			r.setUnitPrice(number(fields, 3));
+			r.setQuantityPass(number(fields, 4));
+			r.setQuantityNG(number(fields, 5));
+			return r;
+		}
+		case ENERGY_COST: {
+			final EnergyCostRowItem r = new EnergyCostRowItem();
+			r.setItem(text(fields, 0));
+			r.setUnit(text(fields, 1));
+			r.setUnitPrice(number(fields, 2));
+			r.setStdUsage(number(fields, 3));
+			r.setLoad(percent(fields, 4));
+			r.setActUsage(number(fields, 5));
+			return r;
+		}
+		case SYSTEM_COST: {
+			final SystemCostRowItem r = new SystemCostRowItem();
+			r.setItem(text(fields, 0));
+			r.setUnit(text(fields, 1));
+			r.setUnitPrice(number(fields, 2));
+			r.setStdUsage(number(fields, 3));
+			r.setActUsage(number(fields, 4));
+			return r;
+		}
+		default: {
+			final WasteMgmtCostRowItem r = new WasteMgmtCostRowItem();
+			r.setItem(text(fields, 0));
+			r.setUnit(text(fields, 1));
+			r.setUnitPrice(number(fields, 2));
+			r.setQuantity(number(fields, 3));
+			return r;
+		}
+		}
+	}
+
+	private String text(final List<String> fields, final int column) {
+		final String value = fields.get(column);
+		if (value.isEmpty()) {
+			throw new IllegalArgumentException(m_target.m_columns[column] + " is empty.");
+		}
+		return value;
+	}
+
+	/**
+	 * A number with a period as the decimal separator, the whole field must be the number. A field
+	 * such as "12,5" or "1,250.00" is rejected instead of read as another number.
+	 */
+	private Double number(final List<String> fields, final int column) {
+		final String value = fields.get(column);
+		if (!NUMBER.matcher(value).matches()) {
+			throw new IllegalArgumentException(m_target.m_columns[column] 
+					+ " must be a number with a period as the decimal separator and no grouping: \"" + value + "\".");
+		}
+		return Double.parseDouble(value);
+	}
+
+	/**
+	 * A fraction up to 1, or a percentage with the percent sign, as read by the row dialogs. The
+	 * number is read as by {@link #number}.
+	 */
+	private Double percent(final List<String> fields, final int column) {
+		final String value = fields.get(column);
+		final boolean percentSign = value.endsWith("%");
+		final String number = percentSign ? value.substring(0, value.length() - 1).trim() : value;
+		if (!NUMBER.matcher(number).matches()) {
+			throw new IllegalArgumentException(m_target.m_columns[column] 
+					+ " must be a fraction or a percentage with a period as the decimal separator: \"" + value + "\".");
+		}
+		if (percentSign) {
+			return Double.parseDouble(number) / 100;
+		}
+		final double fraction = Double.parseDouble(number);
+		if (fraction > 1) {
+			throw new IllegalArgumentException(m_target.m_columns[column] + " is a fraction up to 1 or a percentage"
+					+ " with the percent sign, such as 0.95 or 95%: \"" + value + "\" is ambiguous.");
+		}
+		return fraction;
+	}
+
+	/**
+	 * Append the rows to their table of the settings.
+	 *
+	 * @param model the current settings, decoded from the settings pane.
+	 * @param result the valid rows to append.
+	 * @return the settings with the rows appended.
+	 */
+	static QcDecodedModel append(final QcDecodedModel model, final Result result) {
+		final List<MaterialInputRowItem> materialInput = new ArrayList<>(model.getMaterialInputItems());
+		final List<ProductOutputRowItem> productOutput = new ArrayList<>(model.getProductOutputRowItems());
+		final List<EnergyCostRowItem> energyCost = new ArrayList<>(model.getEnergyCostItems());
+		final List<SystemCostRowItem> systemCost = new ArrayList<>(model.getSystemCostItems());
+		final List<WasteMgmtCostRowItem> wasteMgmtCost = new ArrayList<>(model.getWasteMgmtCostItems());
+		for(AbsQcRowItem r : result.getRows()) {
+			switch (result.getTarget()) {
+			case MATERIAL_INPUT:
+				materialInput.add((MaterialInputRowItem) r);
+				break;
+			case PRODUCT_OUTPUT:
+				productOutput.add((ProductOutputRowItem) r);
+				break;
+			case ENERGY_COST:
+				energyCost.add((EnergyCostRowItem) r);
+				break;
+			case SYSTEM_COST:
+				systemCost.add((SystemCostRowItem) r);
+				break;
+			default:
+				wasteMgmtCost.add((WasteMgmtCostRowItem) r);
+				break;
+			}
+		}
+		return new QcDecodedModel(null, model.getProcess(), model.getNote(), model.getDisplayUnit(), materialInput,
+				productOutput, energyCost, systemCost, wasteMgmtCost);
+	}
+}
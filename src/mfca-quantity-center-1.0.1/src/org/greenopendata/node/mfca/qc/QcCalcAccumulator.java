@@ -0,0 +1,529 @@
+package org.greenopendata.node.mfca.qc;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+import org.greenopendata.mfca.qc.QcCalcRowItem;
+import org.greenopendata.mfca.qc.QcRawItem;
+import org.greenopendata.mfca.qc.QcRawItemType;
+
+/**
+ * Running totals of MFCA calculation. The accumulator is fed once per item, so the
+ * material input rows can be summed while they are streamed and no intermediate list
+ * of material rows is needed.
+ *
+ * The result is the same as QcSettingsModel.calculate(): the static items must be added
+ * before the dynamic material rows to keep the same summation order, the material totals
+ * are rounded to two fraction digits.
+ *
+ * Besides one row at a time, the material rows can be added by chunk of primitive columns,
+ * see {@link QcMaterialColumns}. The rows of a chunk are summed in the same order, so both
+ * ways give exactly the same totals.
+ *
+ * In fixed-point arithmetic every value added is rounded to six fraction digits, half to even,
+ * and summed as a 128-bit integer. The sums are exact, so the totals are the same in any order of
+ * the rows, such as when the rows are summed by chunk on any number of threads or spilled to disk.
+ * The double totals are made from the integers when the calculation values are evaluated.
+ *
+ * @author Green Open Data
+ */
+final class QcCalcAccumulator {
+	/**
+	 * The arithmetic of the totals.
+	 */
+	enum Arithmetic {
+		/** Double sums, the same as earlier versions. */
+		FLOATING_POINT("Floating point"),
+		/** Exact sums of the values rounded to six fraction digits. */
+		FIXED_POINT("Fixed point (6 fraction digits), the same totals in any order");
+
+		private final String m_label;
+
+		Arithmetic(final String label) {
+			m_label = label;
+		}
+
+		String getLabel() {
+			return m_label;
+		}
+
+		/**
+		 * @return the arithmetic of the settings value, FLOATING_POINT if it is unknown.
+		 */
+		static Arithmetic fromSettings(final String value) {
+			for(Arithmetic a : values()) {
+				if (a.name().equals(value)) {
+					return a;
+				}
+			}
+			return FLOATING_POINT;
+		}
+	}
+
+	/**
+	 * The fixed-point values are in millionths.
+	 */
+	private static final double SCALE = 1e6;
+
+	private static final int FIXED_SCALE_DIGITS = 6;
+
+	/**
+	 * 1.5 * 2^52, a value below 2^51 plus it is rounded to an integer in the low bits of the sum.
+	 */
+	private static final double ROUNDING_BIAS = 0x1.8p52;
+	private static final long ROUNDING_BIAS_BITS = Double.doubleToRawLongBits(ROUNDING_BIAS);
+
+	/**
+	 * Rows summed in a long before they are added to the 128-bit totals, 1024 values below 2^51
+	 * do not overflow.
+	 */
+	private static final int FIXED_BLOCK_SIZE = 1024;
+
+	private static final int TOTAL_COUNT = 8;
+
+	/**
+	 * The first six totals have the index of their calculation value, the outputs are after them.
+	 */
+	private static final int TOTAL_POSITIVE_OUTPUT = 6;
+	private static final int TOTAL_NEGATIVE_LOSS = 7;
+
+	/**
+	 * The totals in fixed-point arithmetic, a high and a low word for every total in the order of
+	 * the double totals; null in floating-point arithmetic.
+	 */
+	private final long[] m_fixed;
+
+	/**
+	 * True if the double totals are not yet made from the fixed-point totals.
+	 */
+	private boolean m_stale = false;
+
+	private double m_materialInput = 0;
+	private double m_materialCost = 0;
+	private double m_energyCost = 0;
+	private double m_systemCost = 0;
+	private double m_wasteQuantity = 0;
+	private double m_wasteCost = 0;
+	private double m_positiveOutput = 0;
+	private double m_negativeLoss = 0;
+
+	QcCalcAccumulator() {
+		this(Arithmetic.FLOATING_POINT);
+	}
+
+	QcCalcAccumulator(final Arithmetic arithmetic) {
+		m_fixed = (arithmetic == Arithmetic.FIXED_POINT) ? new long[2 * TOTAL_COUNT] : null;
+	}
+
+	/**
+	 * Copy the totals of other accumulator, in the same arithmetic.
+	 */
+	QcCalcAccumulator(final QcCalcAccumulator other) {
+		m_fixed = (other.m_fixed != null) ? other.m_fixed.clone() : null;
+		m_stale = other.m_stale;
+		m_materialInput = other.m_materialInput;
+		m_materialCost = other.m_materialCost;
+		m_energyCost = other.m_energyCost;
+		m_systemCost = other.m_systemCost;
+		m_wasteQuantity = other.m_wasteQuantity;
+		m_wasteCost = other.m_wasteCost;
+		m_positiveOutput = other.m_positiveOutput;
+		m_negativeLoss = other.m_negativeLoss;
+	}
+
+	Arithmetic getArithmetic() {
+		return (m_fixed != null) ? Arithmetic.FIXED_POINT : Arithmetic.FLOATING_POINT;
+	}
+
+	/**
+	 * Add one material input row, static or dynamic.
+	 */
+	void addMaterial(final double unitPrice, final double quantity) {
+		if (m_fixed != null) {
+			addFixed(MATERIAL_INPUT, quantity);
+			addFixed(MATERIAL_COST, unitPrice * quantity);
+			return;
+		}
+		m_materialInput += quantity;
+		m_materialCost += unitPrice * quantity;
+	}
+
+	/**
+	 * Add the material input rows of primitive columns, from (inclusive) to (exclusive).
+	 */
+	void addMaterials(final double[] unitPrice, final double[] quantity, final int from, final int to) {
+		if (m_fixed != null) {
+			addFixedMaterials(unitPrice, quantity, from, to);
+			return;
+		}
+		double materialInput = m_materialInput;
+		double materialCost = m_materialCost;
+		for(int i = from; i < to; i++) {
+			materialInput += quantity[i];
+			materialCost += unitPrice[i] * quantity[i];
+		}
+		m_materialInput = materialInput;
+		m_materialCost = materialCost;
+	}
+
+	/**
+	 * The same as {@link #addFixed} row by row, by blocks of rows. A block of values below 2^51
+	 * millionths is rounded by adding {@link #ROUNDING_BIAS}, which leaves the rounded value in the
+	 * low bits of the double, and summed in a long without carry. A block with a larger value is
+	 * added by {@link #addFixed}, the rounding is the same.
+	 */
+	private void addFixedMaterials(final double[] unitPrice, final double[] quantity, final int from, final int to) {
+		for(int block = from; block < to; block += FIXED_BLOCK_SIZE) {
+			final int end = Math.min(to, block + FIXED_BLOCK_SIZE);
+			long input = 0;
+			long cost = 0;
+			double max = 0;
+			for(int i = block; i < end; i++) {
+				final double scaledInput = quantity[i] * SCALE;
+				final double scaledCost = unitPrice[i] * quantity[i] * SCALE;
+				max = Math.max(max, Math.abs(scaledInput) + Math.abs(scaledCost));
+				input += Double.doubleToRawLongBits(scaledInput + ROUNDING_BIAS) - ROUNDING_BIAS_BITS;
+				cost += Double.doubleToRawLongBits(scaledCost + ROUNDING_BIAS) - ROUNDING_BIAS_BITS;
+			}
+			if (max < 0x1p51) {
+				addFixedScaled(MATERIAL_INPUT, input);
+				addFixedScaled(MATERIAL_COST, cost);
+			}
+			else {
+				for(int i = block; i < end; i++) {	//: Not a number fails here.
+					addFixed(MATERIAL_INPUT, quantity[i]);
+					addFixed(MATERIAL_COST, unitPrice[i] * quantity[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Add the value rounded to six fraction digits to a fixed-point total, half to even.
+	 *
+	 * @throws ArithmeticException if the value is not a number or too large for fixed point.
+	 */
+	private void addFixed(final int total, final double value) {
+		final double scaled = value * SCALE;
+		if (!(Math.abs(scaled) < 0x1p63)) {
+			throw new ArithmeticException("The value " + value + " can not be summed in fixed-point arithmetic.");
+		}
+		addFixedScaled(total, (long) Math.rint(scaled));
+	}
+
+	/**
+	 * Add the value in millionths to a fixed-point total.
+	 */
+	private void addFixedScaled(final int total, final long v) {
+		//: The value is sign-extended to 128 bits, the low words are added as unsigned with carry.
+		final int i = 2 * total;
+		final long low = m_fixed[i + 1] + v;
+		m_fixed[i] += (v >> 63) + ((Long.compareUnsigned(low, m_fixed[i + 1]) < 0) ? 1 : 0);
+		m_fixed[i + 1] = low;
+		m_stale = true;
+	}
+
+	/**
+	 * Make the double totals from the fixed-point totals, each rounded once.
+	 */
+	private void updateDoubles() {
+		if (!m_stale) {
+			return;
+		}
+		m_materialInput = toDouble(MATERIAL_INPUT);
+		m_materialCost = toDouble(MATERIAL_COST);
+		m_energyCost = toDouble(ENERGY_COST);
+		m_systemCost = toDouble(SYSTEM_COST);
+		m_wasteQuantity = toDouble(WASTE_QUANTITY);
+		m_wasteCost = toDouble(WASTE_COST);
+		m_positiveOutput = toDouble(TOTAL_POSITIVE_OUTPUT);
+		m_negativeLoss = toDouble(TOTAL_NEGATIVE_LOSS);
+		m_stale = false;
+	}
+
+	private double toDouble(final int total) {
+		final long high = m_fixed[2 * total];
+		final long low = m_fixed[2 * total + 1];
+		if ((high == 0 && low >= 0) || (high == -1 && low < 0)) {
+			return BigDecimal.valueOf(low, FIXED_SCALE_DIGITS).doubleValue();
+		}
+		final BigInteger unsignedLow = new BigInteger(1, ByteBuffer.allocate(Long.BYTES).putLong(low).array());
+		return new BigDecimal(BigInteger.valueOf(high).shiftLeft(64).add(unsignedLow), FIXED_SCALE_DIGITS).doubleValue();
+	}
+
+	/**
+	 * Add the totals of other accumulator, such as the totals of a part of the material rows.
+	 * In floating-point arithmetic the parts must be merged in the same order every time to get
+	 * the same result, in fixed-point arithmetic any order gives the same result.
+	 *
+	 * @param other the totals in the same arithmetic.
+	 */
+	void merge(final QcCalcAccumulator other) {
+		if ((m_fixed != null) != (other.m_fixed != null)) {
+			throw new IllegalArgumentException("The totals of different arithmetic can not be merged.");
+		}
+		if (m_fixed != null) {
+			for(int i = 0; i < m_fixed.length; i += 2) {
+				final long low = m_fixed[i + 1] + other.m_fixed[i + 1];
+				m_fixed[i] += other.m_fixed[i] + ((Long.compareUnsigned(low, m_fixed[i + 1]) < 0) ? 1 : 0);
+				m_fixed[i + 1] = low;
+			}
+			m_stale = true;
+			return;
+		}
+		m_materialInput += other.m_materialInput;
+		m_materialCost += other.m_materialCost;
+		m_energyCost += other.m_energyCost;
+		m_systemCost += other.m_systemCost;
+		m_wasteQuantity += other.m_wasteQuantity;
+		m_wasteCost += other.m_wasteCost;
+		m_positiveOutput += other.m_positiveOutput;
+		m_negativeLoss += other.m_negativeLoss;
+	}
+
+	/**
+	 * @return the number of bytes written by {@link #write(DataOutput)} in the arithmetic.
+	 */
+	static int bytes(final Arithmetic arithmetic) {
+		return (arithmetic == Arithmetic.FIXED_POINT) ? 2 * TOTAL_COUNT * Long.BYTES : TOTAL_COUNT * Double.BYTES;
+	}
+
+	/**
+	 * Write the totals, for a checkpoint of the running totals. The fixed-point totals are written
+	 * as they are, they are read in the same arithmetic.
+	 */
+	void write(final DataOutput out) throws IOException {
+		if (m_fixed != null) {
+			for(long word : m_fixed) {
+				out.writeLong(word);
+			}
+			return;
+		}
+		out.writeDouble(m_materialInput);
+		out.writeDouble(m_materialCost);
+		out.writeDouble(m_energyCost);
+		out.writeDouble(m_systemCost);
+		out.writeDouble(m_wasteQuantity);
+		out.writeDouble(m_wasteCost);
+		out.writeDouble(m_positiveOutput);
+		out.writeDouble(m_negativeLoss);
+	}
+
+	/**
+	 * Read the totals written by {@link #write(DataOutput)}.
+	 */
+	static QcCalcAccumulator read(final DataInput in, final Arithmetic arithmetic) throws IOException {
+		QcCalcAccumulator totals = new QcCalcAccumulator(arithmetic);
+		if (totals.m_fixed != null) {
+			for(int i = 0; i < totals.m_fixed.length; i++) {
+				totals.m_fixed[i] = in.readLong();
+			}
+			totals.m_stale = true;
+			return totals;
+		}
+		totals.m_materialInput = in.readDouble();
+		totals.m_materialCost = in.readDouble();
+		totals.m_energyCost = in.readDouble();
+		totals.m_systemCost = in.readDouble();
+		totals.m_wasteQuantity = in.readDouble();
+		totals.m_wasteCost = in.readDouble();
+		totals.m_positiveOutput = in.readDouble();
+		totals.m_negativeLoss = in.readDouble();
+		return totals;
+	}
+
+	/**
+	 * Read the totals written by {@link #write(DataOutput)} from a buffer, such as a memory-mapped file.
+	 */
+	static QcCalcAccumulator read(final ByteBuffer in, final Arithmetic arithmetic) {
+		QcCalcAccumulator totals = new QcCalcAccumulator(arithmetic);
+		if (totals.m_fixed != null) {
+			for(int i = 0; i < totals.m_fixed.length; i++) {
+				totals.m_fixed[i] = in.getLong();
+			}
+			totals.m_stale = true;
+			return totals;
+		}
+		totals.m_materialInput = in.getDouble();
+		totals.m_materialCost = in.getDouble();
+		totals.m_energyCost = in.getDouble();
+		totals.m_systemCost = in.getDouble();
+		totals.m_wasteQuantity = in.getDouble();
+		totals.m_wasteCost = in.getDouble();
+		totals.m_positiveOutput = in.getDouble();
+		totals.m_negativeLoss = in.getDouble();
+		return totals;
+	}
+
+	/**
+	 * Add one raw item of QC settings, the item type decides which total it belongs to.
+	 */
+	void addRawItem(final QcRawItem r) {
+		final String type = r.getType();
+		if (QcRawItemType.STATIC_MATERIAL_INPUT.equals(type) || QcRawItemType.DYNAMIC_MATERIAL_INPUT.equals(type)) {
+			addMaterial(r.getUnit_price(), r.getQuantity());
+		}
+		else if (m_fixed != null) {
+			addRawItemFixed(type, r);
+		}
+		else if (QcRawItemType.ENERGY_COST.equals(type)) {
+			m_energyCost += r.getMonetary();
+		}
+		else if (QcRawItemType.SYSTEM_COST.equals(type)) {
+			m_systemCost += r.getMonetary();
+		}
+		else if (QcRawItemType.WASTE_COST.equals(type)) {
+			m_wasteQuantity += r.getQuantity();
+			m_wasteCost += r.getMonetary();
+		}
+		else if (QcRawItemType.POSTIVE_PRODUCT.equals(type)) {
+			m_positiveOutput += r.getQuantity();
+		}
+		else if (QcRawItemType.NEGATIVE_LOSS.equals(type)) {
+			m_negativeLoss += r.getQuantity();
+		}
+	}
+
+	private void addRawItemFixed(final String type, final QcRawItem r) {
+		if (QcRawItemType.ENERGY_COST.equals(type)) {
+			addFixed(ENERGY_COST, r.getMonetary());
+		}
+		else if (QcRawItemType.SYSTEM_COST.equals(type)) {
+			addFixed(SYSTEM_COST, r.getMonetary());
+		}
+		else if (QcRawItemType.WASTE_COST.equals(type)) {
+			addFixed(WASTE_QUANTITY, r.getQuantity());
+			addFixed(WASTE_COST, r.getMonetary());
+		}
+		else if (QcRawItemType.POSTIVE_PRODUCT.equals(type)) {
+			addFixed(TOTAL_POSITIVE_OUTPUT, r.getQuantity());
+		}
+		else if (QcRawItemType.NEGATIVE_LOSS.equals(type)) {
+			addFixed(TOTAL_NEGATIVE_LOSS, r.getQuantity());
+		}
+	}
+
+	/**
+	 * Number of calculation values of {@link #evaluate}, in the order of the calculation columns
+	 * after the process: material input, material cost, energy cost, system cost, waste quantity,
+	 * waste cost, positive output, positive output cost, negative loss, negative loss cost and balance.
+	 */
+	static final int VALUE_COUNT = 11;
+
+	static final int MATERIAL_INPUT = 0;
+	static final int MATERIAL_COST = 1;
+	static final int ENERGY_COST = 2;
+	static final int SYSTEM_COST = 3;
+	static final int WASTE_QUANTITY = 4;
+	static final int WASTE_COST = 5;
+	static final int POSITIVE_OUTPUT = 6;
+	static final int POSITIVE_OUTPUT_COST = 7;
+	static final int NEGATIVE_LOSS = 8;
+	static final int NEGATIVE_LOSS_COST = 9;
+	static final int BALANCE = 10;
+
+	/**
+	 * Make the calculation row from current totals.
+	 *
+	 * @param process the process name of QC.
+	 * @return the calculation result.
+	 */
+	QcCalcRowItem toCalcRowItem(final String process) {
+		return toCalcRowItem(process, getValues());
+	}
+
+	/**
+	 * @return the {@link #VALUE_COUNT} calculation values of current totals.
+	 */
+	double[] getValues() {
+		final double[] values = new double[VALUE_COUNT];
+		evaluate(1, 1, 1, 1, 1, values);
+		return values;
+	}
+
+	/**
+	 * Make the calculation row of the calculation values.
+	 *
+	 * @param process the process name of QC.
+	 * @param values the {@link #VALUE_COUNT} calculation values, see {@link #evaluate}.
+	 * @return the calculation result.
+	 */
+	static QcCalcRowItem toCalcRowItem(final String process, final double[] values) {
+		QcCalcRowItem item = new QcCalcRowItem();
+
+		item.setProcess(process);
+		item.setMaterial_input(values[MATERIAL_INPUT]);
+		item.setMaterial_cost(values[MATERIAL_COST]);
+		item.setEnergy_cost(values[ENERGY_COST]);
+		item.setSystem_cost(values[SYSTEM_COST]);
+		item.setWaste_quantity(values[WASTE_QUANTITY]);
+		item.setWaste_cost(values[WASTE_COST]);
+		item.setPositive_output(values[POSITIVE_OUTPUT]);
+		item.setPositive_product_cost(values[POSITIVE_OUTPUT_COST]);
+		item.setNagative_loss(values[NEGATIVE_LOSS]);
+		item.setNagative_loss_cost(values[NEGATIVE_LOSS_COST]);
+		item.setBalance(values[BALANCE]);
+		return item;
+	}
+
+	/**
+	 * Make the calculation values from current totals, with the totals scaled by the factors. All
+	 * factors 1 is the calculation of {@link #toCalcRowItem(String)}. No object is created, so a
+	 * simulation can evaluate many scenarios on the same totals.
+	 *
+	 * @param materialPriceFactor the factor of material unit prices.
+	 * @param materialYieldFactor the factor of material yield, the material usage is divided by it.
+	 * @param energyFactor the factor of energy cost.
+	 * @param systemFactor the factor of system cost.
+	 * @param wastePriceFactor the factor of waste management unit prices.
+	 * @param values the {@link #VALUE_COUNT} calculation values.
+	 */
+	void evaluate(final double materialPriceFactor, final double materialYieldFactor, final double energyFactor,
+			final double systemFactor, final double wastePriceFactor, final double[] values) {
+		if (m_fixed != null) {
+			updateDoubles();
+		}
+		final double materialInput = round2(m_materialInput / materialYieldFactor);
+		final double materialCost = round2(m_materialCost * materialPriceFactor / materialYieldFactor);
+		final double energyCost = m_energyCost * energyFactor;
+		final double systemCost = m_systemCost * systemFactor;
+		final double wasteCost = m_wasteCost * wastePriceFactor;
+
+		values[MATERIAL_INPUT] = materialInput;
+		values[MATERIAL_COST] = materialCost;
+		values[ENERGY_COST] = energyCost;
+		values[SYSTEM_COST] = systemCost;
+		values[WASTE_QUANTITY] = m_wasteQuantity;
+		values[WASTE_COST] = wasteCost;
+
+		final double totalOutput = m_positiveOutput + m_negativeLoss;
+		if (totalOutput != 0) {
+			final double yield = m_positiveOutput / totalOutput;
+			final double totalCost = materialCost + energyCost + systemCost + wasteCost;
+
+			values[POSITIVE_OUTPUT] = m_positiveOutput;
+			values[POSITIVE_OUTPUT_COST] = yield * totalCost;
+			values[NEGATIVE_LOSS] = m_negativeLoss;
+			values[NEGATIVE_LOSS_COST] = (1 - yield) * totalCost;
+			values[BALANCE] = materialInput - (totalOutput + m_wasteQuantity);
+		}
+		else {
+			values[POSITIVE_OUTPUT] = 0;
+			values[POSITIVE_OUTPUT_COST] = 0;
+			values[NEGATIVE_LOSS] = 0;
+			values[NEGATIVE_LOSS_COST] = 0;
+			values[BALANCE] = materialInput - m_wasteQuantity;
+		}
+	}
+
+	/**
+	 * Material totals of QC are shown with two fraction digits.
+	 */
+	private static double round2(final double value) {
+		return Math.round(value * 100) / 100.0;
+	}
+}
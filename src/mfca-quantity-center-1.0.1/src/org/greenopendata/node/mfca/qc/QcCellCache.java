@@ -0,0 +1,50 @@
+package org.greenopendata.node.mfca.qc;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.knime.core.data.def.StringCell;
+
+/**
+ * The text cells of one execution by value, so that a repeated value such as the process, the raw
+ * item type, the unit or a part number is one cell object on all rows. Cells are immutable, the rows
+ * in memory and the output tables share them.
+ *
+ * The cache is bounded: the values of a high-cardinality column, such as unique part numbers, are
+ * cached until the bound and then created as before, the low-cardinality values are usually cached
+ * by then.
+ *
+ * A DefaultRow copies the cells it is created with, so one cell array is filled again for every row
+ * of a port instead of a new list per row.
+ *
+ * @author Green Open Data
+ */
+final class QcCellCache {
+	/**
+	 * The maximum number of cached cells.
+	 */
+	private static final int MAX_CELLS = 4096;
+
+	private final Map<String, StringCell> m_cells = new HashMap<>();
+
+	/**
+	 * @return the text cell of the value, the same cell for the same value.
+	 */
+	StringCell get(final String value) {
+		StringCell cell = m_cells.get(value);
+		if (cell == null) {
+			cell = new StringCell(value);
+			if (m_cells.size() < MAX_CELLS) {
+				m_cells.put(value, cell);
+			}
+		}
+		return cell;
+	}
+
+	/**
+	 * The row key of a row index, the index as text. The keys are unique by row and are not cached.
+	 */
+	static String rowKey(final long index) {
+		return Long.toString(index);
+	}
+}
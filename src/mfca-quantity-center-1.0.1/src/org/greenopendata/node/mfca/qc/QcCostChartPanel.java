@@ -0,0 +1,216 @@
+package org.greenopendata.node.mfca.qc;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.text.DecimalFormat;
+
+import javax.swing.JComponent;
+
+/**
+ * The chart of a cost summary, either a cost breakdown by bars or a material flow diagram in Sankey
+ * style from the input costs to positive output and negative loss. Every input cost flows to both
+ * outputs by the share of positive output, the same allocation of MFCA calculation.
+ *
+ * The summary is computed before it is set, painting only scales the few values to the size of the
+ * component.
+ *
+ * @author Green Open Data
+ */
+final class QcCostChartPanel extends JComponent {
+	private static final long serialVersionUID = 1L;
+
+	enum Mode {
+		BREAKDOWN,
+		FLOW
+	}
+
+	private static final Color[] INPUT_COLORS = {
+		new Color(0x4E79A7), new Color(0xF28E2B), new Color(0x76B7B2), new Color(0xB07AA1)
+	};
+
+	private static final Color POSITIVE_COLOR = new Color(0x59A14F);
+
+	private static final Color NEGATIVE_COLOR = new Color(0xE15759);
+
+	private static final int MARGIN = 16;
+
+	private final Mode m_mode;
+
+	private QcCostSummary m_summary = null;
+
+	private String m_message = "No data.";
+
+	QcCostChartPanel(final Mode mode) {
+		m_mode = mode;
+		setPreferredSize(new Dimension(640, 400));
+		setBackground(Color.WHITE);
+		setOpaque(true);
+	}
+
+	/**
+	 * Show the summary, or the message if the summary is null. Must be called on the EDT.
+	 */
+	void setSummary(final QcCostSummary summary, final String message) {
+		m_summary = summary;
+		m_message = message;
+		repaint();
+	}
+
+	@Override
+	protected void paintComponent(final Graphics g) {
+		final Graphics2D g2 = (Graphics2D) g.create();
+		try {
+			g2.setColor(getBackground());
+			g2.fillRect(0, 0, getWidth(), getHeight());
+			g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			g2.setColor(Color.DARK_GRAY);
+			if (m_summary == null) {
+				g2.drawString(m_message, MARGIN, MARGIN + g2.getFontMetrics().getAscent());
+			}
+			else if (m_mode == Mode.BREAKDOWN) {
+				paintBreakdown(g2, m_summary);
+			}
+			else {
+				paintFlow(g2, m_summary);
+			}
+		}
+		finally {
+			g2.dispose();
+		}
+	}
+
+	private void paintBreakdown(final Graphics2D g, final QcCostSummary summary) {
+		final String[] labels = new String[QcCostSummary.INPUT_LABELS.length + 3];
+		final double[] values = new double[labels.length];
+		final Color[] colors = new Color[labels.length];
+		for(int i = 0; i < QcCostSummary.INPUT_LABELS.length; i++) {
+			labels[i] = QcCostSummary.INPUT_LABELS[i] + " cost";
+			values[i] = summary.getInputCost(i);
+			colors[i] = INPUT_COLORS[i];
+		}
+		int n = QcCostSummary.INPUT_LABELS.length;
+		labels[n] = "Total cost";
+		values[n] = summary.getTotalCost();
+		colors[n] = Color.GRAY;
+		labels[n + 1] = "Positive output cost";
+		values[n + 1] = summary.getPositiveOutputCost();
+		colors[n + 1] = POSITIVE_COLOR;
+		labels[n + 2] = "Negative loss cost";
+		values[n + 2] = summary.getNegativeLossCost();
+		colors[n + 2] = NEGATIVE_COLOR;
+
+		double max = 0;
+		for(double v : values) {
+			max = Math.max(max, Math.abs(v));
+		}
+		final FontMetrics fm = g.getFontMetrics();
+		int labelWidth = 0;
+		for(String label : labels) {
+			labelWidth = Math.max(labelWidth, fm.stringWidth(label));
+		}
+		final DecimalFormat format = new DecimalFormat("#,##0.00");
+		final int valueWidth = fm.stringWidth(format.format(-max)) + MARGIN;
+		final int barLeft = MARGIN + labelWidth + MARGIN;
+		final int barSpace = Math.max(1, getWidth() - barLeft - valueWidth - MARGIN);
+		final int rowHeight = Math.max(fm.getHeight() + 4, (getHeight() - 2 * MARGIN) / labels.length);
+		final int barHeight = Math.max(4, rowHeight * 2 / 3);
+
+		for(int i = 0; i < labels.length; i++) {
+			final int top = MARGIN + i * rowHeight;
+			final int width = (max > 0) ? (int) Math.round(Math.abs(values[i]) / max * barSpace) : 0;
+			g.setColor(Color.DARK_GRAY);
+			g.drawString(labels[i], MARGIN, top + (barHeight + fm.getAscent()) / 2);
+			g.setColor(colors[i]);
+			g.fillRect(barLeft, top, width, barHeight);
+			g.setColor(Color.DARK_GRAY);
+			g.drawString(format.format(values[i]), barLeft + width + 4, top + (barHeight + fm.getAscent()) / 2);
+		}
+	}
+
+	/**
+	 * The input nodes are stacked on the left and the output nodes on the right, every band is as wide
+	 * as its cost. Negative costs, such as the income of sold waste, can not be drawn as a band and are
+	 * left out of the diagram.
+	 */
+	private void paintFlow(final Graphics2D g, final QcCostSummary summary) {
+		final int inputs = QcCostSummary.INPUT_LABELS.length;
+		final double share = Math.max(0, Math.min(1, summary.getPositiveShare()));
+		final double[] costs = new double[inputs];
+		double total = 0;
+		for(int i = 0; i < inputs; i++) {
+			costs[i] = Math.max(0, summary.getInputCost(i));
+			total += costs[i];
+		}
+		if (total <= 0) {
+			g.drawString("There is no cost to show.", MARGIN, MARGIN + g.getFontMetrics().getAscent());
+			return;
+		}
+
+		final FontMetrics fm = g.getFontMetrics();
+		final int gap = 12;
+		final int nodeWidth = 14;
+		final int labelWidth = fm.stringWidth("Waste management") + MARGIN;
+		final int left = MARGIN + labelWidth;
+		final int right = Math.max(left + 3 * nodeWidth, getWidth() - MARGIN - fm.stringWidth("Positive output") - MARGIN);
+		final double scale = Math.max(1, getHeight() - 2 * MARGIN - (inputs - 1) * gap) / total;
+
+		/*
+		 * The output nodes are centered, positive output above negative loss.
+		 */
+		final double positiveHeight = total * share * scale;
+		final double negativeHeight = total * (1 - share) * scale;
+		final double outputTop = (getHeight() - positiveHeight - negativeHeight - gap) / 2;
+		double positiveY = outputTop;
+		double negativeY = outputTop + positiveHeight + gap;
+		fillNode(g, right, outputTop, nodeWidth, positiveHeight, POSITIVE_COLOR);
+		fillNode(g, right, negativeY, nodeWidth, negativeHeight, NEGATIVE_COLOR);
+		g.setColor(Color.DARK_GRAY);
+		g.drawString("Positive output", right + nodeWidth + 4, (int) (outputTop + positiveHeight / 2) + fm.getAscent() / 2);
+		g.drawString("Negative loss", right + nodeWidth + 4, (int) (negativeY + negativeHeight / 2) + fm.getAscent() / 2);
+
+		double y = MARGIN;
+		for(int i = 0; i < inputs; i++) {
+			final double height = costs[i] * scale;
+			fillNode(g, left - nodeWidth, y, nodeWidth, height, INPUT_COLORS[i]);
+			g.setColor(Color.DARK_GRAY);
+			g.drawString(QcCostSummary.INPUT_LABELS[i], MARGIN, (int) (y + height / 2) + fm.getAscent() / 2);
+
+			final double toPositive = height * share;
+			final double toNegative = height - toPositive;
+			final Color band = new Color(INPUT_COLORS[i].getRed(), INPUT_COLORS[i].getGreen(), INPUT_COLORS[i].getBlue(), 110);
+			fillBand(g, left, y, right, positiveY, toPositive, band);
+			fillBand(g, left, y + toPositive, right, negativeY, toNegative, band);
+			positiveY += toPositive;
+			negativeY += toNegative;
+			y += height + gap;
+		}
+	}
+
+	private static void fillNode(final Graphics2D g, final double x, final double y, final double width,
+			final double height, final Color color) {
+		g.setColor(color);
+		g.fill(new Rectangle2D.Double(x, y, width, Math.max(1, height)));
+	}
+
+	private static void fillBand(final Graphics2D g, final double x0, final double y0, final double x1,
+			final double y1, final double width, final Color color) {
+		if (width <= 0) {
+			return;
+		}
+		final double middle = (x0 + x1) / 2;
+		final Path2D.Double path = new Path2D.Double();
+		path.moveTo(x0, y0);
+		path.curveTo(middle, y0, middle, y1, x1, y1);
+		path.lineTo(x1, y1 + width);
+		path.curveTo(middle, y1 + width, middle, y0 + width, x0, y0 + width);
+		path.closePath();
+		g.setColor(color);
+		g.fill(path);
+	}
+}
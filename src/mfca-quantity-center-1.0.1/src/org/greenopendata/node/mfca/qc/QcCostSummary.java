@@ -0,0 +1,196 @@
+package org.greenopendata.node.mfca.qc;
+
+import java.util.Iterator;
+
+import org.greenopendata.mfca.qc.QcRawItem;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DoubleValue;
+import org.knime.core.data.StringValue;
+import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.node.BufferedDataTable;
+
+/**
+ * The costs of a Calculation table summed for the view: the cost of every input category and how the
+ * total cost is allocated to positive output and negative loss. Of a simulation only the base row is
+ * used.
+ *
+ * Every group row of a Calculation table has the static items of the QC settings, so the group rows
+ * can not be summed. The costs of a group-by execution are calculated from its Raw Data instead,
+ * which has every static item once and every dynamic material row: the same as one execution
+ * without group column.
+ *
+ * @author Green Open Data
+ */
+final class QcCostSummary {
+	/**
+	 * The input cost categories in the order of {@link #getInputCost(int)}.
+	 */
+	static final String[] INPUT_LABELS = { "Material", "Energy", "System", "Waste management" };
+
+	private static final String[] INPUT_COLUMNS = { "material_cost", "energy_cost", "system_cost", "waste_cost" };
+
+	private final double[] m_inputCosts;
+
+	private final double m_positiveOutputCost;
+
+	private final double m_negativeLossCost;
+
+	private QcCostSummary(final double[] inputCosts, final double positiveOutputCost, final double negativeLossCost) {
+		m_inputCosts = inputCosts;
+		m_positiveOutputCost = positiveOutputCost;
+		m_negativeLossCost = negativeLossCost;
+	}
+
+	/**
+	 * Sum the costs of the Calculation table, it is read once and should not be called on the EDT.
+	 *
+	 * @param calculation the Calculation table of Quantity Center node.
+	 * @param rawData the Raw Data table of the same execution, read instead of the Calculation table
+	 *        when it has a row for every group.
+	 * @return the cost summary.
+	 */
+	static QcCostSummary of(final BufferedDataTable calculation, final BufferedDataTable rawData) {
+		final DataTableSpec spec = calculation.getDataTableSpec();
+		if (spec.containsName("group") && rawData != null) {
+			return ofRawData(rawData);
+		}
+		final int[] inputIndices = new int[INPUT_COLUMNS.length];
+		for(int i = 0; i < inputIndices.length; i++) {
+			inputIndices[i] = spec.findColumnIndex(INPUT_COLUMNS[i]);
+		}
+		final int positiveIndex = spec.findColumnIndex("positive_output_cost");
+		final int negativeIndex = spec.findColumnIndex("negative_loss_cost");
+		final int statisticIndex = spec.findColumnIndex("statistic");
+
+		final double[] inputCosts = new double[INPUT_COLUMNS.length];
+		double positive = 0;
+		double negative = 0;
+		final CloseableRowIterator iterator = calculation.iterator();
+		try {
+			while (iterator.hasNext()) {
+				final DataRow row = iterator.next();
+				if (statisticIndex >= 0 && !QcSimulation.STATISTICS[0].equals(toText(row.getCell(statisticIndex)))) {
+					continue;
+				}
+				for(int i = 0; i < inputIndices.length; i++) {
+					inputCosts[i] += toNumber(row, inputIndices[i]);
+				}
+				positive += toNumber(row, positiveIndex);
+				negative += toNumber(row, negativeIndex);
+			}
+		}
+		finally {
+			iterator.close();
+		}
+		return new QcCostSummary(inputCosts, positive, negative);
+	}
+
+	/**
+	 * Calculate the costs of a Raw Data table, every row is added to the totals as a raw item.
+	 */
+	private static QcCostSummary ofRawData(final BufferedDataTable rawData) {
+		final DataTableSpec spec = rawData.getDataTableSpec();
+		final int typeIndex = spec.findColumnIndex("type");
+		final int quantityIndex = spec.findColumnIndex("quantity");
+		final int unitPriceIndex = spec.findColumnIndex("unit_price");
+		final int monetaryIndex = spec.findColumnIndex("monetary");
+
+		final CloseableRowIterator rows = rawData.iterator();
+		try {
+			//: The item is reused for every row, the totals do not keep it.
+			final QcRawItem item = new QcRawItem();
+			return ofRawItems(new Iterator<QcRawItem>() {
+				@Override
+				public boolean hasNext() {
+					return rows.hasNext();
+				}
+
+				@Override
+				public QcRawItem next() {
+					final DataRow row = rows.next();
+					item.setType(toText(row.getCell(typeIndex)));
+					item.setQuantity(toNumber(row, quantityIndex));
+					item.setUnit_price(toNumber(row, unitPriceIndex));
+					item.setMonetary(toNumber(row, monetaryIndex));
+					return item;
+				}
+			});
+		}
+		finally {
+			rows.close();
+		}
+	}
+
+	/**
+	 * The cost summary of raw items, the static items of the QC settings and the dynamic material
+	 * rows, calculated as one execution without group column.
+	 *
+	 * @param rawItems the raw items, each of them is added once.
+	 * @return the cost summary.
+	 */
+	static QcCostSummary ofRawItems(final Iterator<QcRawItem> rawItems) {
+		final QcCalcAccumulator totals = new QcCalcAccumulator();
+		while (rawItems.hasNext()) {
+			totals.addRawItem(rawItems.next());
+		}
+		return of(totals.getValues());
+	}
+
+	/**
+	 * The cost summary of one calculation row, such as the preview of the settings dialog.
+	 *
+	 * @param values the calculation values, see QcCalcAccumulator.getValues.
+	 * @return the cost summary.
+	 */
+	static QcCostSummary of(final double[] values) {
+		final double[] inputCosts = { values[QcCalcAccumulator.MATERIAL_COST], values[QcCalcAccumulator.ENERGY_COST],
+				values[QcCalcAccumulator.SYSTEM_COST], values[QcCalcAccumulator.WASTE_COST] };
+		return new QcCostSummary(inputCosts, values[QcCalcAccumulator.POSITIVE_OUTPUT_COST],
+				values[QcCalcAccumulator.NEGATIVE_LOSS_COST]);
+	}
+
+	private static String toText(final DataCell cell) {
+		return (cell instanceof StringValue) ? ((StringValue) cell).getStringValue() : null;
+	}
+
+	private static double toNumber(final DataRow row, final int index) {
+		if (index < 0) {
+			return 0;
+		}
+		final DataCell cell = row.getCell(index);
+		return cell.isMissing() ? 0 : ((DoubleValue) cell).getDoubleValue();
+	}
+
+	/**
+	 * @param category the index of {@link #INPUT_LABELS}.
+	 */
+	double getInputCost(final int category) {
+		return m_inputCosts[category];
+	}
+
+	double getTotalCost() {
+		double total = 0;
+		for(double c : m_inputCosts) {
+			total += c;
+		}
+		return total;
+	}
+
+	double getPositiveOutputCost() {
+		return m_positiveOutputCost;
+	}
+
+	double getNegativeLossCost() {
+		return m_negativeLossCost;
+	}
+
+	/**
+	 * @return the share of cost allocated to positive output, 0 if there is no output.
+	 */
+	double getPositiveShare() {
+		final double allocated = m_positiveOutputCost + m_negativeLossCost;
+		return (allocated != 0) ? m_positiveOutputCost / allocated : 0;
+	}
+}
@@ -0,0 +1,278 @@
+package org.greenopendata.node.mfca.qc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.greenopendata.mfca.qc.QcRawItem;
+import org.greenopendata.mfca.qc.QcRawItemType;
+import org.greenopendata.mfca.qc.QcSettingsModel;
+import org.greenopendata.mfca.qc.ec.EnergyCostRowItem;
+import org.greenopendata.mfca.qc.mi.MaterialInputRowItem;
+import org.greenopendata.mfca.qc.po.ProductOutputRowItem;
+import org.greenopendata.mfca.qc.sc.SystemCostRowItem;
+import org.greenopendata.mfca.qc.wt.WasteMgmtCostRowItem;
+import org.knime.core.node.InvalidSettingsException;
+
+/**
+ * The QC settings decoded from settings byte array. QcSettingsModel keeps every settings
+ * table as a serialized byte array and decodes it again on each call, this class decodes
+ * them only once and is kept as long as the settings bytes are not changed.
+ *
+ * The settings byte array is either the compact format of {@link QcSettingsCodec} or the
+ * legacy serialized QcSettingsModel of workflows saved by earlier versions.
+ *
+ * @author Green Open Data
+ */
+final class QcDecodedModel {
+	/**
+	 * The settings bytes this model was decoded from, it is the key of the decoded model.
+	 */
+	private final byte[] m_settingsBytes;
+
+	private final String m_process;
+
+	private final String m_note;
+
+	private final String m_displayUnit;
+
+	private final List<MaterialInputRowItem> m_materialInputItems;
+
+	private final List<ProductOutputRowItem> m_productOutputItems;
+
+	private final List<EnergyCostRowItem> m_energyCostItems;
+
+	private final List<SystemCostRowItem> m_systemCostItems;
+
+	private final List<WasteMgmtCostRowItem> m_wasteMgmtCostItems;
+
+	private final List<QcRawItem> m_rawItems;
+
+	/**
+	 * Totals of the static items, the seed of calculation of every execution.
+	 */
+	private final QcCalcAccumulator m_staticTotals;
+
+	/**
+	 * @param settingsBytes the settings bytes this model is decoded from, null if it is not decoded from bytes.
+	 */
+	QcDecodedModel(final byte[] settingsBytes, final String process, final String note, final String displayUnit,
+			final List<MaterialInputRowItem> materialInputItems,
+			final List<ProductOutputRowItem> productOutputItems,
+			final List<EnergyCostRowItem> energyCostItems,
+			final List<SystemCostRowItem> systemCostItems,
+			final List<WasteMgmtCostRowItem> wasteMgmtCostItems) {
+		m_settingsBytes = settingsBytes;
+		m_process = process;
+		m_note = note;
+		m_displayUnit = displayUnit;
+		m_materialInputItems = Collections.unmodifiableList(materialInputItems);
+		m_productOutputItems = Collections.unmodifiableList(productOutputItems);
+		m_energyCostItems = Collections.unmodifiableList(energyCostItems);
+		m_systemCostItems = Collections.unmodifiableList(systemCostItems);
+		m_wasteMgmtCostItems = Collections.unmodifiableList(wasteMgmtCostItems);
+		m_rawItems = Collections.unmodifiableList(createRawItems());
+
+		m_staticTotals = new QcCalcAccumulator();
+		for(QcRawItem r : m_rawItems) {
+			m_staticTotals.addRawItem(r);
+		}
+	}
+
+	/**
+	 * Decode the QC settings byte array.
+	 *
+	 * @param settingsBytes the settings byte array, compact or legacy format.
+	 * @return the decoded model, or null if there is no settings yet.
+	 * @throws InvalidSettingsException if the byte array can not be decoded.
+	 */
+	static QcDecodedModel decode(final byte[] settingsBytes) throws InvalidSettingsException {
+		if (settingsBytes == null) {
+			return null;
+		}
+		if (QcSettingsCodec.isCompact(settingsBytes)) {
+			return QcSettingsCodec.decode(settingsBytes);
+		}
+		return decodeLegacy(settingsBytes);
+	}
+
+	/**
+	 * Legacy settings are read through the public API of QcSettingsModel, which has all the
+	 * items needed by execution. Standard usage and yield of material, load of energy,
+	 * note and display unit are not available, so this model must not be encoded again.
+	 * The dialog re-encodes legacy settings with full information from the settings pane.
+	 */
+	private static QcDecodedModel decodeLegacy(final byte[] settingsBytes) throws InvalidSettingsException {
+		final QcSettingsModel model;
+		try {
+			model = QcSettingsModel.fromByteArray(settingsBytes);
+		}
+		catch (RuntimeException e) {
+			throw new InvalidSettingsException("The QC settings can not be read: " + e.getMessage(), e);
+		}
+		if (model == null) {
+			return null;
+		}
+
+		List<MaterialInputRowItem> materialInputItems = new ArrayList<>();
+		List<EnergyCostRowItem> energyCostItems = new ArrayList<>();
+		List<SystemCostRowItem> systemCostItems = new ArrayList<>();
+		List<WasteMgmtCostRowItem> wasteMgmtCostItems = new ArrayList<>();
+		for(QcRawItem r : model.getRawItems()) {
+			final String type = r.getType();
+			if (QcRawItemType.STATIC_MATERIAL_INPUT.equals(type)) {
+				MaterialInputRowItem item = new MaterialInputRowItem();
+				item.setPartNo(r.getItemNo());
+				item.setPartName(r.getItemName());
+				item.setUnit(r.getUnit());
+				item.setUnitPrice(r.getUnit_price());
+				item.setActUsage(r.getQuantity());
+				materialInputItems.add(item);
+			}
+			else if (QcRawItemType.ENERGY_COST.equals(type)) {
+				EnergyCostRowItem item = new EnergyCostRowItem();
+				item.setItem(r.getItemNo());
+				item.setUnit(r.getUnit());
+				item.setUnitPrice(r.getUnit_price());
+				item.setActUsage(r.getQuantity());
+				energyCostItems.add(item);
+			}
+			else if (QcRawItemType.SYSTEM_COST.equals(type)) {
+				SystemCostRowItem item = new SystemCostRowItem();
+				item.setItem(r.getItemNo());
+				item.setUnit(r.getUnit());
+				item.setUnitPrice(r.getUnit_price());
+				item.setActUsage(r.getQuantity());
+				systemCostItems.add(item);
+			}
+			else if (QcRawItemType.WASTE_COST.equals(type)) {
+				WasteMgmtCostRowItem item = new WasteMgmtCostRowItem();
+				item.setItem(r.getItemNo());
+				item.setUnit(r.getUnit());
+				item.setUnitPrice(r.getUnit_price());
+				item.setQuantity(r.getQuantity());
+				wasteMgmtCostItems.add(item);
+			}
+		}
+		List<ProductOutputRowItem> productOutputItems = model.getProductOutputRowItems();
+		if (productOutputItems == null) {
+			productOutputItems = new ArrayList<>();
+		}
+
+		return new QcDecodedModel(settingsBytes, model.getProcess(), null, null, materialInputItems,
+				productOutputItems, energyCostItems, systemCostItems, wasteMgmtCostItems);
+	}
+
+	/**
+	 * Raw items in the same order and values of QcSettingsModel.getRawItems().
+	 */
+	private List<QcRawItem> createRawItems() {
+		List<QcRawItem> list = new ArrayList<>();
+		for(MaterialInputRowItem r : m_materialInputItems) {
+			list.add(createRawItem(QcRawItemType.STATIC_MATERIAL_INPUT, r.getPartNo(), r.getPartName(), r.getUnit(),
+					r.getActUsage(), r.getUnitPrice()));
+		}
+		for(EnergyCostRowItem r : m_energyCostItems) {
+			list.add(createRawItem(QcRawItemType.ENERGY_COST, r.getItem(), r.getItem(), r.getUnit(),
+					r.getActUsage(), r.getUnitPrice()));
+		}
+		for(SystemCostRowItem r : m_systemCostItems) {
+			list.add(createRawItem(QcRawItemType.SYSTEM_COST, r.getItem(), r.getItem(), r.getUnit(),
+					r.getActUsage(), r.getUnitPrice()));
+		}
+		for(WasteMgmtCostRowItem r : m_wasteMgmtCostItems) {
+			list.add(createRawItem(QcRawItemType.WASTE_COST, r.getItem(), r.getItem(), r.getUnit(),
+					r.getQuantity(), r.getUnitPrice()));
+		}
+		for(ProductOutputRowItem r : m_productOutputItems) {
+			list.add(createRawItem(QcRawItemType.POSTIVE_PRODUCT, r.getPartNo(), r.getPartName(), r.getUnit(),
+					r.getQuantityPass(), r.getUnitPrice()));
+			list.add(createRawItem(QcRawItemType.NEGATIVE_LOSS, r.getPartNo(), r.getPartName(), r.getUnit(),
+					r.getQuantityNG(), r.getUnitPrice()));
+		}
+		return list;
+	}
+
+	private QcRawItem createRawItem(final String type, final String itemNo, final String itemName, final String unit,
+			final double quantity, final double unitPrice) {
+		QcRawItem item = new QcRawItem();
+		item.setProcess(m_process);
+		item.setType(type);
+		item.setItemNo(itemNo);
+		item.setItemName(itemName);
+		item.setUnit(unit);
+		item.setQuantity(quantity);
+		item.setUnit_price(unitPrice);
+		item.setMonetary(quantity * unitPrice);
+		return item;
+	}
+
+	/**
+	 * @return true if this model was decoded from the same settings bytes.
+	 */
+	boolean isDecodedFrom(final byte[] settingsBytes) {
+		return m_settingsBytes != null && Arrays.equals(m_settingsBytes, settingsBytes);
+	}
+
+	String getProcess() {
+		return m_process;
+	}
+
+	String getNote() {
+		return m_note;
+	}
+
+	String getDisplayUnit() {
+		return m_displayUnit;
+	}
+
+	List<MaterialInputRowItem> getMaterialInputItems() {
+		return m_materialInputItems;
+	}
+
+	List<ProductOutputRowItem> getProductOutputRowItems() {
+		return m_productOutputItems;
+	}
+
+	List<EnergyCostRowItem> getEnergyCostItems() {
+		return m_energyCostItems;
+	}
+
+	List<SystemCostRowItem> getSystemCostItems() {
+		return m_systemCostItems;
+	}
+
+	List<WasteMgmtCostRowItem> getWasteMgmtCostItems() {
+		return m_wasteMgmtCostItems;
+	}
+
+	/**
+	 * @return the raw items of QC settings, in the same order of QcSettingsModel.getRawItems().
+	 */
+	List<QcRawItem> getRawItems() {
+		return m_rawItems;
+	}
+
+	/**
+	 * @return new running totals seeded with the static items, ready for the dynamic material rows.
+	 */
+	QcCalcAccumulator createCalcTotals() {
+		return new QcCalcAccumulator(m_staticTotals);
+	}
+
+	/**
+	 * @param arithmetic the arithmetic of the totals.
+	 * @return new running totals seeded with the static items in the arithmetic.
+	 */
+	QcCalcAccumulator createCalcTotals(final QcCalcAccumulator.Arithmetic arithmetic) {
+		if (arithmetic == m_staticTotals.getArithmetic()) {
+			return createCalcTotals();
+		}
+		final QcCalcAccumulator totals = new QcCalcAccumulator(arithmetic);
+		for(QcRawItem r : m_rawItems) {
+			totals.addRawItem(r);
+		}
+		return totals;
+	}
+}
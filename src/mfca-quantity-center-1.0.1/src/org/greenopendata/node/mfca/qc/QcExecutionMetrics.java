@@ -0,0 +1,279 @@
+package org.greenopendata.node.mfca.qc;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.StringValue;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.streamable.RowOutput;
+
+/**
+ * The metrics of one execution of Quantity Center node: the time of every phase, the rows and the
+ * approximate bytes written to every output port, and the bytes allocated by the executing thread.
+ *
+ * The time of an output port is the time spent in pushing its rows and closing it, which includes
+ * the time of the data container to write the rows to disk. The input scan includes the pushes of
+ * the Raw Data rows of material input, so the phases overlap there. The allocation is the one of
+ * the executing thread, the background threads of grouping and simulation are not counted.
+ *
+ * @author Green Open Data
+ */
+final class QcExecutionMetrics {
+	/**
+	 * The port names in the flow variable names, by output port index.
+	 */
+	static final String[] PORT_NAMES = { "positive_output", "negative_loss", "calculation", "raw_data" };
+
+	/**
+	 * The prefix of the flow variable names.
+	 */
+	private static final String PREFIX = "qc_";
+
+	private final String m_node;
+
+	private final String m_process;
+
+	private final long m_decodeNanos;
+
+	private final long m_startNanos;
+
+	private final long m_startAllocatedBytes;
+
+	private long m_scanNanos = 0;
+
+	private long m_calculationNanos = 0;
+
+	private long m_totalNanos = 0;
+
+	private long m_materialRows = 0;
+
+	private long m_allocatedBytes = -1;
+
+	private boolean m_cacheHit = false;
+
+	private final long[] m_portRows = new long[PORT_NAMES.length];
+
+	private final long[] m_portBytes = new long[PORT_NAMES.length];
+
+	private final long[] m_portNanos = new long[PORT_NAMES.length];
+
+	/**
+	 * Start the metrics of an execution.
+	 *
+	 * @param node the name of the node, to tell the nodes apart in JMX.
+	 * @param process the process of the node settings.
+	 * @param decodeNanos the time of decoding the current settings, they are decoded once for all
+	 *            executions with the same settings.
+	 */
+	QcExecutionMetrics(final String node, final String process, final long decodeNanos) {
+		m_node = node;
+		m_process = process;
+		m_decodeNanos = decodeNanos;
+		m_startAllocatedBytes = allocatedBytes();
+		m_startNanos = System.nanoTime();
+	}
+
+	/**
+	 * @return the row output which counts the rows, bytes and time of the port into these metrics.
+	 */
+	RowOutput count(final int port, final RowOutput output) {
+		return new CountingRowOutput(port, output);
+	}
+
+	/**
+	 * Count the rows of a port which are not pushed to its row output, such as the Raw Data rows of
+	 * a parallel scan which are set at once as a table.
+	 */
+	void addPortRows(final int port, final long rows, final long bytes) {
+		m_portRows[port] += rows;
+		m_portBytes[port] += bytes;
+	}
+
+	void addScanNanos(final long nanos) {
+		m_scanNanos += nanos;
+	}
+
+	void addCalculationNanos(final long nanos) {
+		m_calculationNanos += nanos;
+	}
+
+	void setMaterialRows(final long rows) {
+		m_materialRows = rows;
+	}
+
+	void setCacheHit(final boolean cacheHit) {
+		m_cacheHit = cacheHit;
+	}
+
+	/**
+	 * Stop the metrics at the end of the execution.
+	 */
+	void finish() {
+		m_totalNanos = System.nanoTime() - m_startNanos;
+		final long allocated = allocatedBytes();
+		m_allocatedBytes = (allocated >= 0 && m_startAllocatedBytes >= 0) ? allocated - m_startAllocatedBytes : -1;
+	}
+
+	String getNode() {
+		return m_node;
+	}
+
+	String getProcess() {
+		return m_process;
+	}
+
+	long getTotalNanos() {
+		return m_totalNanos;
+	}
+
+	long getMaterialRows() {
+		return m_materialRows;
+	}
+
+	long getAllocatedBytes() {
+		return m_allocatedBytes;
+	}
+
+	boolean isCacheHit() {
+		return m_cacheHit;
+	}
+
+	long getRowsWritten() {
+		long rows = 0;
+		for(long r : m_portRows) {
+			rows += r;
+		}
+		return rows;
+	}
+
+	long getBytesWritten() {
+		long bytes = 0;
+		for(long b : m_portBytes) {
+			bytes += b;
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return the metrics by flow variable name in a fixed order, times in milliseconds. The counts
+	 *         are doubles too, they may exceed the range of an integer flow variable.
+	 */
+	Map<String, Double> toFlowVariables() {
+		final Map<String, Double> variables = new LinkedHashMap<>();
+		variables.put(PREFIX + "total_ms", toMillis(m_totalNanos));
+		variables.put(PREFIX + "decode_ms", toMillis(m_decodeNanos));
+		variables.put(PREFIX + "input_scan_ms", toMillis(m_scanNanos));
+		variables.put(PREFIX + "calculate_ms", toMillis(m_calculationNanos));
+		for(int p = 0; p < PORT_NAMES.length; p++) {
+			variables.put(PREFIX + PORT_NAMES[p] + "_ms", toMillis(m_portNanos[p]));
+			variables.put(PREFIX + PORT_NAMES[p] + "_rows", (double) m_portRows[p]);
+			variables.put(PREFIX + PORT_NAMES[p] + "_bytes", (double) m_portBytes[p]);
+		}
+		variables.put(PREFIX + "material_rows", (double) m_materialRows);
+		variables.put(PREFIX + "allocated_bytes", (double) m_allocatedBytes);
+		variables.put(PREFIX + "cache_hit", m_cacheHit ? 1.0 : 0.0);
+		return variables;
+	}
+
+	/**
+	 * @return a one-line summary for the log and JMX.
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append(m_node).append(" [").append(m_process).append("]: ").append(Math.round(toMillis(m_totalNanos)))
+				.append(" ms, scan ").append(Math.round(toMillis(m_scanNanos))).append(" ms, calculation ")
+				.append(Math.round(toMillis(m_calculationNanos))).append(" ms, ").append(m_materialRows)
+				.append(" material rows");
+		for(int p = 0; p < PORT_NAMES.length; p++) {
+			sb.append(", ").append(PORT_NAMES[p]).append(' ').append(m_portRows[p]).append(" rows/")
+					.append(m_portBytes[p]).append(" bytes");
+		}
+		if (m_allocatedBytes >= 0) {
+			sb.append(", allocated ").append(m_allocatedBytes).append(" bytes");
+		}
+		if (m_cacheHit) {
+			sb.append(", cached");
+		}
+		return sb.toString();
+	}
+
+	private static double toMillis(final long nanos) {
+		return nanos / 1e6;
+	}
+
+	/**
+	 * @return the bytes allocated by the current thread so far, -1 if the JVM does not measure it.
+	 */
+	private static long allocatedBytes() {
+		try {
+			final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if (bean instanceof com.sun.management.ThreadMXBean) {
+				final com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+				if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+					return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+				}
+			}
+		}
+		catch (LinkageError | UnsupportedOperationException e) {
+			//: Not a HotSpot JVM, the allocation is not measured.
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the approximate size of the row in memory: 8 bytes for a number and 2 bytes for every
+	 *         character of a text, the row key included. It does not depend on the table format.
+	 */
+	static long estimateBytes(final DataRow row) {
+		long bytes = 2L * row.getKey().getString().length();
+		for(int i = 0; i < row.getNumCells(); i++) {
+			final DataCell cell = row.getCell(i);
+			bytes += (cell instanceof StringValue) ? 2L * ((StringValue) cell).getStringValue().length() : 8;
+		}
+		return bytes;
+	}
+
+	/**
+	 * The row output which counts the rows into the metrics and passes them on.
+	 */
+	private final class CountingRowOutput extends RowOutput {
+		private final int m_port;
+
+		private final RowOutput m_output;
+
+		CountingRowOutput(final int port, final RowOutput output) {
+			m_port = port;
+			m_output = output;
+		}
+
+		@Override
+		public void push(final DataRow row) throws InterruptedException {
+			final long start = System.nanoTime();
+			m_output.push(row);
+			m_portRows[m_port]++;
+			m_portBytes[m_port] += estimateBytes(row);
+			m_portNanos[m_port] += System.nanoTime() - start;
+		}
+
+		/**
+		 * The rows of the table are not counted here, see addPortRows.
+		 */
+		@Override
+		public void setFully(final BufferedDataTable table) throws InterruptedException {
+			final long start = System.nanoTime();
+			m_output.setFully(table);
+			m_portNanos[m_port] += System.nanoTime() - start;
+		}
+
+		@Override
+		public void close() throws InterruptedException {
+			final long start = System.nanoTime();
+			m_output.close();
+			m_portNanos[m_port] += System.nanoTime() - start;
+		}
+	}
+}
@@ -0,0 +1,270 @@
+package org.greenopendata.node.mfca.qc;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import org.knime.core.util.FileUtil;
+
+/**
+ * The group totals spilled to disk by {@link QcGroupedCalculation} when they exceed its memory
+ * budget. Every spill writes the totals in memory as one run sorted by group, the runs are merged
+ * by group at the end with the totals still in memory, so the groups come out sorted while only
+ * one group of every run is in memory. The runs are read through memory-mapped windows.
+ *
+ * The totals of a group are merged in the order of the runs, the order in which the rows were read.
+ * The totals are written in their arithmetic, fixed-point totals are merged exactly.
+ *
+ * <pre>
+ * run file : records sorted by group, every record as key length (int), key (UTF-8 bytes) and
+ *            totals (see QcCalcAccumulator.write)
+ * </pre>
+ *
+ * @author Green Open Data
+ */
+final class QcGroupRuns {
+	/**
+	 * The size of the mapped window of a run.
+	 */
+	private static final int WINDOW = 16 << 20;
+
+	private final QcCalcAccumulator.Arithmetic m_arithmetic;
+
+	private final List<File> m_runs = new ArrayList<>();
+
+	/**
+	 * The files opened by the merge, they are closed by {@link #delete()} if the merge is not finished.
+	 */
+	private final List<FileChannel> m_channels = new ArrayList<>();
+
+	/**
+	 * @param arithmetic the arithmetic of the totals spilled.
+	 */
+	QcGroupRuns(final QcCalcAccumulator.Arithmetic arithmetic) {
+		m_arithmetic = arithmetic;
+	}
+
+	/**
+	 * Write the totals as a new run.
+	 *
+	 * @param groups the totals by group, not changed.
+	 */
+	void spill(final Map<String, QcCalcAccumulator> groups) throws IOException {
+		final List<String> keys = new ArrayList<>(groups.keySet());
+		Collections.sort(keys);
+
+		final File file = FileUtil.createTempFile("mfca-groups-", ".bin");
+		m_runs.add(file);
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file),
+				1 << 16))) {
+			for(String key : keys) {
+				final byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+				groups.get(key).write(out);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of runs spilled.
+	 */
+	int getRunCount() {
+		return m_runs.size();
+	}
+
+	/**
+	 * Merge the runs and the totals still in memory by group. The runs are read while the groups
+	 * are iterated, an I/O error is thrown as UncheckedIOException.
+	 *
+	 * @param rest the totals in memory, they come after the runs.
+	 * @return the totals of the dynamic material rows of every group, sorted by group.
+	 */
+	Iterator<Map.Entry<String, QcCalcAccumulator>> merge(final Map<String, QcCalcAccumulator> rest) throws IOException {
+		final PriorityQueue<Cursor> queue = new PriorityQueue<>();
+		for(int i = 0; i < m_runs.size(); i++) {
+			final RunCursor cursor = new RunCursor(i, m_runs.get(i), m_arithmetic);
+			m_channels.add(cursor.m_channel);
+			if (cursor.advance()) {
+				queue.add(cursor);
+			}
+		}
+		final Cursor restCursor = new MapCursor(m_runs.size(), rest);
+		if (restCursor.advance()) {
+			queue.add(restCursor);
+		}
+
+		return new Iterator<Map.Entry<String, QcCalcAccumulator>>() {
+			@Override
+			public boolean hasNext() {
+				return !queue.isEmpty();
+			}
+
+			@Override
+			public Map.Entry<String, QcCalcAccumulator> next() {
+				if (queue.isEmpty()) {
+					throw new NoSuchElementException();
+				}
+				final String key = queue.peek().m_key;
+				QcCalcAccumulator totals = null;
+				try {
+					while (!queue.isEmpty() && queue.peek().m_key.equals(key)) {
+						final Cursor cursor = queue.poll();
+						if (totals == null) {
+							totals = cursor.m_totals;
+						}
+						else {
+							totals.merge(cursor.m_totals);
+						}
+						if (cursor.advance()) {
+							queue.add(cursor);
+						}
+					}
+				}
+				catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				return new AbstractMap.SimpleImmutableEntry<>(key, totals);
+			}
+		};
+	}
+
+	/**
+	 * Delete the runs.
+	 */
+	void delete() {
+		for(FileChannel channel : m_channels) {
+			try {
+				channel.close();
+			}
+			catch (IOException e) {
+				//: Nothing more to do, the file is deleted below.
+			}
+		}
+		m_channels.clear();
+		for(File file : m_runs) {
+			//: A file still mapped may not be deleted on some platforms, the temp files are deleted on exit then.
+			file.delete();
+		}
+		m_runs.clear();
+	}
+
+	/**
+	 * The current group of a run, the cursors are ordered by group and then by run.
+	 */
+	private abstract static class Cursor implements Comparable<Cursor> {
+		private final int m_run;
+
+		String m_key;
+
+		QcCalcAccumulator m_totals;
+
+		Cursor(final int run) {
+			m_run = run;
+		}
+
+		/**
+		 * Move to the next group.
+		 *
+		 * @return false if there is no more group.
+		 */
+		abstract boolean advance() throws IOException;
+
+		@Override
+		public int compareTo(final Cursor other) {
+			final int c = m_key.compareTo(other.m_key);
+			return (c != 0) ? c : Integer.compare(m_run, other.m_run);
+		}
+	}
+
+	private static final class RunCursor extends Cursor {
+		private final FileChannel m_channel;
+
+		private final long m_size;
+
+		/** The file position of the mapped window. */
+		private long m_base = 0;
+
+		private MappedByteBuffer m_buffer = null;
+
+		private final QcCalcAccumulator.Arithmetic m_arithmetic;
+
+		RunCursor(final int run, final File file, final QcCalcAccumulator.Arithmetic arithmetic) throws IOException {
+			super(run);
+			m_arithmetic = arithmetic;
+			m_channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			m_size = m_channel.size();
+		}
+
+		@Override
+		boolean advance() throws IOException {
+			final long position = (m_buffer == null) ? 0 : m_base + m_buffer.position();
+			if (position >= m_size) {
+				m_channel.close();
+				return false;
+			}
+			ensure(Integer.BYTES);
+			final byte[] bytes = new byte[m_buffer.getInt()];
+			ensure(bytes.length + QcCalcAccumulator.bytes(m_arithmetic));
+			m_buffer.get(bytes);
+			m_key = new String(bytes, StandardCharsets.UTF_8);
+			m_totals = QcCalcAccumulator.read(m_buffer, m_arithmetic);
+			return true;
+		}
+
+		/**
+		 * Map the next window if the current one has less than the bytes left.
+		 */
+		private void ensure(final int bytes) throws IOException {
+			if (m_buffer != null && m_buffer.remaining() >= bytes) {
+				return;
+			}
+			final long position = (m_buffer == null) ? 0 : m_base + m_buffer.position();
+			if (position + bytes > m_size) {
+				throw new IOException("The spilled group totals are truncated.");
+			}
+			m_base = position;
+			m_buffer = m_channel.map(FileChannel.MapMode.READ_ONLY, position,
+					Math.min(m_size - position, Math.max(WINDOW, bytes)));
+		}
+	}
+
+	private static final class MapCursor extends Cursor {
+		private final Map<String, QcCalcAccumulator> m_groups;
+
+		private final Iterator<String> m_keys;
+
+		MapCursor(final int run, final Map<String, QcCalcAccumulator> groups) {
+			super(run);
+			final List<String> keys = new ArrayList<>(groups.keySet());
+			Collections.sort(keys);
+			m_groups = groups;
+			m_keys = keys.iterator();
+		}
+
+		@Override
+		boolean advance() {
+			if (!m_keys.hasNext()) {
+				return false;
+			}
+			m_key = m_keys.next();
+			m_totals = m_groups.get(m_key);
+			return true;
+		}
+	}
+}
@@ -0,0 +1,232 @@
+package org.greenopendata.node.mfca.qc;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.knime.core.node.KNIMEConstants;
+import org.knime.core.util.ThreadPool;
+
+/**
+ * MFCA calculation of every group of the dynamic material rows. A group has the static items of
+ * the QC settings and its own dynamic material rows, the same as executing the node once for
+ * every group in a group loop.
+ *
+ * The rows are collected in chunks, every chunk is aggregated by group on a sub-pool of the KNIME
+ * thread pool while the next chunk is being read. The partial totals of the chunks are merged in the order of the
+ * chunks, so the result does not depend on the number of threads or their timing.
+ * In fixed-point arithmetic it does not depend on the chunks either.
+ *
+ * The merged totals are kept within a memory budget. When they exceed it, they are spilled to disk
+ * as a sorted run and the merge starts again with no group in memory, see {@link QcGroupRuns}. The
+ * totals of a group spilled in several runs are added run by run, which may differ in the last bits
+ * from adding them chunk by chunk. Without spill, or in fixed-point arithmetic, the result is
+ * exactly the same.
+ *
+ * @author Green Open Data
+ */
+final class QcGroupedCalculation {
+	/**
+	 * Rows of one chunk.
+	 */
+	static final int CHUNK_SIZE = 16384;
+
+	private final ThreadPool m_pool;
+
+	/**
+	 * Chunks being aggregated, the oldest is merged first when there are too many.
+	 */
+	private final ArrayDeque<Future<Map<String, QcCalcAccumulator>>> m_pendingChunks = new ArrayDeque<>();
+
+	private final int m_maxPendingChunks;
+
+	/**
+	 * Totals of the dynamic material rows of every group, merged chunk by chunk.
+	 */
+	private final Map<String, QcCalcAccumulator> m_groups = new HashMap<>();
+
+	/**
+	 * The estimated heap size of a group in m_groups besides its key: the map entry and the totals.
+	 */
+	private static final int GROUP_BYTES = 160;
+
+	/**
+	 * The estimated heap size of m_groups, and the budget which it is spilled beyond.
+	 */
+	private long m_groupBytes = 0;
+	private final long m_memoryBudget;
+
+	private final QcCalcAccumulator.Arithmetic m_arithmetic;
+
+	private final QcGroupRuns m_runs;
+
+	private String[] m_keys;
+	private double[] m_unitPrice;
+	private double[] m_quantity;
+	private int m_size = 0;
+
+	/**
+	 * @param memoryBudget the heap in bytes for the merged totals of groups.
+	 * @param arithmetic the arithmetic of the totals.
+	 */
+	QcGroupedCalculation(final long memoryBudget, final QcCalcAccumulator.Arithmetic arithmetic) {
+		this(KNIMEConstants.GLOBAL_THREAD_POOL.createSubPool(), memoryBudget, arithmetic);
+	}
+
+	QcGroupedCalculation(final ThreadPool pool, final long memoryBudget,
+			final QcCalcAccumulator.Arithmetic arithmetic) {
+		m_pool = pool;
+		m_memoryBudget = memoryBudget;
+		m_arithmetic = arithmetic;
+		m_runs = new QcGroupRuns(arithmetic);
+		m_maxPendingChunks = 2 * Runtime.getRuntime().availableProcessors();
+		newChunk();
+	}
+
+	private void newChunk() {
+		m_keys = new String[CHUNK_SIZE];
+		m_unitPrice = new double[CHUNK_SIZE];
+		m_quantity = new double[CHUNK_SIZE];
+		m_size = 0;
+	}
+
+	/**
+	 * Add one dynamic material row of the group.
+	 */
+	void add(final String group, final double unitPrice, final double quantity)
+			throws IOException, InterruptedException {
+		m_keys[m_size] = group;
+		m_unitPrice[m_size] = unitPrice;
+		m_quantity[m_size] = quantity;
+		if (++m_size == CHUNK_SIZE) {
+			submitChunk();
+		}
+	}
+
+	private void submitChunk() throws IOException, InterruptedException {
+		final String[] keys = m_keys;
+		final double[] unitPrice = m_unitPrice;
+		final double[] quantity = m_quantity;
+		final int size = m_size;
+		final QcCalcAccumulator.Arithmetic arithmetic = m_arithmetic;
+		m_pendingChunks.addLast(m_pool.enqueue(() -> aggregate(keys, unitPrice, quantity, size, arithmetic)));
+		newChunk();
+
+		while (m_pendingChunks.size() > m_maxPendingChunks) {
+			mergeOldestChunk();
+		}
+	}
+
+	/**
+	 * Aggregate one chunk by group, the rows of a group are summed in the order of rows.
+	 */
+	private static Map<String, QcCalcAccumulator> aggregate(final String[] keys, final double[] unitPrice,
+			final double[] quantity, final int size, final QcCalcAccumulator.Arithmetic arithmetic) {
+		final Map<String, QcCalcAccumulator> groups = new HashMap<>();
+		for(int i = 0; i < size; i++) {
+			QcCalcAccumulator totals = groups.get(keys[i]);
+			if (totals == null) {
+				totals = new QcCalcAccumulator(arithmetic);
+				groups.put(keys[i], totals);
+			}
+			totals.addMaterial(unitPrice[i], quantity[i]);
+		}
+		return groups;
+	}
+
+	private void mergeOldestChunk() throws IOException, InterruptedException {
+		for(Map.Entry<String, QcCalcAccumulator> e : join(m_pendingChunks.removeFirst()).entrySet()) {
+			QcCalcAccumulator totals = m_groups.get(e.getKey());
+			if (totals == null) {
+				m_groups.put(e.getKey(), e.getValue());
+				m_groupBytes += GROUP_BYTES + 2L * e.getKey().length();
+			}
+			else {
+				totals.merge(e.getValue());
+			}
+		}
+		if (m_groupBytes > m_memoryBudget) {
+			m_runs.spill(m_groups);
+			m_groups.clear();
+			m_groupBytes = 0;
+		}
+	}
+
+	/**
+	 * Wait for the chunk, the waiting thread gives its place in the pool to the chunks.
+	 */
+	private Map<String, QcCalcAccumulator> join(final Future<Map<String, QcCalcAccumulator>> chunk)
+			throws InterruptedException {
+		try {
+			return m_pool.runInvisible(chunk::get);
+		}
+		catch (ExecutionException e) {
+			final Throwable cause = (e.getCause() instanceof ExecutionException) ? e.getCause().getCause() : e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * @return true if the totals were spilled to disk, there are too many groups to be kept in memory.
+	 */
+	boolean isSpilled() {
+		return m_runs.getRunCount() > 0;
+	}
+
+	/**
+	 * Wait for all chunks and make the totals of every group. When the totals are spilled, the
+	 * groups are merged from disk while they are iterated, and {@link #cancel()} must be called
+	 * after the iteration to delete the runs.
+	 *
+	 * @param model the QC settings, the static items are in the totals of every group.
+	 * @return the totals of groups, sorted by group.
+	 */
+	Iterator<Map.Entry<String, QcCalcAccumulator>> finish(final QcDecodedModel model)
+			throws IOException, InterruptedException {
+		if (m_size > 0) {
+			submitChunk();
+		}
+		while (!m_pendingChunks.isEmpty()) {
+			mergeOldestChunk();
+		}
+
+		final Iterator<Map.Entry<String, QcCalcAccumulator>> groups = m_runs.merge(m_groups);
+		return new Iterator<Map.Entry<String, QcCalcAccumulator>>() {
+			@Override
+			public boolean hasNext() {
+				return groups.hasNext();
+			}
+
+			@Override
+			public Map.Entry<String, QcCalcAccumulator> next() {
+				final Map.Entry<String, QcCalcAccumulator> group = groups.next();
+				final QcCalcAccumulator totals = model.createCalcTotals(m_arithmetic);
+				totals.merge(group.getValue());
+				return new AbstractMap.SimpleImmutableEntry<>(group.getKey(), totals);
+			}
+		};
+	}
+
+	/**
+	 * Cancel the chunks not yet aggregated and delete the spilled totals, when the execution is
+	 * canceled or failed or the groups are iterated.
+	 */
+	void cancel() {
+		for(Future<?> task : m_pendingChunks) {
+			task.cancel(true);
+		}
+		m_pendingChunks.clear();
+		m_runs.delete();
+	}
+}
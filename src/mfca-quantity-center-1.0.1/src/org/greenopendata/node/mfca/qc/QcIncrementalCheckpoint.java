@@ -0,0 +1,225 @@
+package org.greenopendata.node.mfca.qc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.data.container.filter.TableFilter;
+import org.knime.core.node.BufferedDataTable;
+
+/**
+ * The checkpoint of an incremental execution: the running totals of calculation after the material
+ * input rows read so far, and the number of those rows, the watermark. The next execution reads only
+ * the rows after the watermark, provided that the settings are the same and the rows before the
+ * watermark are unchanged.
+ *
+ * The rows before the watermark are verified by a checksum of sample rows spread over them, the
+ * first and the last one included. Only the sample rows and only their bound columns are read, which
+ * is much cheaper than calculating the rows again. A change of a row between the samples is not
+ * detected: resuming is safe only for a table which is appended to, not for a table whose earlier
+ * rows are edited, inserted or deleted in place with the same row count.
+ *
+ * <pre>
+ * file    : magic "MFIC" (int), version (byte), settings key, watermark (long), prefix checksum,
+ *           result key, arithmetic (byte, ordinal), running totals (see QcCalcAccumulator.write),
+ *           every key as length (int) and bytes
+ * </pre>
+ *
+ * A checkpoint of version 1 has no arithmetic, its totals are doubles.
+ *
+ * @author Green Open Data
+ */
+final class QcIncrementalCheckpoint {
+	/** "MFIC" */
+	private static final int MAGIC = 0x4D464943;
+
+	private static final byte VERSION = 2;
+
+	private static final byte VERSION_DOUBLE_TOTALS = 1;
+
+	private static final String FILE_NAME = "incremental_checkpoint.bin";
+
+	/**
+	 * The number of sample rows of the prefix checksum.
+	 */
+	private static final int SAMPLE_ROWS = 64;
+
+	/** The fingerprint of the settings, the checkpoint is only valid for the same settings. */
+	private final byte[] m_settingsKey;
+
+	/** The number of material input rows read, skipped rows included. */
+	private final long m_watermark;
+
+	/** The checksum of the rows before the watermark, null if it is not computed yet. */
+	private final byte[] m_prefixChecksum;
+
+	/** The fingerprint of the Calculation result, see {@link QcResultCache}. */
+	private final byte[] m_resultKey;
+
+	private final QcCalcAccumulator m_totals;
+
+	QcIncrementalCheckpoint(final byte[] settingsKey, final long watermark, final byte[] prefixChecksum,
+			final byte[] resultKey, final QcCalcAccumulator totals) {
+		m_settingsKey = settingsKey;
+		m_watermark = watermark;
+		m_prefixChecksum = prefixChecksum;
+		m_resultKey = resultKey;
+		m_totals = new QcCalcAccumulator(totals);
+	}
+
+	/**
+	 * @return the same checkpoint verified by the checksum of the rows before the watermark.
+	 */
+	QcIncrementalCheckpoint withPrefixChecksum(final byte[] prefixChecksum) {
+		return new QcIncrementalCheckpoint(m_settingsKey, m_watermark, prefixChecksum, m_resultKey, m_totals);
+	}
+
+	/**
+	 * @param settingsKey the fingerprint of current settings.
+	 * @param table the material input table.
+	 * @param columns the bound columns of the material input table.
+	 * @return true if the execution can continue from this checkpoint.
+	 */
+	boolean canResume(final byte[] settingsKey, final BufferedDataTable table, final int[] columns) {
+		return m_prefixChecksum != null && Arrays.equals(m_settingsKey, settingsKey) && table.size() >= m_watermark
+				&& Arrays.equals(m_prefixChecksum, prefixChecksum(table, columns, m_watermark));
+	}
+
+	long getWatermark() {
+		return m_watermark;
+	}
+
+	byte[] getResultKey() {
+		return m_resultKey;
+	}
+
+	/**
+	 * @return new running totals of the rows before the watermark.
+	 */
+	QcCalcAccumulator createTotals() {
+		return new QcCalcAccumulator(m_totals);
+	}
+
+	/**
+	 * The checksum of the first rows of the table: the row count, and the keys and the bound cells of
+	 * the sample rows. Every sample row is read by a filter of its own row index, with only the bound
+	 * columns materialized, the rows between the samples are not read.
+	 *
+	 * @param table the material input table.
+	 * @param columns the bound columns of the material input table.
+	 * @param rows the number of the first rows.
+	 * @return the checksum.
+	 */
+	static byte[] prefixChecksum(final BufferedDataTable table, final int[] columns, final long rows) {
+		final QcResultCache.Fingerprint checksum = new QcResultCache.Fingerprint().add(rows);
+		if (rows <= 0) {
+			return checksum.finish();
+		}
+		long previous = -1;
+		for(int k = 0; k < SAMPLE_ROWS; k++) {
+			//: The first and the last row are samples, the same row is not added twice of a short prefix.
+			final long index = (rows - 1) * k / (SAMPLE_ROWS - 1);
+			if (index == previous) {
+				continue;
+			}
+			previous = index;
+			final CloseableRowIterator iterator = table.filter(new TableFilter.Builder().withFromRowIndex(index)
+					.withToRowIndex(index).withMaterializeColumnIndices(columns).build());
+			try {
+				if (!iterator.hasNext()) {
+					break;
+				}
+				final DataRow row = iterator.next();
+				checksum.add(index).add(row.getKey().getString());
+				for(int c : columns) {
+					final DataCell cell = row.getCell(c);
+					checksum.add(cell.isMissing() ? null : cell.toString());
+				}
+			}
+			finally {
+				iterator.close();
+			}
+		}
+		return checksum.finish();
+	}
+
+	/**
+	 * Save the checkpoint in the node internals directory.
+	 */
+	void save(final File nodeInternDir) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(new File(nodeInternDir, FILE_NAME))))) {
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			writeBytes(out, m_settingsKey);
+			out.writeLong(m_watermark);
+			writeBytes(out, m_prefixChecksum);
+			writeBytes(out, m_resultKey);
+			out.writeByte(m_totals.getArithmetic().ordinal());
+			m_totals.write(out);
+		}
+	}
+
+	/**
+	 * Load the checkpoint saved in the node internals directory.
+	 *
+	 * @return the checkpoint, or null if there is none or it is of an unknown version.
+	 */
+	static QcIncrementalCheckpoint load(final File nodeInternDir) throws IOException {
+		final File file = new File(nodeInternDir, FILE_NAME);
+		if (!file.isFile()) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC) {
+				return null;
+			}
+			final byte version = in.readByte();
+			if (version != VERSION && version != VERSION_DOUBLE_TOTALS) {
+				return null;
+			}
+			final byte[] settingsKey = readBytes(in);
+			final long watermark = in.readLong();
+			final byte[] prefixChecksum = readBytes(in);
+			final byte[] resultKey = readBytes(in);
+			QcCalcAccumulator.Arithmetic arithmetic = QcCalcAccumulator.Arithmetic.FLOATING_POINT;
+			if (version == VERSION) {
+				final int ordinal = in.readByte();
+				if (ordinal < 0 || ordinal >= QcCalcAccumulator.Arithmetic.values().length) {
+					return null;
+				}
+				arithmetic = QcCalcAccumulator.Arithmetic.values()[ordinal];
+			}
+			return new QcIncrementalCheckpoint(settingsKey, watermark, prefixChecksum, resultKey,
+					QcCalcAccumulator.read(in, arithmetic));
+		}
+	}
+
+	private static void writeBytes(final DataOutputStream out, final byte[] bytes) throws IOException {
+		if (bytes == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static byte[] readBytes(final DataInputStream in) throws IOException {
+		final int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		final byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return bytes;
+	}
+}
@@ -0,0 +1,51 @@
+package org.greenopendata.node.mfca.qc;
+
+/**
+ * A chunk of material input rows kept by column in primitive arrays. The rows are collected
+ * until the chunk is full and then summed by {@link QcCalcAccumulator#addMaterials}, the
+ * arrays are reused for every chunk, so no object is allocated per material row.
+ *
+ * @author Green Open Data
+ */
+final class QcMaterialColumns {
+	/**
+	 * Rows of one chunk, two columns of 8 bytes each row.
+	 */
+	static final int DEFAULT_CAPACITY = 4096;
+
+	private final double[] m_unitPrice;
+	private final double[] m_quantity;
+	private int m_size = 0;
+
+	QcMaterialColumns() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	QcMaterialColumns(final int capacity) {
+		m_unitPrice = new double[capacity];
+		m_quantity = new double[capacity];
+	}
+
+	/**
+	 * Add one material row to the chunk.
+	 *
+	 * @return true if the chunk is full and must be flushed before adding more rows.
+	 */
+	boolean add(final double unitPrice, final double quantity) {
+		m_unitPrice[m_size] = unitPrice;
+		m_quantity[m_size] = quantity;
+		return ++m_size == m_unitPrice.length;
+	}
+
+	/**
+	 * Sum the rows of the chunk into the totals and empty the chunk.
+	 */
+	void flushTo(final QcCalcAccumulator totals) {
+		totals.addMaterials(m_unitPrice, m_quantity, 0, m_size);
+		m_size = 0;
+	}
+
+	int size() {
+		return m_size;
+	}
+}
@@ -0,0 +1,392 @@
+package org.greenopendata.node.mfca.qc;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DoubleValue;
+import org.knime.core.data.DataValue;
+import org.knime.core.data.StringValue;
+import org.knime.core.data.v2.ReadValue;
+import org.knime.core.data.v2.RowRead;
+import org.knime.core.node.InvalidSettingsException;
+
+/**
+ * The binding of the material input port columns. The columns are found by name once per
+ * execution, so the upstream table may have the columns in any order and other columns
+ * besides them. Text columns may be of any type, number columns may be of any type
+ * compatible with DoubleValue, such as integer or long.
+ *
+ * An optional group column can be bound too, its value is read as text.
+ *
+ * A binding reads one row at a time into its current values, which avoids allocating any
+ * object per row. A row is read either as a DataRow or through a row cursor, the cursor reads
+ * the numbers as primitive doubles without a DataCell on the columnar table backend.
+ *
+ * @author Green Open Data
+ */
+final class QcMaterialInputBinding {
+	/**
+	 * How the material rows with missing cells are handled.
+	 */
+	enum MissingValuePolicy {
+		/** Stop the execution. */
+		FAIL("Fail the execution"),
+		/** The row is not in calculation nor in Raw Data. */
+		SKIP("Skip the row"),
+		/** Missing numbers are 0 and missing text is empty. */
+		ZERO("Use 0 for numbers and empty text");
+
+		private final String m_label;
+
+		MissingValuePolicy(final String label) {
+			m_label = label;
+		}
+
+		String getLabel() {
+			return m_label;
+		}
+
+		/**
+		 * @return the policy of the settings value, FAIL if it is unknown.
+		 */
+		static MissingValuePolicy fromSettings(final String value) {
+			for(MissingValuePolicy p : values()) {
+				if (p.name().equals(value)) {
+					return p;
+				}
+			}
+			return FAIL;
+		}
+	}
+
+	static final String PART_NO = "part_no";
+	static final String PART_NAME = "part_name";
+	static final String UNIT = "unit";
+	static final String UNIT_PRICE = "unit_price";
+	static final String QUANTITY = "quantity";
+
+	/**
+	 * The maximum number of unit texts whose factors are kept.
+	 */
+	private static final int MAX_UNITS = 4096;
+
+	private final int m_partNoIndex;
+	private final int m_partNameIndex;
+	private final int m_unitIndex;
+	private final int m_unitPriceIndex;
+	private final int m_quantityIndex;
+	/** -1 if there is no group column. */
+	private final int m_groupIndex;
+
+	private final MissingValuePolicy m_policy;
+
+	/*
+	 * Values of the current row.
+	 */
+	private String m_partNo;
+	private String m_partName;
+	private String m_unit;
+	private double m_unitPrice;
+	private double m_quantity;
+	private String m_group;
+
+	private long m_skippedRows = 0;
+
+	/**
+	 * The unit prices which replace the ones of the rows, null if there is no price list.
+	 */
+	private QcPriceIndex m_prices = null;
+
+	/**
+	 * The conversion of the quantities to kilogram, null if the units are not converted.
+	 */
+	private QcUnitConversion m_units = null;
+
+	/**
+	 * The factors of the unit texts read by this binding, so a unit text is normalized and looked up
+	 * in the conversion table once per distinct value, not once per row. The rows of a table have
+	 * a new string per cell, the texts are compared by value.
+	 */
+	private final Map<String, Double> m_unitFactors = new HashMap<>();
+
+	/**
+	 * The unit of the last converted row and its factor, a run of rows with the same unit text
+	 * object is converted without looking up the unit.
+	 */
+	private String m_lastUnit = null;
+	private double m_lastFactor = 1;
+
+	private QcMaterialInputBinding(final int[] indices, final int groupIndex, final MissingValuePolicy policy) {
+		m_partNoIndex = indices[0];
+		m_partNameIndex = indices[1];
+		m_unitIndex = indices[2];
+		m_unitPriceIndex = indices[3];
+		m_quantityIndex = indices[4];
+		m_groupIndex = groupIndex;
+		m_policy = policy;
+	}
+
+	/**
+	 * Resolve the material input columns of the table spec.
+	 *
+	 * @param spec the spec of the material input table.
+	 * @param policy the handling of missing cells.
+	 * @return the binding.
+	 * @throws InvalidSettingsException if a column is not found or a number column is not numeric.
+	 */
+	static QcMaterialInputBinding bind(final DataTableSpec spec, final MissingValuePolicy policy)
+			throws InvalidSettingsException {
+		return bind(spec, policy, null);
+	}
+
+	/**
+	 * Resolve the material input columns and the group column of the table spec.
+	 *
+	 * @param spec the spec of the material input table.
+	 * @param policy the handling of missing cells, the group column included.
+	 * @param groupColumn the name of the group column, or null if the rows are not grouped.
+	 * @return the binding.
+	 * @throws InvalidSettingsException if a column is not found or a number column is not numeric.
+	 */
+	static QcMaterialInputBinding bind(final DataTableSpec spec, final MissingValuePolicy policy,
+			final String groupColumn) throws InvalidSettingsException {
+		final int[] indices = new int[] {
+			findColumn(spec, PART_NO, false),
+			findColumn(spec, PART_NAME, false),
+			findColumn(spec, UNIT, false),
+			findColumn(spec, UNIT_PRICE, true),
+			findColumn(spec, QUANTITY, true)
+		};
+		final int groupIndex = (groupColumn == null) ? -1 : findColumn(spec, groupColumn, false);
+		return new QcMaterialInputBinding(indices, groupIndex, policy);
+	}
+
+	private static int findColumn(final DataTableSpec spec, final String name, final boolean numeric)
+			throws InvalidSettingsException {
+		final int index = spec.findColumnIndex(name);
+		if (index < 0) {
+			throw new InvalidSettingsException("A material input table must have column " + name + ".");
+		}
+		final DataColumnSpec columnSpec = spec.getColumnSpec(index);
+		if (numeric && !columnSpec.getType().isCompatible(DoubleValue.class)) {
+			throw new InvalidSettingsException("The column " + name + " of material input table must be numeric.");
+		}
+		return index;
+	}
+
+	/**
+	 * @return the indices of the bound columns, the only columns read from the input table.
+	 */
+	int[] getColumnIndices() {
+		if (m_groupIndex >= 0) {
+			return new int[] { m_partNoIndex, m_partNameIndex, m_unitIndex, m_unitPriceIndex, m_quantityIndex,
+					m_groupIndex };
+		}
+		return new int[] { m_partNoIndex, m_partNameIndex, m_unitIndex, m_unitPriceIndex, m_quantityIndex };
+	}
+
+	/**
+	 * @return a binding of the same columns and policy with no current row and no skipped row, for
+	 *         reading the rows on another thread. It has its own factors of the unit texts.
+	 */
+	QcMaterialInputBinding copy() {
+		final QcMaterialInputBinding copy = new QcMaterialInputBinding(new int[] { m_partNoIndex, m_partNameIndex,
+				m_unitIndex, m_unitPriceIndex, m_quantityIndex }, m_groupIndex, m_policy);
+		copy.m_prices = m_prices;
+		copy.m_units = m_units;
+		return copy;
+	}
+
+	/**
+	 * Read the unit price of the parts in the price list from the list instead of the row.
+	 *
+	 * @param prices the price list, or null to read the unit price of the row.
+	 */
+	void setPriceIndex(final QcPriceIndex prices) {
+		m_prices = prices;
+	}
+
+	/**
+	 * Convert the quantity of every row to kilogram, the unit price is converted so that the cost
+	 * stays the same, and the unit is kg.
+	 *
+	 * @param units the conversion table, or null to read the quantity and unit of the row.
+	 */
+	void setUnitConversion(final QcUnitConversion units) {
+		m_units = units;
+		m_unitFactors.clear();
+		m_lastUnit = null;
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the unit of current row can not be converted.
+	 */
+	private void convertUnit() {
+		if (m_unit != m_lastUnit) {
+			Double factor = m_unitFactors.get(m_unit);
+			if (factor == null) {
+				factor = m_units.getFactor(m_units.idOf(m_unit));
+				if (m_unitFactors.size() < MAX_UNITS) {
+					m_unitFactors.put(m_unit, factor);
+				}
+			}
+			m_lastFactor = factor;
+			m_lastUnit = m_unit;
+		}
+		m_quantity *= m_lastFactor;
+		m_unitPrice /= m_lastFactor;
+		m_unit = QcUnitConversion.BASE_UNIT;
+	}
+
+	/**
+	 * @return true if a group column is bound.
+	 */
+	boolean hasGroup() {
+		return m_groupIndex >= 0;
+	}
+
+	/**
+	 * Read the bound columns of the row into the current values.
+	 *
+	 * @param row the material input row.
+	 * @return false if the row is skipped because of missing cells.
+	 * @throws IllegalArgumentException if a cell is missing and the policy is FAIL.
+	 */
+	boolean read(final DataRow row) {
+		final DataCell partNo = row.getCell(m_partNoIndex);
+		final DataCell partName = row.getCell(m_partNameIndex);
+		final DataCell unit = row.getCell(m_unitIndex);
+		final DataCell unitPrice = row.getCell(m_unitPriceIndex);
+		final DataCell quantity = row.getCell(m_quantityIndex);
+		final DataCell group = (m_groupIndex >= 0) ? row.getCell(m_groupIndex) : null;
+
+		if (partNo.isMissing() || partName.isMissing() || unit.isMissing() || unitPrice.isMissing()
+				|| quantity.isMissing() || (group != null && group.isMissing())) {
+			if (!acceptMissing(row.getKey().getString())) {
+				return false;
+			}
+		}
+		m_partNo = toText(partNo);
+		m_partName = toText(partName);
+		m_unit = toText(unit);
+		m_unitPrice = (m_prices != null) ? m_prices.get(m_partNo, toNumber(unitPrice)) : toNumber(unitPrice);
+		m_quantity = toNumber(quantity);
+		m_group = (group != null) ? toText(group) : null;
+		if (m_units != null) {
+			convertUnit();
+		}
+		return true;
+	}
+
+	/**
+	 * Read the bound columns of the row of a row cursor into the current values, the same as
+	 * {@link #read(DataRow)}.
+	 *
+	 * @param row the material input row of a cursor.
+	 * @return false if the row is skipped because of missing cells.
+	 * @throws IllegalArgumentException if a cell is missing and the policy is FAIL.
+	 */
+	boolean read(final RowRead row) {
+		if (row.isMissing(m_partNoIndex) || row.isMissing(m_partNameIndex) || row.isMissing(m_unitIndex)
+				|| row.isMissing(m_unitPriceIndex) || row.isMissing(m_quantityIndex)
+				|| (m_groupIndex >= 0 && row.isMissing(m_groupIndex))) {
+			if (!acceptMissing(row.getRowKey().getString())) {
+				return false;
+			}
+		}
+		m_partNo = toText(row, m_partNoIndex);
+		m_partName = toText(row, m_partNameIndex);
+		m_unit = toText(row, m_unitIndex);
+		m_unitPrice = (m_prices != null) ? m_prices.get(m_partNo, toNumber(row, m_unitPriceIndex))
+				: toNumber(row, m_unitPriceIndex);
+		m_quantity = toNumber(row, m_quantityIndex);
+		m_group = (m_groupIndex >= 0) ? toText(row, m_groupIndex) : null;
+		if (m_units != null) {
+			convertUnit();
+		}
+		return true;
+	}
+
+	/**
+	 * Apply the policy to a row with missing cells.
+	 *
+	 * @return true if the row is read with default values, false if it is skipped.
+	 * @throws IllegalArgumentException if the policy is FAIL.
+	 */
+	private boolean acceptMissing(final String rowKey) {
+		if (m_policy == MissingValuePolicy.SKIP) {
+			++m_skippedRows;
+			return false;
+		}
+		if (m_policy == MissingValuePolicy.FAIL) {
+			throw new IllegalArgumentException("The material input row " + rowKey
+					+ " has missing values, change the missing value handling to skip or accept it.");
+		}
+		return true;
+	}
+
+	static String toText(final RowRead row, final int index) {
+		if (row.isMissing(index)) {
+			return "";
+		}
+		final DataValue value = row.getValue(index);
+		if (value instanceof StringValue) {
+			return ((StringValue) value).getStringValue();
+		}
+		//: The text of other types is the one of their cell, such as an integer part number.
+		return (value instanceof ReadValue) ? ((ReadValue) value).getDataCell().toString() : value.toString();
+	}
+
+	static double toNumber(final RowRead row, final int index) {
+		return row.isMissing(index) ? 0 : row.<DoubleValue>getValue(index).getDoubleValue();
+	}
+
+	private static String toText(final DataCell cell) {
+		if (cell.isMissing()) {
+			return "";
+		}
+		return (cell instanceof StringValue) ? ((StringValue) cell).getStringValue() : cell.toString();
+	}
+
+	private static double toNumber(final DataCell cell) {
+		return cell.isMissing() ? 0 : ((DoubleValue) cell).getDoubleValue();
+	}
+
+	String getPartNo() {
+		return m_partNo;
+	}
+
+	String getPartName() {
+		return m_partName;
+	}
+
+	String getUnit() {
+		return m_unit;
+	}
+
+	double getUnitPrice() {
+		return m_unitPrice;
+	}
+
+	double getQuantity() {
+		return m_quantity;
+	}
+
+	/**
+	 * @return the group of current row, null if there is no group column.
+	 */
+	String getGroup() {
+		return m_group;
+	}
+
+	/**
+	 * @return the number of rows skipped because of missing cells.
+	 */
+	long getSkippedRows() {
+		return m_skippedRows;
+	}
+}
@@ -0,0 +1,101 @@
+package org.greenopendata.node.mfca.qc;
+
+import org.knime.core.data.DataRow;
+import org.knime.core.data.v2.RowCursor;
+import org.knime.core.data.v2.RowRead;
+import org.knime.core.node.streamable.RowInput;
+
+/**
+ * The material input rows of an execution, read one at a time into a binding. The rows of a
+ * buffered table are read by a row cursor, which reads the bound columns without DataCell objects
+ * on the columnar table backend and from the cells on the row backend. The rows of the streaming
+ * execution are read from the row input.
+ *
+ * @author Green Open Data
+ */
+abstract class QcMaterialRowSource {
+	/**
+	 * Move to the next row.
+	 *
+	 * @return false if there is no more row.
+	 */
+	abstract boolean forward() throws InterruptedException;
+
+	/**
+	 * Read the current row into the binding.
+	 *
+	 * @return false if the row is skipped because of missing cells, see QcMaterialInputBinding.
+	 */
+	abstract boolean read(QcMaterialInputBinding binding);
+
+	/**
+	 * Release the rows, the source is not read any more.
+	 */
+	abstract void close();
+
+	/**
+	 * @return the source of the rows of a row cursor, the source closes the cursor.
+	 */
+	static QcMaterialRowSource of(final RowCursor cursor) {
+		return new CursorSource(cursor);
+	}
+
+	/**
+	 * @return the source of the rows of a row input, the source closes the row input.
+	 */
+	static QcMaterialRowSource of(final RowInput input) {
+		return new RowInputSource(input);
+	}
+
+	private static final class CursorSource extends QcMaterialRowSource {
+		private final RowCursor m_cursor;
+
+		private RowRead m_row = null;
+
+		CursorSource(final RowCursor cursor) {
+			m_cursor = cursor;
+		}
+
+		@Override
+		boolean forward() {
+			m_row = m_cursor.forward();
+			return m_row != null;
+		}
+
+		@Override
+		boolean read(final QcMaterialInputBinding binding) {
+			return binding.read(m_row);
+		}
+
+		@Override
+		void close() {
+			m_cursor.close();
+		}
+	}
+
+	private static final class RowInputSource extends QcMaterialRowSource {
+		private final RowInput m_input;
+
+		private DataRow m_row = null;
+
+		RowInputSource(final RowInput input) {
+			m_input = input;
+		}
+
+		@Override
+		boolean forward() throws InterruptedException {
+			m_row = m_input.poll();
+			return m_row != null;
+		}
+
+		@Override
+		boolean read(final QcMaterialInputBinding binding) {
+			return binding.read(m_row);
+		}
+
+		@Override
+		void close() {
+			m_input.close();
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package org.greenopendata.node.mfca.qc;
+
+import java.util.Map;
+
+/**
+ * The JMX view of the executions of all Quantity Center nodes of the KNIME instance, registered by
+ * {@link QuantityCenterNodePlugin} as {@value QcMetricsRegistry#OBJECT_NAME}. The totals are summed
+ * since the plugin is started or the last {@link #reset()}.
+ *
+ * @author Green Open Data
+ */
+public interface QcMetricsMXBean {
+	long getExecutionCount();
+
+	long getTotalExecutionTimeMillis();
+
+	long getMaterialRowsRead();
+
+	long getRowsWritten();
+
+	long getBytesWritten();
+
+	long getCacheHits();
+
+	/**
+	 * @return the summed execution time by node, to find the bottleneck of a workflow.
+	 */
+	Map<String, Long> getExecutionTimeMillisByNode();
+
+	/**
+	 * @return the summaries of the recent executions, the latest first.
+	 */
+	String[] getRecentExecutions();
+
+	/**
+	 * Clear all metrics.
+	 */
+	void reset();
+}
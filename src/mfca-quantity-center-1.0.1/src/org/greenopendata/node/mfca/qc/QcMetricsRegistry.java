@@ -0,0 +1,126 @@
+package org.greenopendata.node.mfca.qc;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The metrics of the executions of all Quantity Center nodes, shared by the nodes and published by
+ * JMX. Every node records its metrics at the end of an execution, a few times per execution at most,
+ * so a lock is enough.
+ *
+ * @author Green Open Data
+ */
+final class QcMetricsRegistry implements QcMetricsMXBean {
+	/**
+	 * The JMX object name.
+	 */
+	static final String OBJECT_NAME = "org.greenopendata.mfca:type=QuantityCenter";
+
+	private static final QcMetricsRegistry INSTANCE = new QcMetricsRegistry();
+
+	/**
+	 * The number of recent executions kept.
+	 */
+	private static final int RECENT_EXECUTIONS = 100;
+
+	private long m_executionCount = 0;
+
+	private long m_totalNanos = 0;
+
+	private long m_materialRows = 0;
+
+	private long m_rowsWritten = 0;
+
+	private long m_bytesWritten = 0;
+
+	private long m_cacheHits = 0;
+
+	private final Map<String, Long> m_nanosByNode = new HashMap<>();
+
+	private final Deque<String> m_recent = new ArrayDeque<>(RECENT_EXECUTIONS);
+
+	private QcMetricsRegistry() {
+	}
+
+	static QcMetricsRegistry getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Add the metrics of a finished execution.
+	 */
+	synchronized void record(final QcExecutionMetrics metrics) {
+		++m_executionCount;
+		m_totalNanos += metrics.getTotalNanos();
+		m_materialRows += metrics.getMaterialRows();
+		m_rowsWritten += metrics.getRowsWritten();
+		m_bytesWritten += metrics.getBytesWritten();
+		if (metrics.isCacheHit()) {
+			++m_cacheHits;
+		}
+		m_nanosByNode.merge(metrics.getNode(), metrics.getTotalNanos(), Long::sum);
+		if (m_recent.size() == RECENT_EXECUTIONS) {
+			m_recent.removeLast();
+		}
+		m_recent.addFirst(metrics.toString());
+	}
+
+	@Override
+	public synchronized long getExecutionCount() {
+		return m_executionCount;
+	}
+
+	@Override
+	public synchronized long getTotalExecutionTimeMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(m_totalNanos);
+	}
+
+	@Override
+	public synchronized long getMaterialRowsRead() {
+		return m_materialRows;
+	}
+
+	@Override
+	public synchronized long getRowsWritten() {
+		return m_rowsWritten;
+	}
+
+	@Override
+	public synchronized long getBytesWritten() {
+		return m_bytesWritten;
+	}
+
+	@Override
+	public synchronized long getCacheHits() {
+		return m_cacheHits;
+	}
+
+	@Override
+	public synchronized Map<String, Long> getExecutionTimeMillisByNode() {
+		final Map<String, Long> millis = new HashMap<>();
+		for(Map.Entry<String, Long> e : m_nanosByNode.entrySet()) {
+			millis.put(e.getKey(), TimeUnit.NANOSECONDS.toMillis(e.getValue()));
+		}
+		return millis;
+	}
+
+	@Override
+	public synchronized String[] getRecentExecutions() {
+		return m_recent.toArray(new String[m_recent.size()]);
+	}
+
+	@Override
+	public synchronized void reset() {
+		m_executionCount = 0;
+		m_totalNanos = 0;
+		m_materialRows = 0;
+		m_rowsWritten = 0;
+		m_bytesWritten = 0;
+		m_cacheHits = 0;
+		m_nanosByNode.clear();
+		m_recent.clear();
+	}
+}
@@ -0,0 +1,163 @@
+package org.greenopendata.node.mfca.qc;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DoubleValue;
+import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.data.container.filter.TableFilter;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.NodeLogger;
+
+/**
+ * A table model of a data table which reads the rows by page, only the pages of the visible rows are
+ * read. A page is read in background and the table is updated on the EDT when it arrives, a row of a
+ * page which is not read yet shows a placeholder. The recently used pages are kept.
+ *
+ * The model is used on the EDT only, except for the reading of pages.
+ *
+ * @author Green Open Data
+ */
+final class QcPagedTableModel extends AbstractTableModel {
+	private static final long serialVersionUID = 1L;
+
+	private static final NodeLogger LOGGER = NodeLogger.getLogger(QcPagedTableModel.class);
+
+	private static final int PAGE_SIZE = 500;
+
+	private static final int MAX_PAGES = 16;
+
+	private static final String LOADING = "…";
+
+	private final BufferedDataTable m_table;
+
+	private final String[] m_columnNames;
+
+	private final int m_rowCount;
+
+	private final Map<Long, DataRow[]> m_pages = new LinkedHashMap<Long, DataRow[]>(MAX_PAGES, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<Long, DataRow[]> eldest) {
+			return size() > MAX_PAGES;
+		}
+	};
+
+	private final Set<Long> m_loading = new HashSet<>();
+
+	private final ExecutorService m_loader = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "MFCA view page loader");
+		t.setDaemon(true);
+		return t;
+	});
+
+	/**
+	 * @param table the table to show, null for an empty model.
+	 */
+	QcPagedTableModel(final BufferedDataTable table) {
+		m_table = table;
+		if (table == null) {
+			m_columnNames = new String[0];
+			m_rowCount = 0;
+		}
+		else {
+			final DataTableSpec spec = table.getDataTableSpec();
+			m_columnNames = new String[spec.getNumColumns()];
+			for(int i = 0; i < m_columnNames.length; i++) {
+				m_columnNames[i] = spec.getColumnSpec(i).getName();
+			}
+			m_rowCount = (int) Math.min(Integer.MAX_VALUE, table.size());
+		}
+	}
+
+	@Override
+	public int getRowCount() {
+		return m_rowCount;
+	}
+
+	@Override
+	public int getColumnCount() {
+		return m_columnNames.length;
+	}
+
+	@Override
+	public String getColumnName(final int column) {
+		return m_columnNames[column];
+	}
+
+	@Override
+	public Object getValueAt(final int rowIndex, final int columnIndex) {
+		final long page = rowIndex / PAGE_SIZE;
+		final DataRow[] rows = m_pages.get(page);
+		if (rows == null) {
+			requestPage(page);
+			return LOADING;
+		}
+		final DataRow row = rows[rowIndex % PAGE_SIZE];
+		final DataCell cell = (row != null) ? row.getCell(columnIndex) : null;
+		if (cell == null || cell.isMissing()) {
+			return null;
+		}
+		return (cell instanceof DoubleValue) ? (Object) ((DoubleValue) cell).getDoubleValue() : cell.toString();
+	}
+
+	private void requestPage(final long page) {
+		if (!m_loading.add(page)) {
+			return;
+		}
+		m_loader.execute(() -> {
+			final DataRow[] rows = readPage(page);
+			SwingUtilities.invokeLater(() -> {
+				m_loading.remove(page);
+				if (rows != null) {
+					m_pages.put(page, rows);
+					fireTableRowsUpdated((int) (page * PAGE_SIZE), (int) (page * PAGE_SIZE + rows.length - 1));
+				}
+			});
+		});
+	}
+
+	/**
+	 * @return the rows of the page, null if the table can not be read any more, such as after a reset.
+	 */
+	private DataRow[] readPage(final long page) {
+		final long from = page * PAGE_SIZE;
+		final long to = Math.min(m_rowCount, from + PAGE_SIZE) - 1;
+		final DataRow[] rows = new DataRow[(int) (to - from + 1)];
+		try {
+			final CloseableRowIterator iterator = m_table.filter(new TableFilter.Builder().withFromRowIndex(from)
+					.withToRowIndex(to).build());
+			try {
+				for(int i = 0; i < rows.length && iterator.hasNext(); i++) {
+					rows[i] = iterator.next();
+				}
+			}
+			finally {
+				iterator.close();
+			}
+		}
+		catch (RuntimeException e) {
+			LOGGER.debug("The rows " + from + " to " + to + " can not be read: " + e.getMessage(), e);
+			return null;
+		}
+		return rows;
+	}
+
+	/**
+	 * Stop reading pages, the model is not used any more.
+	 */
+	void dispose() {
+		m_loader.shutdownNow();
+	}
+}
@@ -0,0 +1,250 @@
+package org.greenopendata.node.mfca.qc;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.greenopendata.mfca.qc.QcRawItemType;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.container.filter.TableFilter;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.KNIMEConstants;
+import org.knime.core.util.ThreadPool;
+
+/**
+ * The input scan of a buffered material input table on the KNIME global thread pool. The rows are
+ * split in ranges of a fixed size, every range is read into its own Raw Data table with its own
+ * sub-execution context, and the range tables are concatenated in the order of the ranges.
+ *
+ * The unit prices and quantities of a range are kept in primitive columns and added to the running
+ * totals on the executing thread in the order of the ranges, row by row, so the totals are exactly
+ * the same as with one thread. If the result is cached, the material rows are fingerprinted by range,
+ * the fingerprint of the rows does not depend on the number of threads either.
+ *
+ * The row keys of a range are known before it is read only if no row is skipped, so the scan is
+ * used only when the missing value policy does not skip rows and the rows are not grouped.
+ *
+ * @author Green Open Data
+ */
+final class QcParallelScan {
+	/**
+	 * Rows of one range, two columns of 8 bytes each row.
+	 */
+	static final int RANGE_ROWS = 1 << 18;
+
+	private static final int PROGRESS_INTERVAL_MASK = 1023;
+
+	private final BufferedDataTable m_table;
+
+	private final long m_fromRow;
+
+	private final QcMaterialInputBinding m_binding;
+
+	private final DataTableSpec m_rawDataSpec;
+
+	private final List<BufferedDataTable> m_tables = new ArrayList<>();
+
+	private long m_rowsRead = 0;
+
+	private long m_bytes = 0;
+
+	/**
+	 * @param table the material input table.
+	 * @param fromRow the first row to read, the watermark of the checkpoint if any.
+	 * @param binding the material input columns of the table, every range binds its own copy.
+	 * @param rawDataSpec the spec of Raw Data port.
+	 */
+	QcParallelScan(final BufferedDataTable table, final long fromRow, final QcMaterialInputBinding binding,
+			final DataTableSpec rawDataSpec) {
+		m_table = table;
+		m_fromRow = fromRow;
+		m_binding = binding;
+		m_rawDataSpec = rawDataSpec;
+	}
+
+	/**
+	 * @return true if the rows of the table from the row can be scanned in ranges: more than one
+	 *         range, no skipped row and no group.
+	 */
+	static boolean isApplicable(final BufferedDataTable table, final long fromRow,
+			final QcMaterialInputBinding.MissingValuePolicy policy, final String groupColumn) {
+		return table.size() - fromRow > RANGE_ROWS && policy != QcMaterialInputBinding.MissingValuePolicy.SKIP
+				&& groupColumn == null;
+	}
+
+	/**
+	 * Read the rows, the ranges are added to the totals and the fingerprint in the order of ranges.
+	 * At most two ranges per processor are read or waiting to be added at a time.
+	 *
+	 * @param exec the execution context of the scan, split among the ranges.
+	 * @param process the process of Raw Data rows.
+	 * @param calcTotals the running totals of calculation.
+	 * @param fingerprint the fingerprint of the execution, or null if the rows are not fingerprinted.
+	 */
+	void run(final ExecutionContext exec, final String process, final QcCalcAccumulator calcTotals,
+			final QcResultCache.Fingerprint fingerprint) throws Exception {
+		final long rowCount = m_table.size() - m_fromRow;
+		final ThreadPool pool = KNIMEConstants.GLOBAL_THREAD_POOL.createSubPool();
+		final int maxPendingRanges = 2 * Runtime.getRuntime().availableProcessors();
+		final ArrayDeque<Future<Range>> pendingRanges = new ArrayDeque<>();
+		try {
+			for(long from = m_fromRow; from < m_table.size(); from += RANGE_ROWS) {
+				final long start = from;
+				final long end = Math.min(from + RANGE_ROWS, m_table.size());
+				final ExecutionContext rangeExec = exec.createSubExecutionContext((double) (end - start) / rowCount);
+				pendingRanges.addLast(pool.enqueue(() -> scan(start, end, rangeExec, process, fingerprint != null)));
+				while (pendingRanges.size() > maxPendingRanges) {
+					add(pool, pendingRanges.removeFirst(), calcTotals, fingerprint);
+				}
+			}
+			while (!pendingRanges.isEmpty()) {
+				add(pool, pendingRanges.removeFirst(), calcTotals, fingerprint);
+			}
+		}
+		finally {
+			for(Future<Range> range : pendingRanges) {
+				range.cancel(true);	//: Only after a failure or cancel.
+			}
+		}
+	}
+
+	/**
+	 * Wait for the range and add it, the waiting thread gives its place in the pool to the ranges.
+	 */
+	private void add(final ThreadPool pool, final Future<Range> pendingRange, final QcCalcAccumulator calcTotals,
+			final QcResultCache.Fingerprint fingerprint) throws Exception {
+		final Range range;
+		try {
+			range = pool.runInvisible(pendingRange::get);
+		}
+		catch (ExecutionException e) {
+			final Throwable cause = (e.getCause() instanceof ExecutionException) ? e.getCause().getCause() : e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			throw e;
+		}
+		calcTotals.addMaterials(range.m_unitPrice, range.m_quantity, 0, range.m_size);
+		if (fingerprint != null) {
+			fingerprint.add(range.m_fingerprint);
+		}
+		m_tables.add(range.m_table);
+		m_rowsRead += range.m_size;
+		m_bytes += range.m_bytes;
+	}
+
+	/**
+	 * Read the rows of a range into its Raw Data table, on a thread of the pool.
+	 */
+	private Range scan(final long from, final long to, final ExecutionContext exec, final String process,
+			final boolean fingerprinted) throws Exception {
+		final QcMaterialInputBinding binding = m_binding.copy();
+		final QcCellCache cellCache = new QcCellCache();
+		final StringCell processCell = cellCache.get(process);
+		final StringCell dynamicTypeCell = cellCache.get(QcRawItemType.DYNAMIC_MATERIAL_INPUT);
+		final QcResultCache.Fingerprint fingerprint = fingerprinted ? new QcResultCache.Fingerprint() : null;
+		final int size = (int) (to - from);
+		final double[] unitPrices = new double[size];
+		final double[] quantities = new double[size];
+		final DataCell[] rawCells = new DataCell[8];
+		final BufferedDataContainer container = exec.createDataContainer(m_rawDataSpec);
+		long bytes = 0;
+
+		final QcMaterialRowSource rows = QcMaterialRowSource.of(m_table.cursor(new TableFilter.Builder()
+				.withFromRowIndex(from).withToRowIndex(to - 1)
+				.withMaterializeColumnIndices(binding.getColumnIndices()).build()));
+		try {
+			int i = 0;
+			while (rows.forward()) {
+				if ((i & PROGRESS_INTERVAL_MASK) == 0) {
+					exec.checkCanceled();
+					exec.setProgress((double) i / size);
+				}
+				if (!rows.read(binding)) {
+					throw new IllegalStateException("A material input row is skipped in a parallel scan.");
+				}
+				final double unitPrice = binding.getUnitPrice();
+				final double quantity = binding.getQuantity();
+				if (fingerprint != null) {
+					fingerprint.addRow(binding);
+				}
+				unitPrices[i] = unitPrice;
+				quantities[i] = quantity;
+
+				rawCells[0] = processCell;
+				rawCells[1] = dynamicTypeCell;
+				rawCells[2] = cellCache.get(binding.getPartNo());
+				rawCells[3] = cellCache.get(binding.getPartName());
+				rawCells[4] = cellCache.get(binding.getUnit());
+				rawCells[5] = new DoubleCell(quantity);
+				rawCells[6] = new DoubleCell(unitPrice);
+				rawCells[7] = new DoubleCell(unitPrice * quantity);
+
+				//: The row key is the one of the sequential scan, the index after the first row read.
+				final DataRow row = new DefaultRow(QcCellCache.rowKey(from - m_fromRow + i), rawCells);
+				container.addRowToTable(row);
+				bytes += QcExecutionMetrics.estimateBytes(row);
+				++i;
+			}
+			if (i != size) {
+				throw new IllegalStateException("Read " + i + " material input rows instead of " + size + ".");
+			}
+		}
+		finally {
+			rows.close();
+			container.close();
+		}
+		exec.setProgress(1.0);
+		return new Range(container.getTable(), unitPrices, quantities, size,
+				(fingerprint != null) ? fingerprint.finish() : null, bytes);
+	}
+
+	/**
+	 * @return the Raw Data tables of the ranges in order.
+	 */
+	List<BufferedDataTable> getTables() {
+		return m_tables;
+	}
+
+	long getRowsRead() {
+		return m_rowsRead;
+	}
+
+	/**
+	 * @return the estimated bytes of the Raw Data rows, see QcExecutionMetrics.estimateBytes.
+	 */
+	long getBytes() {
+		return m_bytes;
+	}
+
+	/**
+	 * A range read and waiting to be added.
+	 */
+	private static final class Range {
+		private final BufferedDataTable m_table;
+		private final double[] m_unitPrice;
+		private final double[] m_quantity;
+		private final int m_size;
+		private final byte[] m_fingerprint;
+		private final long m_bytes;
+
+		Range(final BufferedDataTable table, final double[] unitPrice, final double[] quantity, final int size,
+				final byte[] fingerprint, final long bytes) {
+			m_table = table;
+			m_unitPrice = unitPrice;
+			m_quantity = quantity;
+			m_size = size;
+			m_fingerprint = fingerprint;
+			m_bytes = bytes;
+		}
+	}
+}
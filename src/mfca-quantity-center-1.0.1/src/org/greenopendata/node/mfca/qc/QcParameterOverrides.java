@@ -0,0 +1,333 @@
+package org.greenopendata.node.mfca.qc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.greenopendata.mfca.qc.ec.EnergyCostRowItem;
+import org.greenopendata.mfca.qc.mi.MaterialInputRowItem;
+import org.greenopendata.mfca.qc.po.ProductOutputRowItem;
+import org.greenopendata.mfca.qc.sc.SystemCostRowItem;
+import org.greenopendata.mfca.qc.wt.WasteMgmtCostRowItem;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.workflow.FlowVariable;
+import org.knime.core.node.workflow.VariableType;
+
+/**
+ * The overrides of the values of static items by flow variables. A numeric flow variable named
+ * {@code <prefix><slot>.<item>} overrides one value of the items of the settings with the part
+ * number, consumer or item name, such as {@code qc.material_price.P-100} for the unit price of
+ * material P-100. A loop changes these variables only, the settings bytes are unchanged and are
+ * not decoded again.
+ *
+ * The overrides are applied on a copy of the decoded model, only the overridden items are copied.
+ * The usage of a material is its standard usage and its actual usage is calculated again from
+ * the yield, as in the row dialog of material input.
+ *
+ * @author Green Open Data
+ */
+final class QcParameterOverrides {
+	/**
+	 * The values which can be overridden.
+	 */
+	enum Slot {
+		MATERIAL_PRICE("material_price"),
+		/** The standard usage, the actual usage is the standard usage divided by the yield. */
+		MATERIAL_USAGE("material_usage"),
+		/**
+		 * A percentage as in the dialog, without the percent sign: 95 is a yield of 95%. The bulk
+		 * import reads a yield as a fraction instead and rejects a bare 95, see QcBulkImport.
+		 */
+		MATERIAL_YIELD("material_yield"),
+		ENERGY_PRICE("energy_price"),
+		/** The actual usage. */
+		ENERGY_USAGE("energy_usage"),
+		SYSTEM_PRICE("system_price"),
+		/** The actual usage. */
+		SYSTEM_USAGE("system_usage"),
+		WASTE_PRICE("waste_price"),
+		WASTE_QUANTITY("waste_quantity"),
+		PRODUCT_PRICE("product_price"),
+		PRODUCT_PASS("product_pass"),
+		PRODUCT_NG("product_ng");
+
+		private final String m_name;
+
+		Slot(final String name) {
+			m_name = name;
+		}
+
+		String getName() {
+			return m_name;
+		}
+
+		/**
+		 * @return the slot of the name, null if it is unknown.
+		 */
+		static Slot fromName(final String name) {
+			for(Slot s : values()) {
+				if (s.m_name.equals(name)) {
+					return s;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * No override, the decoded model is used as it is.
+	 */
+	static final QcParameterOverrides NONE = new QcParameterOverrides(Collections.emptyMap());
+
+	/**
+	 * The values by slot and item, in the order of names so the fingerprint does not depend on the
+	 * order of flow variables.
+	 */
+	private final Map<Slot, Map<String, Double>> m_values;
+
+	private QcParameterOverrides(final Map<Slot, Map<String, Double>> values) {
+		m_values = values;
+	}
+
+	/**
+	 * Read the overrides from the flow variables with the prefix, the other variables are ignored.
+	 *
+	 * @param prefix the prefix of the variable names, empty if nothing is overridden.
+	 * @param variables the numeric flow variables available to the node, by name.
+	 * @return the overrides.
+	 * @throws InvalidSettingsException if a variable with the prefix has no valid slot and item, or
+	 *             its value is not valid for the slot.
+	 */
+	static QcParameterOverrides read(final String prefix, final Map<String, FlowVariable> variables)
+			throws InvalidSettingsException {
+		if (prefix == null || prefix.isEmpty() || variables == null) {
+			return NONE;
+		}
+		final Map<Slot, Map<String, Double>> values = new TreeMap<>();
+		for(FlowVariable v : variables.values()) {
+			final String name = v.getName();
+			if (!name.startsWith(prefix)) {
+				continue;
+			}
+			final int dot = name.indexOf('.', prefix.length());
+			final Slot slot = (dot < 0) ? null : Slot.fromName(name.substring(prefix.length(), dot));
+			if (slot == null || dot == name.length() - 1) {
+				throw new InvalidSettingsException("The flow variable " + name + " is not an override, its name must be "
+						+ prefix + "<slot>.<item> with one of the slots " + slotNames() + ".");
+			}
+			final double value = VariableType.IntType.INSTANCE.equals(v.getVariableType())
+					? v.getValue(VariableType.IntType.INSTANCE) : v.getValue(VariableType.DoubleType.INSTANCE);
+			if (Double.isNaN(value) || Double.isInfinite(value) || (slot == Slot.MATERIAL_YIELD && value <= 0)) {
+				throw new InvalidSettingsException("The value " + value + " of flow variable " + name
+						+ " is not valid" + ((slot == Slot.MATERIAL_YIELD) ? ", a yield must be positive." : "."));
+			}
+			values.computeIfAbsent(slot, s -> new TreeMap<>()).put(name.substring(dot + 1), value);
+		}
+		return values.isEmpty() ? NONE : new QcParameterOverrides(values);
+	}
+
+	private static String slotNames() {
+		final List<String> names = new ArrayList<>();
+		for(Slot s : Slot.values()) {
+			names.add(s.getName());
+		}
+		return String.join(", ", names);
+	}
+
+	boolean isEmpty() {
+		return m_values.isEmpty();
+	}
+
+	/**
+	 * Add the overrides to the fingerprint, nothing but a marker if there is none.
+	 */
+	void addTo(final QcResultCache.Fingerprint fingerprint) {
+		fingerprint.add(m_values.size());
+		for(Map.Entry<Slot, Map<String, Double>> e : m_values.entrySet()) {
+			fingerprint.add(e.getKey().getName()).add(e.getValue().size());
+			for(Map.Entry<String, Double> v : e.getValue().entrySet()) {
+				fingerprint.add(v.getKey()).add(v.getValue().doubleValue());
+			}
+		}
+	}
+
+	/**
+	 * Apply the overrides on the decoded model. An override applies to every item with the part
+	 * number or item name.
+	 *
+	 * @param model the decoded settings, not changed.
+	 * @return the model itself if there is no override, otherwise a new model which shares the
+	 *         items not overridden.
+	 * @throws InvalidSettingsException if the usage or yield of a material without standard usage
+	 *             is overridden, such as in the settings of earlier versions.
+	 */
+	QcDecodedModel applyTo(final QcDecodedModel model) throws InvalidSettingsException {
+		if (isEmpty()) {
+			return model;
+		}
+		final List<MaterialInputRowItem> materialInput = new ArrayList<>(model.getMaterialInputItems());
+		for(int i = 0; i < materialInput.size(); i++) {
+			final MaterialInputRowItem r = materialInput.get(i);
+			final Double price = get(Slot.MATERIAL_PRICE, r.getPartNo());
+			final Double usage = get(Slot.MATERIAL_USAGE, r.getPartNo());
+			final Double yield = get(Slot.MATERIAL_YIELD, r.getPartNo());
+			if (price == null && usage == null && yield == null) {
+				continue;
+			}
+			final MaterialInputRowItem copy = (MaterialInputRowItem) r.clone();
+			if (price != null) {
+				copy.setUnitPrice(price);
+			}
+			if (usage != null || yield != null) {
+				final Double stdUsage = (usage != null) ? usage : r.getStdUsage();
+				if (stdUsage == null) {
+					throw new InvalidSettingsException("The material " + r.getPartNo()
+							+ " has no standard usage, please open and save the node settings before overriding its yield.");
+				}
+				final double fraction = (yield != null) ? yield / 100 : (r.getYield() != null) ? r.getYield() : 1.0;
+				copy.setStdUsage(stdUsage);
+				copy.setYield(fraction);
+				copy.setActUsage(stdUsage / fraction);
+			}
+			materialInput.set(i, copy);
+		}
+
+		final List<ProductOutputRowItem> productOutput = new ArrayList<>(model.getProductOutputRowItems());
+		for(int i = 0; i < productOutput.size(); i++) {
+			final ProductOutputRowItem r = productOutput.get(i);
+			final Double price = get(Slot.PRODUCT_PRICE, r.getPartNo());
+			final Double pass = get(Slot.PRODUCT_PASS, r.getPartNo());
+			final Double ng = get(Slot.PRODUCT_NG, r.getPartNo());
+			if (price == null && pass == null && ng == null) {
+				continue;
+			}
+			final ProductOutputRowItem copy = (ProductOutputRowItem) r.clone();
+			if (price != null) {
+				copy.setUnitPrice(price);
+			}
+			if (pass != null) {
+				copy.setQuantityPass(pass);
+			}
+			if (ng != null) {
+				copy.setQuantityNG(ng);
+			}
+			productOutput.set(i, copy);
+		}
+
+		final List<EnergyCostRowItem> energyCost = new ArrayList<>(model.getEnergyCostItems());
+		for(int i = 0; i < energyCost.size(); i++) {
+			final EnergyCostRowItem r = energyCost.get(i);
+			final Double price = get(Slot.ENERGY_PRICE, r.getItem());
+			final Double usage = get(Slot.ENERGY_USAGE, r.getItem());
+			if (price == null && usage == null) {
+				continue;
+			}
+			final EnergyCostRowItem copy = (EnergyCostRowItem) r.clone();
+			if (price != null) {
+				copy.setUnitPrice(price);
+			}
+			if (usage != null) {
+				copy.setActUsage(usage);
+			}
+			energyCost.set(i, copy);
+		}
+
+		final List<SystemCostRowItem> systemCost = new ArrayList<>(model.getSystemCostItems());
+		for(int i = 0; i < systemCost.size(); i++) {
+			final SystemCostRowItem r = systemCost.get(i);
+			final Double price = get(Slot.SYSTEM_PRICE, r.getItem());
+			final Double usage = get(Slot.SYSTEM_USAGE, r.getItem());
+			if (price == null && usage == null) {
+				continue;
+			}
+			final SystemCostRowItem copy = (SystemCostRowItem) r.clone();
+			if (price != null) {
+				copy.setUnitPrice(price);
+			}
+			if (usage != null) {
+				copy.setActUsage(usage);
+			}
+			systemCost.set(i, copy);
+		}
+
+		final List<WasteMgmtCostRowItem> wasteMgmtCost = new ArrayList<>(model.getWasteMgmtCostItems());
+		for(int i = 0; i < wasteMgmtCost.size(); i++) {
+			final WasteMgmtCostRowItem r = wasteMgmtCost.get(i);
+			final Double price = get(Slot.WASTE_PRICE, r.getItem());
+			final Double quantity = get(Slot.WASTE_QUANTITY, r.getItem());
+			if (price == null && quantity == null) {
+				continue;
+			}
+			final WasteMgmtCostRowItem copy = (WasteMgmtCostRowItem) r.clone();
+			if (price != null) {
+				copy.setUnitPrice(price);
+			}
+			if (quantity != null) {
+				copy.setQuantity(quantity);
+			}
+			wasteMgmtCost.set(i, copy);
+		}
+
+		return new QcDecodedModel(null, model.getProcess(), model.getNote(), model.getDisplayUnit(), materialInput,
+				productOutput, energyCost, systemCost, wasteMgmtCost);
+	}
+
+	private Double get(final Slot slot, final String item) {
+		final Map<String, Double> values = m_values.get(slot);
+		return (values == null || item == null) ? null : values.get(item);
+	}
+
+	/**
+	 * @return the names of the flow variables without prefix which match no item of the model,
+	 *         such as a misspelled part number.
+	 */
+	Set<String> getUnmatched(final QcDecodedModel model) {
+		final Set<String> unmatched = new LinkedHashSet<>();
+		for(Map.Entry<Slot, Map<String, Double>> e : m_values.entrySet()) {
+			final Set<String> items = new LinkedHashSet<>();
+			switch (e.getKey()) {
+			case MATERIAL_PRICE:
+			case MATERIAL_USAGE:
+			case MATERIAL_YIELD:
+				for(MaterialInputRowItem r : model.getMaterialInputItems()) {
+					items.add(r.getPartNo());
+				}
+				break;
+			case PRODUCT_PRICE:
+			case PRODUCT_PASS:
+			case PRODUCT_NG:
+				for(ProductOutputRowItem r : model.getProductOutputRowItems()) {
+					items.add(r.getPartNo());
+				}
+				break;
+			case ENERGY_PRICE:
+			case ENERGY_USAGE:
+				for(EnergyCostRowItem r : model.getEnergyCostItems()) {
+					items.add(r.getItem());
+				}
+				break;
+			case SYSTEM_PRICE:
+			case SYSTEM_USAGE:
+				for(SystemCostRowItem r : model.getSystemCostItems()) {
+					items.add(r.getItem());
+				}
+				break;
+			default:
+				for(WasteMgmtCostRowItem r : model.getWasteMgmtCostItems()) {
+					items.add(r.getItem());
+				}
+				break;
+			}
+			for(String item : e.getValue().keySet()) {
+				if (!items.contains(item)) {
+					unmatched.add(e.getKey().getName() + "." + item);
+				}
+			}
+		}
+		return unmatched;
+	}
+}
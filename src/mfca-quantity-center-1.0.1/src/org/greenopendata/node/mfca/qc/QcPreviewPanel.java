@@ -0,0 +1,203 @@
+package org.greenopendata.node.mfca.qc;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Dimension;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.BorderFactory;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+import javax.swing.event.TableModelListener;
+import javax.swing.table.TableModel;
+
+import org.greenopendata.mfca.qc.AbsQcRowItem;
+import org.greenopendata.mfca.qc.AbsQcSubPane;
+import org.greenopendata.mfca.qc.QcSettingsPane;
+import org.greenopendata.mfca.qc.ec.EnergyCostRowItem;
+import org.greenopendata.mfca.qc.mi.MaterialInputRowItem;
+import org.greenopendata.mfca.qc.po.ProductOutputRowItem;
+import org.greenopendata.mfca.qc.sc.SystemCostRowItem;
+import org.greenopendata.mfca.qc.wt.WasteMgmtCostRowItem;
+import org.knime.core.node.NodeLogger;
+
+/**
+ * The live preview of the calculation in the settings dialog. The settings tables are watched for
+ * edits, a pause of the edits starts the calculation of a snapshot of the tables in background and
+ * the result is shown on the EDT when it is ready. A calculation still running when a newer edit
+ * arrives is cancelled and its result is never shown.
+ *
+ * The preview has the static items of the settings only, the same as an execution without dynamic
+ * material input rows.
+ *
+ * @author Green Open Data
+ */
+final class QcPreviewPanel extends JPanel {
+	private static final long serialVersionUID = 1L;
+
+	private static final NodeLogger LOGGER = NodeLogger.getLogger(QcPreviewPanel.class);
+
+	/**
+	 * The pause of edits in milliseconds before the calculation starts.
+	 */
+	private static final int DEBOUNCE_MILLIS = 300;
+
+	private final QcCostChartPanel m_chart = new QcCostChartPanel(QcCostChartPanel.Mode.BREAKDOWN);
+
+	private final JLabel m_totals = new JLabel(" ");
+
+	private final Timer m_debounce;
+
+	private final TableModelListener m_listener = e -> schedule();
+
+	private final List<TableModel> m_models = new ArrayList<>();
+
+	private QcSettingsPane m_pane = null;
+
+	/**
+	 * The calculation of the latest snapshot, null if there is none running.
+	 */
+	private SwingWorker<double[], Void> m_worker = null;
+
+	QcPreviewPanel() {
+		super(new BorderLayout());
+		setBorder(BorderFactory.createTitledBorder("Preview"));
+		m_chart.setPreferredSize(new Dimension(480, 160));
+		m_chart.setSummary(null, "No settings yet.");
+		add(m_chart, BorderLayout.CENTER);
+		add(m_totals, BorderLayout.SOUTH);
+
+		m_debounce = new Timer(DEBOUNCE_MILLIS, e -> calculate());
+		m_debounce.setRepeats(false);
+	}
+
+	/**
+	 * Watch the tables of the settings pane, again after the pane is restored because its tables
+	 * may be new then. The preview is calculated once right away. Must be called on the EDT.
+	 */
+	void attach(final QcSettingsPane pane) {
+		detach();
+		m_pane = pane;
+		collectModels(pane);
+		for(TableModel model : m_models) {
+			model.addTableModelListener(m_listener);
+		}
+		schedule();
+	}
+
+	private void collectModels(final Container container) {
+		for(Component c : container.getComponents()) {
+			if (c instanceof AbsQcSubPane) {
+				m_models.add(((AbsQcSubPane<?>) c).getTableModel());
+			}
+			else if (c instanceof Container) {
+				collectModels((Container) c);
+			}
+		}
+	}
+
+	/**
+	 * Restart the pause of edits, the running calculation is outdated.
+	 */
+	private void schedule() {
+		cancel();
+		m_debounce.restart();
+	}
+
+	/**
+	 * Stop watching the tables and stop the pending and running calculation, when the dialog is
+	 * closed. The tables of a closed dialog are not calculated any more, until the panel is attached
+	 * again. Must be called on the EDT.
+	 */
+	void detach() {
+		cancel();
+		for(TableModel model : m_models) {
+			model.removeTableModelListener(m_listener);
+		}
+		m_models.clear();
+		m_pane = null;
+	}
+
+	/**
+	 * Stop the pending and running calculation.
+	 */
+	private void cancel() {
+		m_debounce.stop();
+		if (m_worker != null) {
+			m_worker.cancel(true);
+			m_worker = null;
+		}
+	}
+
+	/**
+	 * Take a snapshot of the tables on the EDT and calculate it in background. The row items are
+	 * copied, so the edits made meanwhile do not change the snapshot. The static items and totals
+	 * are built in background too.
+	 */
+	private void calculate() {
+		if (m_pane == null) {
+			return;
+		}
+		final List<MaterialInputRowItem> materialInput = copy(m_pane.getMaterialInputRowItems());
+		final List<ProductOutputRowItem> productOutput = copy(m_pane.getProductOutputRowItems());
+		final List<EnergyCostRowItem> energyCost = copy(m_pane.getEnergyCostRowItems());
+		final List<SystemCostRowItem> systemCost = copy(m_pane.getSystemCostRowItems());
+		final List<WasteMgmtCostRowItem> wasteMgmtCost = copy(m_pane.getWasteMgmtCostRowItems());
+		final SwingWorker<double[], Void> worker = new SwingWorker<double[], Void>() {
+			@Override
+			protected double[] doInBackground() {
+				return new QcDecodedModel(null, "", "", "", materialInput, productOutput, energyCost, systemCost,
+						wasteMgmtCost).createCalcTotals().getValues();
+			}
+
+			@Override
+			protected void done() {
+				if (isCancelled() || m_worker != this) {
+					return;
+				}
+				m_worker = null;
+				try {
+					show(get());
+				}
+				catch (CancellationException | InterruptedException e) {
+					//: A newer edit has arrived.
+				}
+				catch (ExecutionException e) {
+					LOGGER.debug("The preview can not be calculated: " + e.getCause().getMessage(), e.getCause());
+					m_chart.setSummary(null, "The settings can not be calculated.");
+					m_totals.setText(" ");
+				}
+			}
+		};
+		m_worker = worker;
+		worker.execute();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <E extends AbsQcRowItem> List<E> copy(final List<E> items) {
+		final List<E> copies = new ArrayList<>(items.size());
+		for(E item : items) {
+			copies.add((E) item.clone());
+		}
+		return copies;
+	}
+
+	private void show(final double[] values) {
+		m_chart.setSummary(QcCostSummary.of(values), null);
+		final NumberFormat nf = NumberFormat.getNumberInstance();
+		nf.setMaximumFractionDigits(2);
+		m_totals.setText("Material input " + nf.format(values[QcCalcAccumulator.MATERIAL_INPUT])
+				+ ", positive output " + nf.format(values[QcCalcAccumulator.POSITIVE_OUTPUT])
+				+ " (" + nf.format(values[QcCalcAccumulator.POSITIVE_OUTPUT_COST]) + ")"
+				+ ", negative loss " + nf.format(values[QcCalcAccumulator.NEGATIVE_LOSS])
+				+ " (" + nf.format(values[QcCalcAccumulator.NEGATIVE_LOSS_COST]) + ")"
+				+ ", balance " + nf.format(values[QcCalcAccumulator.BALANCE]));
+	}
+}
@@ -0,0 +1,275 @@
+package org.greenopendata.node.mfca.qc;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.greenopendata.mfca.qc.mi.MaterialInputRowItem;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DoubleValue;
+import org.knime.core.data.container.filter.TableFilter;
+import org.knime.core.data.v2.RowCursor;
+import org.knime.core.data.v2.RowRead;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeLogger;
+
+/**
+ * The unit prices of a price list table by part number, for the optional unit price port. The
+ * materials with a part number of the price list have its unit price, the static items of the
+ * settings and the dynamic material rows alike; the others keep their own unit price.
+ *
+ * The index is built once for a table and shared by all Quantity Center nodes of the JVM, so the
+ * iterations of a loop and the nodes connected to the same price list read it only once. A table
+ * is identified by its table ID and the table object itself, a few recent tables are kept while
+ * their table is alive.
+ *
+ * The part numbers and prices are kept in two arrays with open addressing, a price list of
+ * millions of parts has no entry object nor boxed price per part.
+ *
+ * @author Green Open Data
+ */
+final class QcPriceIndex {
+	private static final NodeLogger LOGGER = NodeLogger.getLogger(QcPriceIndex.class);
+
+	/**
+	 * The number of price lists kept for reuse, the least recently used one is dropped first.
+	 */
+	private static final int MAX_CACHED_TABLES = 4;
+
+	private static final int PROGRESS_INTERVAL_MASK = 1023;
+
+	/**
+	 * The indices by table ID, in the order of use.
+	 */
+	private static final Map<Integer, CachedIndex> CACHE = new LinkedHashMap<>(16, 0.75f, true);
+
+	private final String[] m_partNos;
+
+	private final double[] m_prices;
+
+	private final int m_mask;
+
+	private final int m_size;
+
+	/**
+	 * The fingerprint of the part numbers and prices, it tells apart the results of different prices.
+	 */
+	private final byte[] m_digest;
+
+	private QcPriceIndex(final String[] partNos, final double[] prices, final int size, final byte[] digest) {
+		m_partNos = partNos;
+		m_prices = prices;
+		m_mask = partNos.length - 1;
+		m_size = size;
+		m_digest = digest;
+	}
+
+	/**
+	 * Check the columns of a price list table.
+	 *
+	 * @throws InvalidSettingsException if a column is not found or the unit price is not numeric.
+	 */
+	static void checkSpec(final DataTableSpec spec) throws InvalidSettingsException {
+		findColumns(spec);
+	}
+
+	private static int[] findColumns(final DataTableSpec spec) throws InvalidSettingsException {
+		final int partNo = spec.findColumnIndex(QcMaterialInputBinding.PART_NO);
+		final int unitPrice = spec.findColumnIndex(QcMaterialInputBinding.UNIT_PRICE);
+		if (partNo < 0 || unitPrice < 0) {
+			throw new InvalidSettingsException("A unit price table must have columns " + QcMaterialInputBinding.PART_NO
+					+ " and " + QcMaterialInputBinding.UNIT_PRICE + ".");
+		}
+		final DataColumnSpec unitPriceSpec = spec.getColumnSpec(unitPrice);
+		if (!unitPriceSpec.getType().isCompatible(DoubleValue.class)) {
+			throw new InvalidSettingsException("The column " + QcMaterialInputBinding.UNIT_PRICE
+					+ " of unit price table must be numeric.");
+		}
+		return new int[] { partNo, unitPrice };
+	}
+
+	/**
+	 * The index of the price list table, built now only if it is not built yet for the same table.
+	 * The nodes which need the index of a table being built wait for it.
+	 *
+	 * @param table the price list table.
+	 * @param exec the monitor of building, to cancel it.
+	 * @return the index.
+	 */
+	static QcPriceIndex of(final BufferedDataTable table, final ExecutionMonitor exec)
+			throws InvalidSettingsException, CanceledExecutionException {
+		CachedIndex cached;
+		synchronized (CACHE) {
+			cached = CACHE.get(table.getBufferedTableId());
+			if (cached == null || cached.m_table.get() != table) {
+				cached = new CachedIndex(table);
+				CACHE.put(table.getBufferedTableId(), cached);
+				final Iterator<CachedIndex> it = CACHE.values().iterator();
+				while (it.hasNext()) {
+					if (it.next().m_table.get() == null || CACHE.size() > MAX_CACHED_TABLES) {
+						it.remove();	//: The table is gone or it is the least recently used one.
+					}
+				}
+			}
+		}
+		synchronized (cached) {
+			if (cached.m_index == null) {
+				cached.m_index = build(table, exec);	//: Built again by the next node if it is cancelled.
+			}
+			else {
+				LOGGER.debug("The unit price index of table " + table.getBufferedTableId() + " is reused.");
+			}
+			return cached.m_index;
+		}
+	}
+
+	private static QcPriceIndex build(final BufferedDataTable table, final ExecutionMonitor exec)
+			throws InvalidSettingsException, CanceledExecutionException {
+		final long start = System.nanoTime();
+		final int[] columns = findColumns(table.getDataTableSpec());
+		final long rowCount = table.size();
+		if (rowCount > (1 << 29)) {
+			throw new InvalidSettingsException("The unit price table has " + rowCount + " rows, more than "
+					+ (1 << 29) + " part numbers are not supported.");
+		}
+		final int capacity = Integer.highestOneBit((int) Math.max(2, rowCount) * 2 - 1) << 1;
+		final String[] partNos = new String[capacity];
+		final double[] prices = new double[capacity];
+		final int mask = capacity - 1;
+		final QcResultCache.Fingerprint fingerprint = new QcResultCache.Fingerprint();
+		int size = 0;
+		long duplicates = 0;
+		long skipped = 0;
+		long rowNo = 0;
+
+		exec.setMessage("Indexing unit prices");
+		final RowCursor cursor = table.cursor(new TableFilter.Builder().withMaterializeColumnIndices(columns).build());
+		try {
+			RowRead row;
+			while ((row = cursor.forward()) != null) {
+				if ((++rowNo & PROGRESS_INTERVAL_MASK) == 0) {
+					exec.checkCanceled();
+				}
+				if (row.isMissing(columns[0]) || row.isMissing(columns[1])) {
+					++skipped;
+					continue;
+				}
+				final String partNo = QcMaterialInputBinding.toText(row, columns[0]);
+				final double price = QcMaterialInputBinding.toNumber(row, columns[1]);
+				fingerprint.add(partNo).add(price);
+				int slot = spread(partNo.hashCode()) & mask;
+				while (partNos[slot] != null && !partNos[slot].equals(partNo)) {
+					slot = (slot + 1) & mask;
+				}
+				if (partNos[slot] == null) {
+					partNos[slot] = partNo;
+					++size;
+				}
+				else {
+					++duplicates;	//: The last row of a part number wins.
+				}
+				prices[slot] = price;
+			}
+		}
+		finally {
+			cursor.close();
+		}
+		LOGGER.info("Indexed " + size + " unit prices of table " + table.getBufferedTableId() + " in "
+				+ (System.nanoTime() - start) / 1000000 + " ms, " + duplicates + " duplicate part numbers, "
+				+ skipped + " rows with missing values skipped.");
+		return new QcPriceIndex(partNos, prices, size, fingerprint.add(size).finish());
+	}
+
+	private static int spread(final int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * @return the unit price of the part number, or the given price if the part is not in the list.
+	 */
+	double get(final String partNo, final double price) {
+		final int slot = find(partNo);
+		return (slot >= 0) ? m_prices[slot] : price;
+	}
+
+	/**
+	 * @return the slot of the part number, -1 if it is not in the list.
+	 */
+	private int find(final String partNo) {
+		if (partNo == null) {
+			return -1;
+		}
+		int slot = spread(partNo.hashCode()) & m_mask;
+		String p;
+		while ((p = m_partNos[slot]) != null) {
+			if (p.equals(partNo)) {
+				return slot;
+			}
+			slot = (slot + 1) & m_mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the number of part numbers.
+	 */
+	int size() {
+		return m_size;
+	}
+
+	/**
+	 * Add the prices to the fingerprint.
+	 */
+	void addTo(final QcResultCache.Fingerprint fingerprint) {
+		fingerprint.add(m_digest);
+	}
+
+	/**
+	 * Apply the unit prices to the static material items.
+	 *
+	 * @param model the decoded settings, not changed.
+	 * @return the model itself if no static material is in the list, otherwise a new model which
+	 *         shares the items not repriced.
+	 */
+	QcDecodedModel applyTo(final QcDecodedModel model) {
+		final List<MaterialInputRowItem> materialInput = new ArrayList<>(model.getMaterialInputItems());
+		boolean repriced = false;
+		for(int i = 0; i < materialInput.size(); i++) {
+			final MaterialInputRowItem r = materialInput.get(i);
+			final int slot = find(r.getPartNo());
+			if (slot >= 0) {
+				final MaterialInputRowItem copy = (MaterialInputRowItem) r.clone();
+				copy.setUnitPrice(m_prices[slot]);
+				materialInput.set(i, copy);
+				repriced = true;
+			}
+		}
+		if (!repriced) {
+			return model;
+		}
+		return new QcDecodedModel(null, model.getProcess(), model.getNote(), model.getDisplayUnit(), materialInput,
+				model.getProductOutputRowItems(), model.getEnergyCostItems(), model.getSystemCostItems(),
+				model.getWasteMgmtCostItems());
+	}
+
+	/**
+	 * The index of a table, null until it is built. The table is weakly referenced, a table of a
+	 * reset node may be collected.
+	 */
+	private static final class CachedIndex {
+		private final WeakReference<BufferedDataTable> m_table;
+
+		private QcPriceIndex m_index = null;
+
+		CachedIndex(final BufferedDataTable table) {
+			m_table = new WeakReference<>(table);
+		}
+	}
+}
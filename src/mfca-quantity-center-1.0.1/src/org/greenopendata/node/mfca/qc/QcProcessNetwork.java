@@ -0,0 +1,299 @@
+package org.greenopendata.node.mfca.qc;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import org.greenopendata.mfca.qc.po.ProductOutputRowItem;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.util.ThreadPool;
+
+/**
+ * A network of quantity centers: the QC settings bytes of every process and the connections
+ * between them. A connection feeds the Positive Output of one process into the material input
+ * of another, the same as connecting two Quantity Center nodes. The connections must form a
+ * directed acyclic graph.
+ *
+ * The network is evaluated on the decoded models, the product rows of a process are added to
+ * the running totals of its downstream processes without any table in between.
+ *
+ * @author Green Open Data
+ */
+final class QcProcessNetwork {
+	private static final String KEY_PROCESS_COUNT = "process_count";
+	private static final String KEY_PROCESS_PREFIX = "process_";
+	private static final String KEY_CONNECTION_FROM = "connection_from";
+	private static final String KEY_CONNECTION_TO = "connection_to";
+
+	/**
+	 * The QC settings bytes of every process, null if the process is not configured yet.
+	 */
+	private final List<byte[]> m_processes;
+
+	/*
+	 * The connections, from process index to process index.
+	 */
+	private final int[] m_from;
+	private final int[] m_to;
+
+	/*
+	 * The connections indexed by process, so that a long chain is walked in linear time: the upstream
+	 * processes of process p in connection order are m_upstream[m_upstreamStart[p]] to
+	 * m_upstream[m_upstreamStart[p + 1] - 1], the same for the downstream processes.
+	 */
+	private final int[] m_upstreamStart;
+	private final int[] m_upstream;
+	private final int[] m_downstreamStart;
+	private final int[] m_downstream;
+
+	/** The topological order, null if it is not computed yet. */
+	private int[] m_order = null;
+
+	QcProcessNetwork(final List<byte[]> processes, final int[] from, final int[] to) {
+		m_processes = Collections.unmodifiableList(new ArrayList<>(processes));
+		m_from = from.clone();
+		m_to = to.clone();
+
+		final int count = m_processes.size();
+		m_upstreamStart = new int[count + 1];
+		m_downstreamStart = new int[count + 1];
+		int valid = 0;
+		for(int c = 0; c < m_from.length; c++) {
+			if (isValid(c)) {
+				++m_upstreamStart[m_to[c] + 1];
+				++m_downstreamStart[m_from[c] + 1];
+				++valid;
+			}
+		}
+		for(int p = 0; p < count; p++) {
+			m_upstreamStart[p + 1] += m_upstreamStart[p];
+			m_downstreamStart[p + 1] += m_downstreamStart[p];
+		}
+		m_upstream = new int[valid];
+		m_downstream = new int[valid];
+		final int[] upstreamNext = Arrays.copyOf(m_upstreamStart, count);
+		final int[] downstreamNext = Arrays.copyOf(m_downstreamStart, count);
+		for(int c = 0; c < m_from.length; c++) {
+			if (isValid(c)) {
+				m_upstream[upstreamNext[m_to[c]]++] = m_from[c];
+				m_downstream[downstreamNext[m_from[c]]++] = m_to[c];
+			}
+		}
+	}
+
+	/**
+	 * @return true if the connection refers to known processes, the other errors are reported by
+	 *         {@link #topologicalOrder()}.
+	 */
+	private boolean isValid(final int connection) {
+		final int count = m_processes.size();
+		return m_from[connection] >= 0 && m_from[connection] < count && m_to[connection] >= 0
+				&& m_to[connection] < count;
+	}
+
+	/**
+	 * @return a network without any process.
+	 */
+	static QcProcessNetwork empty() {
+		return new QcProcessNetwork(Collections.<byte[]>emptyList(), new int[0], new int[0]);
+	}
+
+	void saveSettingsTo(final NodeSettingsWO settings) {
+		settings.addInt(KEY_PROCESS_COUNT, m_processes.size());
+		for(int i = 0; i < m_processes.size(); i++) {
+			settings.addByteArray(KEY_PROCESS_PREFIX + i, m_processes.get(i));
+		}
+		settings.addIntArray(KEY_CONNECTION_FROM, m_from);
+		settings.addIntArray(KEY_CONNECTION_TO, m_to);
+	}
+
+	/**
+	 * Read and validate the network of the settings, a network without process if there is no settings yet.
+	 *
+	 * @throws InvalidSettingsException if the settings are broken or the connections are not acyclic.
+	 */
+	static QcProcessNetwork loadSettingsFrom(final NodeSettingsRO settings) throws InvalidSettingsException {
+		if (!settings.containsKey(KEY_PROCESS_COUNT)) {
+			return empty();
+		}
+		final int count = settings.getInt(KEY_PROCESS_COUNT);
+		final List<byte[]> processes = new ArrayList<>(count);
+		for(int i = 0; i < count; i++) {
+			processes.add(settings.getByteArray(KEY_PROCESS_PREFIX + i));
+		}
+		final int[] from = settings.getIntArray(KEY_CONNECTION_FROM);
+		final int[] to = settings.getIntArray(KEY_CONNECTION_TO);
+		if (from.length != to.length) {
+			throw new InvalidSettingsException("The connections of the process network are broken.");
+		}
+		final QcProcessNetwork network = new QcProcessNetwork(processes, from, to);
+		network.topologicalOrder();
+		return network;
+	}
+
+	int getProcessCount() {
+		return m_processes.size();
+	}
+
+	byte[] getProcessSettings(final int process) {
+		return m_processes.get(process);
+	}
+
+	int getConnectionCount() {
+		return m_from.length;
+	}
+
+	int getConnectionFrom(final int connection) {
+		return m_from[connection];
+	}
+
+	int getConnectionTo(final int connection) {
+		return m_to[connection];
+	}
+
+	/**
+	 * @return true if the Positive Output of the process is not connected to any other process.
+	 */
+	boolean isSink(final int process) {
+		return m_downstreamStart[process] == m_downstreamStart[process + 1];
+	}
+
+	/**
+	 * The order in which every process comes after all of its upstream processes, processes
+	 * without dependency between them keep their own order.
+	 *
+	 * @return the process indices in topological order.
+	 * @throws InvalidSettingsException if a connection is invalid or the connections have a cycle.
+	 */
+	int[] topologicalOrder() throws InvalidSettingsException {
+		if (m_order != null) {
+			return m_order.clone();
+		}
+		final int count = m_processes.size();
+		final int[] inDegree = new int[count];
+		final Set<Long> edges = new HashSet<>();
+		for(int c = 0; c < m_from.length; c++) {
+			final int from = m_from[c];
+			final int to = m_to[c];
+			if (from < 0 || from >= count || to < 0 || to >= count) {
+				throw new InvalidSettingsException("The connection " + (c + 1) + " refers to an unknown process.");
+			}
+			if (from == to) {
+				throw new InvalidSettingsException("The process " + (from + 1) + " can not be connected to itself.");
+			}
+			if (!edges.add(((long) from << 32) | to)) {
+				throw new InvalidSettingsException("The process " + (from + 1) + " is connected to the process "
+						+ (to + 1) + " more than once.");
+			}
+			++inDegree[to];
+		}
+
+		final int[] order = new int[count];
+		int n = 0;
+		final Deque<Integer> ready = new ArrayDeque<>();
+		for(int p = 0; p < count; p++) {
+			if (inDegree[p] == 0) {
+				ready.add(p);
+			}
+		}
+		while (!ready.isEmpty()) {
+			final int p = ready.poll();
+			order[n++] = p;
+			for(int i = m_downstreamStart[p]; i < m_downstreamStart[p + 1]; i++) {
+				if (--inDegree[m_downstream[i]] == 0) {
+					ready.add(m_downstream[i]);
+				}
+			}
+		}
+		if (n < count) {
+			throw new InvalidSettingsException("The connections of the process network have a cycle.");
+		}
+		m_order = order;
+		return order.clone();
+	}
+
+	/**
+	 * @return the upstream processes of the process in connection order.
+	 */
+	int[] getUpstream(final int process) {
+		return Arrays.copyOfRange(m_upstream, m_upstreamStart[process], m_upstreamStart[process + 1]);
+	}
+
+	/**
+	 * Evaluate the calculation of every process. The material input of a process is the Positive
+	 * Output of its upstream processes in connection order, the same rows a Quantity Center node
+	 * would read from the concatenated Positive Output tables.
+	 *
+	 * The processes are scheduled in topological order, a process starts as soon as all of its
+	 * upstream processes are done, so independent branches run in parallel on the pool. The calling
+	 * thread waits invisibly, it gives its place in the pool to the processes.
+	 *
+	 * @param models the decoded models of every process.
+	 * @param pool the pool of the calculation, a sub-pool of the KNIME thread pool.
+	 * @param exec for progress and cancellation.
+	 * @return the running totals of every process, by process index.
+	 */
+	QcCalcAccumulator[] evaluate(final QcDecodedModel[] models, final ThreadPool pool, final ExecutionMonitor exec)
+			throws InvalidSettingsException, CanceledExecutionException, InterruptedException {
+		final int[] order = topologicalOrder();
+		@SuppressWarnings("unchecked")
+		final CompletableFuture<QcCalcAccumulator>[] futures = new CompletableFuture[models.length];
+		for(int p : order) {
+			final int[] upstream = getUpstream(p);
+			final CompletableFuture<?>[] dependencies = new CompletableFuture<?>[upstream.length];
+			for(int i = 0; i < upstream.length; i++) {
+				dependencies[i] = futures[upstream[i]];
+			}
+			final QcDecodedModel model = models[p];
+			futures[p] = CompletableFuture.allOf(dependencies).thenApplyAsync(v -> {
+				final QcCalcAccumulator totals = model.createCalcTotals();
+				for(int u : upstream) {
+					for(ProductOutputRowItem r : models[u].getProductOutputRowItems()) {
+						totals.addMaterial(r.getUnitPrice(), r.getQuantityPass());
+					}
+				}
+				return totals;
+			}, pool::enqueue);
+		}
+
+		final QcCalcAccumulator[] result = new QcCalcAccumulator[models.length];
+		try {
+			for(int i = 0; i < order.length; i++) {
+				result[order[i]] = pool.runInvisible(futures[order[i]]::join);
+				exec.checkCanceled();
+				exec.setProgress((i + 1) / (double) order.length);
+			}
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof CompletionException) {
+				cause = cause.getCause();
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+		finally {
+			for(CompletableFuture<QcCalcAccumulator> future : futures) {
+				future.cancel(false);
+			}
+		}
+		return result;
+	}
+}
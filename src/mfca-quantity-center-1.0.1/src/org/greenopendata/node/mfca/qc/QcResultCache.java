@@ -0,0 +1,340 @@
+package org.greenopendata.node.mfca.qc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.knime.core.node.BufferedDataTable;
+
+/**
+ * The Calculation results of recent executions, keyed by a content fingerprint of the settings and
+ * the material input rows. Only the results which are worth to be skipped are cached, the groups and
+ * the simulated scenarios: an execution with the same fingerprint reuses the cached result instead of
+ * aggregating the groups or simulating the scenarios again. The plain totals are cheaper to sum than
+ * to fingerprint, they are neither fingerprinted nor cached. The cache is kept over node resets and
+ * saved in the node internals, so it also survives a workflow reload.
+ *
+ * A buffered material input table is immutable, so the fingerprint of its rows is also kept by the
+ * table ID and size. An execution on the same table finds its result by that identity, without
+ * fingerprinting the rows again. The identities are not saved, after a workflow reload the rows are
+ * fingerprinted once more.
+ *
+ * The output tables can not be cached: KNIME clears them on every reset, so the rows of the other
+ * ports are always written again.
+ *
+ * The cache is bounded by the number of entries and by the estimated bytes of their rows, a result
+ * larger than the byte bound, such as millions of groups, is not cached.
+ *
+ * <pre>
+ * file    : magic "MFRC" (int), version (byte), entry count (int)
+ * entry   : fingerprint length (int) and bytes, has labels (boolean), row count (int),
+ *           every row as label (UTF) if has labels, then the calculation values (double)
+ * </pre>
+ *
+ * @author Green Open Data
+ */
+final class QcResultCache {
+	/** "MFRC" */
+	private static final int MAGIC = 0x4D465243;
+
+	private static final byte VERSION = 1;
+
+	private static final String FILE_NAME = "calculation_cache.bin";
+
+	/**
+	 * The number of fingerprints kept, enough for a loop over the processes of a plant.
+	 */
+	private static final int MAX_ENTRIES = 32;
+
+	/**
+	 * The estimated bytes of all entries kept.
+	 */
+	private static final long MAX_BYTES = 16L << 20;
+
+	/**
+	 * The cached result of one fingerprint.
+	 */
+	static final class Entry {
+		/** The group or statistic of every row, null if there is only one row without label. */
+		private final List<String> m_labels;
+
+		/** The calculation values of every row, see {@link QcCalcAccumulator#evaluate}. */
+		private final List<double[]> m_values;
+
+		/** The estimated heap bytes of the rows. */
+		private final long m_bytes;
+
+		Entry(final List<String> labels, final List<double[]> values) {
+			m_labels = (labels != null) ? Collections.unmodifiableList(new ArrayList<>(labels)) : null;
+			m_values = Collections.unmodifiableList(new ArrayList<>(values));
+			m_bytes = estimateBytes(labels, values);
+		}
+
+		List<String> getLabels() {
+			return m_labels;
+		}
+
+		List<double[]> getValues() {
+			return m_values;
+		}
+	}
+
+	/**
+	 * The entries in access order, the least recently used entry is dropped first.
+	 */
+	private final LinkedHashMap<ByteBuffer, Entry> m_entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * The estimated bytes of the entries.
+	 */
+	private long m_bytes = 0;
+
+	/**
+	 * The fingerprints by table identity, in access order.
+	 */
+	private final Map<ByteBuffer, byte[]> m_identities = new LinkedHashMap<ByteBuffer, byte[]>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<ByteBuffer, byte[]> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	/**
+	 * @return the cached result of the fingerprint, or null if there is none.
+	 */
+	synchronized Entry get(final byte[] fingerprint) {
+		return m_entries.get(ByteBuffer.wrap(fingerprint));
+	}
+
+	/**
+	 * Cache the result, unless it alone exceeds the byte bound. The least recently used entries are
+	 * dropped until the entries are within the bounds.
+	 */
+	synchronized void put(final byte[] fingerprint, final List<String> labels, final List<double[]> values) {
+		final Entry entry = new Entry(labels, values);
+		if (entry.m_bytes > MAX_BYTES) {
+			return;
+		}
+		final Entry replaced = m_entries.put(ByteBuffer.wrap(fingerprint.clone()), entry);
+		m_bytes += entry.m_bytes - ((replaced != null) ? replaced.m_bytes : 0);
+		final Iterator<Entry> eldest = m_entries.values().iterator();
+		while (m_entries.size() > MAX_ENTRIES || m_bytes > MAX_BYTES) {
+			m_bytes -= eldest.next().m_bytes;
+			eldest.remove();
+		}
+	}
+
+	/**
+	 * @param identity the identity of the settings and the material input table, see {@link #identityOf}.
+	 * @return the fingerprint of the execution with the same identity, or null if there is none.
+	 */
+	synchronized byte[] getFingerprint(final byte[] identity) {
+		return m_identities.get(ByteBuffer.wrap(identity));
+	}
+
+	synchronized void putFingerprint(final byte[] identity, final byte[] fingerprint) {
+		m_identities.put(ByteBuffer.wrap(identity.clone()), fingerprint.clone());
+	}
+
+	/**
+	 * @param settings the fingerprint of the settings, no row added yet.
+	 * @param table the material input table.
+	 * @param fromRow the first row read.
+	 * @return the identity of the rows read from the table with the settings.
+	 */
+	static byte[] identityOf(final Fingerprint settings, final BufferedDataTable table, final long fromRow) {
+		return settings.add(table.getBufferedTableId()).add(table.size()).add(fromRow).finish();
+	}
+
+	/**
+	 * @return the estimated heap bytes of the rows of a result.
+	 */
+	private static long estimateBytes(final List<String> labels, final List<double[]> values) {
+		long bytes = values.size() * (16L + 8L * QcCalcAccumulator.VALUE_COUNT + 8);
+		if (labels != null) {
+			for(String label : labels) {
+				bytes += 48 + 2L * label.length();
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Save the entries in the node internals directory.
+	 */
+	synchronized void save(final File nodeInternDir) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(new File(nodeInternDir, FILE_NAME))))) {
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeInt(m_entries.size());
+			for(Map.Entry<ByteBuffer, Entry> e : m_entries.entrySet()) {
+				final byte[] fingerprint = e.getKey().array();
+				final Entry entry = e.getValue();
+				out.writeInt(fingerprint.length);
+				out.write(fingerprint);
+				out.writeBoolean(entry.m_labels != null);
+				out.writeInt(entry.m_values.size());
+				for(int i = 0; i < entry.m_values.size(); i++) {
+					if (entry.m_labels != null) {
+						out.writeUTF(entry.m_labels.get(i));
+					}
+					for(double v : entry.m_values.get(i)) {
+						out.writeDouble(v);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Load the entries saved in the node internals directory. Nothing is loaded if there is no cache
+	 * file or it is of an unknown version, the results are simply calculated again.
+	 */
+	synchronized void load(final File nodeInternDir) throws IOException {
+		m_entries.clear();
+		m_bytes = 0;
+		m_identities.clear();
+		final File file = new File(nodeInternDir, FILE_NAME);
+		if (!file.isFile()) {
+			return;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+				return;
+			}
+			final int count = in.readInt();
+			for(int e = 0; e < count; e++) {
+				final byte[] fingerprint = new byte[in.readInt()];
+				in.readFully(fingerprint);
+				final boolean hasLabels = in.readBoolean();
+				final int rows = in.readInt();
+				final List<String> labels = hasLabels ? new ArrayList<>(rows) : null;
+				final List<double[]> values = new ArrayList<>(rows);
+				for(int i = 0; i < rows; i++) {
+					if (hasLabels) {
+						labels.add(in.readUTF());
+					}
+					final double[] v = new double[QcCalcAccumulator.VALUE_COUNT];
+					for(int c = 0; c < v.length; c++) {
+						v[c] = in.readDouble();
+					}
+					values.add(v);
+				}
+				put(fingerprint, labels, values);
+			}
+		}
+	}
+
+	/**
+	 * SHA-256 content fingerprint of an execution, fed with the settings and every material input row
+	 * in the order they are read.
+	 */
+	static final class Fingerprint {
+		private final MessageDigest m_digest;
+
+		private final DataOutputStream m_out;
+
+		Fingerprint() {
+			try {
+				m_digest = MessageDigest.getInstance("SHA-256");
+			}
+			catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException("SHA-256 is not available.", e);
+			}
+			m_out = new DataOutputStream(new BufferedOutputStream(
+					new DigestOutputStream(OutputStream.nullOutputStream(), m_digest)));
+		}
+
+		Fingerprint add(final byte[] bytes) {
+			try {
+				if (bytes == null) {
+					m_out.writeInt(-1);
+				}
+				else {
+					m_out.writeInt(bytes.length);
+					m_out.write(bytes);
+				}
+			}
+			catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			return this;
+		}
+
+		Fingerprint add(final String s) {
+			try {
+				if (s == null) {
+					m_out.writeInt(-1);
+				}
+				else {
+					m_out.writeInt(s.length());
+					m_out.writeChars(s);
+				}
+			}
+			catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			return this;
+		}
+
+		Fingerprint add(final double d) {
+			try {
+				m_out.writeLong(Double.doubleToLongBits(d));
+			}
+			catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			return this;
+		}
+
+		Fingerprint add(final long l) {
+			try {
+				m_out.writeLong(l);
+			}
+			catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			return this;
+		}
+
+		/**
+		 * Add the current row of the material input binding.
+		 */
+		Fingerprint addRow(final QcMaterialInputBinding binding) {
+			return add(binding.getPartNo()).add(binding.getPartName()).add(binding.getUnit())
+					.add(binding.getUnitPrice()).add(binding.getQuantity()).add(binding.getGroup());
+		}
+
+		/**
+		 * @return the fingerprint, nothing can be added after it.
+		 */
+		byte[] finish() {
+			try {
+				m_out.flush();
+			}
+			catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			return m_digest.digest();
+		}
+	}
+}
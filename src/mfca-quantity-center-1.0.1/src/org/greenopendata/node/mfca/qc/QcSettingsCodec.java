@@ -0,0 +1,621 @@
+package org.greenopendata.node.mfca.qc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.greenopendata.mfca.qc.QcSettingsModel;
+import org.greenopendata.mfca.qc.ec.EnergyCostRowItem;
+import org.greenopendata.mfca.qc.ec.EnergyCostTableModel;
+import org.greenopendata.mfca.qc.mi.MaterialInputRowItem;
+import org.greenopendata.mfca.qc.mi.MaterialInputTableModel;
+import org.greenopendata.mfca.qc.po.ProductOutputRowItem;
+import org.greenopendata.mfca.qc.po.ProductOutputTableModel;
+import org.greenopendata.mfca.qc.sc.SystemCostRowItem;
+import org.greenopendata.mfca.qc.sc.SystemCostTableModel;
+import org.greenopendata.mfca.qc.wt.WasteMgmtCostRowItem;
+import org.greenopendata.mfca.qc.wt.WasteMgmtCostTableModel;
+import org.knime.core.node.InvalidSettingsException;
+
+/**
+ * Compact binary format of the QC settings, it replaces the Java serialization of QcSettingsModel
+ * which nests a serialized byte array for every settings table.
+ *
+ * <pre>
+ * header  : magic "MFQC" (int), version (byte), flags (byte),
+ *           body length before deflating (int) if FLAG_DEFLATE is set
+ * body    : deflated if FLAG_DEFLATE is set
+ *   strings : count (varint), then every string as UTF-8 length (varint) and bytes
+ *   info    : process, note, display unit as string ids (varint, 0 is null)
+ *   tables  : count (varint), then every table as
+ *             table id (byte), row count (varint), column count (varint),
+ *             every column as column kind (byte) and the values of all rows
+ * </pre>
+ *
+ * The tables are stored by column, strings are stored once in the string table and referred by id,
+ * numbers are stored as raw IEEE 754 bits. A reader skips the tables and the trailing columns it
+ * does not know, so new columns can be appended without a new version. Only a change that old
+ * readers can not skip needs a new version, and a newer version is rejected instead of misread.
+ *
+ * A deflated body is inflated only up to its length in the header, and a length beyond
+ * {@link #MAX_BODY_LENGTH} or beyond what the deflated bytes can hold is rejected before inflating, so
+ * broken settings can not fill the heap. Version 1 has no body length, its body is inflated up to
+ * the maximum.
+ *
+ * The settings of earlier versions are not in this format, {@link #isCompact(byte[])} tells them
+ * apart and {@link QcDecodedModel#decode(byte[])} reads both.
+ *
+ * @author Green Open Data
+ */
+final class QcSettingsCodec {
+	/** "MFQC" */
+	private static final int MAGIC = 0x4D464351;
+
+	static final int VERSION = 2;
+
+	/** The version without the body length in the header. */
+	private static final int VERSION_NO_BODY_LENGTH = 1;
+
+	private static final int FLAG_DEFLATE = 0x01;
+
+	/** The body smaller than this is not worth to deflate. */
+	private static final int DEFLATE_THRESHOLD = 512;
+
+	private static final int HEADER_LENGTH = 6;
+
+	/**
+	 * The maximum length of the body after inflating, about the settings of 5 million material items.
+	 */
+	static final int MAX_BODY_LENGTH = 256 << 20;
+
+	/**
+	 * The maximum ratio of deflate, a body length beyond this ratio of the deflated bytes is broken.
+	 */
+	private static final int MAX_DEFLATE_RATIO = 1032;
+
+	private static final byte COLUMN_STRING = 1;
+	private static final byte COLUMN_DOUBLE = 2;
+
+	private static final byte TABLE_MATERIAL_INPUT = 1;
+	private static final byte TABLE_PRODUCT_OUTPUT = 2;
+	private static final byte TABLE_ENERGY_COST = 3;
+	private static final byte TABLE_SYSTEM_COST = 4;
+	private static final byte TABLE_WASTE_MGMT_COST = 5;
+
+	/**
+	 * Bits of a null number, a NaN which is not produced by arithmetic, so a NaN value is kept as is.
+	 */
+	private static final long NULL_DOUBLE_BITS = 0x7FF00000000DEADL;
+
+	private QcSettingsCodec() {
+	}
+
+	/**
+	 * @return true if the byte array is in compact format, false for legacy settings.
+	 */
+	static boolean isCompact(final byte[] bytes) {
+		return bytes != null && bytes.length >= HEADER_LENGTH
+				&& (bytes[0] & 0xFF) == (MAGIC >>> 24)
+				&& (bytes[1] & 0xFF) == ((MAGIC >>> 16) & 0xFF)
+				&& (bytes[2] & 0xFF) == ((MAGIC >>> 8) & 0xFF)
+				&& (bytes[3] & 0xFF) == (MAGIC & 0xFF);
+	}
+
+	/**
+	 * Encode the QC settings.
+	 *
+	 * @param model the settings with all tables, the settings bytes of the model are not used.
+	 * @return the compact byte array.
+	 */
+	static byte[] encode(final QcDecodedModel model) {
+		try {
+			final StringTable strings = new StringTable();
+			final ByteArrayOutputStream tablesBuffer = new ByteArrayOutputStream();
+			final DataOutputStream tables = new DataOutputStream(tablesBuffer);
+
+			final int process = strings.id(model.getProcess());
+			final int note = strings.id(model.getNote());
+			final int displayUnit = strings.id(model.getDisplayUnit());
+
+			writeVarInt(tables, 5);
+
+			List<MaterialInputRowItem> mi = model.getMaterialInputItems();
+			writeTableHeader(tables, TABLE_MATERIAL_INPUT, mi.size(), 8);
+			writeStringColumn(tables, strings, mi, MaterialInputRowItem::getSource);
+			writeStringColumn(tables, strings, mi, MaterialInputRowItem::getPartNo);
+			writeStringColumn(tables, strings, mi, MaterialInputRowItem::getPartName);
+			writeStringColumn(tables, strings, mi, MaterialInputRowItem::getUnit);
+			writeDoubleColumn(tables, mi, MaterialInputRowItem::getUnitPrice);
+			writeDoubleColumn(tables, mi, MaterialInputRowItem::getStdUsage);
+			writeDoubleColumn(tables, mi, MaterialInputRowItem::getYield);
+			writeDoubleColumn(tables, mi, MaterialInputRowItem::getActUsage);
+
+			List<ProductOutputRowItem> po = model.getProductOutputRowItems();
+			writeTableHeader(tables, TABLE_PRODUCT_OUTPUT, po.size(), 6);
+			writeStringColumn(tables, strings, po, ProductOutputRowItem::getPartNo);
+			writeStringColumn(tables, strings, po, ProductOutputRowItem::getPartName);
+			writeStringColumn(tables, strings, po, ProductOutputRowItem::getUnit);
+			writeDoubleColumn(tables, po, ProductOutputRowItem::getUnitPrice);
+			writeDoubleColumn(tables, po, ProductOutputRowItem::getQuantityPass);
+			writeDoubleColumn(tables, po, ProductOutputRowItem::getQuantityNG);
+
+			List<EnergyCostRowItem> ec = model.getEnergyCostItems();
+			writeTableHeader(tables, TABLE_ENERGY_COST, ec.size(), 6);
+			writeStringColumn(tables, strings, ec, EnergyCostRowItem::getItem);
+			writeStringColumn(tables, strings, ec, EnergyCostRowItem::getUnit);
+			writeDoubleColumn(tables, ec, EnergyCostRowItem::getUnitPrice);
+			writeDoubleColumn(tables, ec, EnergyCostRowItem::getStdUsage);
+			writeDoubleColumn(tables, ec, EnergyCostRowItem::getLoad);
+			writeDoubleColumn(tables, ec, EnergyCostRowItem::getActUsage);
+
+			List<SystemCostRowItem> sc = model.getSystemCostItems();
+			writeTableHeader(tables, TABLE_SYSTEM_COST, sc.size(), 5);
+			writeStringColumn(tables, strings, sc, SystemCostRowItem::getItem);
+			writeStringColumn(tables, strings, sc, SystemCostRowItem::getUnit);
+			writeDoubleColumn(tables, sc, SystemCostRowItem::getUnitPrice);
+			writeDoubleColumn(tables, sc, SystemCostRowItem::getStdUsage);
+			writeDoubleColumn(tables, sc, SystemCostRowItem::getActUsage);
+
+			List<WasteMgmtCostRowItem> wt = model.getWasteMgmtCostItems();
+			writeTableHeader(tables, TABLE_WASTE_MGMT_COST, wt.size(), 4);
+			writeStringColumn(tables, strings, wt, WasteMgmtCostRowItem::getItem);
+			writeStringColumn(tables, strings, wt, WasteMgmtCostRowItem::getUnit);
+			writeDoubleColumn(tables, wt, WasteMgmtCostRowItem::getUnitPrice);
+			writeDoubleColumn(tables, wt, WasteMgmtCostRowItem::getQuantity);
+			tables.flush();
+
+			final ByteArrayOutputStream bodyBuffer = new ByteArrayOutputStream();
+			final DataOutputStream body = new DataOutputStream(bodyBuffer);
+			strings.writeTo(body);
+			writeVarInt(body, process);
+			writeVarInt(body, note);
+			writeVarInt(body, displayUnit);
+			tablesBuffer.writeTo(body);
+			body.flush();
+
+			int flags = 0;
+			byte[] bodyBytes = bodyBuffer.toByteArray();
+			final int bodyLength = bodyBytes.length;
+			if (bodyBytes.length > DEFLATE_THRESHOLD) {
+				byte[] deflated = deflate(bodyBytes);
+				if (deflated.length < bodyBytes.length) {
+					bodyBytes = deflated;
+					flags |= FLAG_DEFLATE;
+				}
+			}
+
+			final ByteArrayOutputStream buffer = new ByteArrayOutputStream(HEADER_LENGTH + 4 + bodyBytes.length);
+			final DataOutputStream out = new DataOutputStream(buffer);
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeByte(flags);
+			if ((flags & FLAG_DEFLATE) != 0) {
+				out.writeInt(bodyLength);
+			}
+			out.write(bodyBytes);
+			out.flush();
+			return buffer.toByteArray();
+		}
+		catch (IOException e) {
+			//: never happens on byte array stream
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Decode the compact byte array.
+	 *
+	 * @param bytes the compact byte array, the key of the decoded model.
+	 * @return the decoded model.
+	 * @throws InvalidSettingsException if the byte array is broken or written by a newer version.
+	 */
+	static QcDecodedModel decode(final byte[] bytes) throws InvalidSettingsException {
+		if (!isCompact(bytes)) {
+			throw new InvalidSettingsException("The QC settings is not in compact format.");
+		}
+		final int version = bytes[4] & 0xFF;
+		if (version > VERSION) {
+			throw new InvalidSettingsException("The QC settings was saved by a newer version (format " + version
+					+ "), please update the Quantity Center node.");
+		}
+		final int flags = bytes[5] & 0xFF;
+
+		byte[] bodyBytes;
+		if ((flags & FLAG_DEFLATE) == 0) {
+			bodyBytes = Arrays.copyOfRange(bytes, HEADER_LENGTH, bytes.length);
+		}
+		else if (version == VERSION_NO_BODY_LENGTH) {
+			bodyBytes = inflate(bytes, HEADER_LENGTH, -1);
+		}
+		else {
+			if (bytes.length < HEADER_LENGTH + 4) {
+				throw new InvalidSettingsException("The QC settings is broken: no body length.");
+			}
+			final int bodyLength = ((bytes[6] & 0xFF) << 24) | ((bytes[7] & 0xFF) << 16) | ((bytes[8] & 0xFF) << 8)
+					| (bytes[9] & 0xFF);
+			final long deflatedLength = bytes.length - (HEADER_LENGTH + 4);
+			if (bodyLength < 0 || bodyLength > MAX_BODY_LENGTH || bodyLength > deflatedLength * MAX_DEFLATE_RATIO) {
+				throw new InvalidSettingsException("The QC settings is broken: a body of " + bodyLength
+						+ " bytes can not be inflated from " + deflatedLength + " bytes.");
+			}
+			bodyBytes = inflate(bytes, HEADER_LENGTH + 4, bodyLength);
+		}
+
+		try {
+			final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bodyBytes));
+
+			final String[] strings = readStringTable(in);
+			final String process = readString(in, strings);
+			final String note = readString(in, strings);
+			final String displayUnit = readString(in, strings);
+
+			List<MaterialInputRowItem> mi = new ArrayList<>();
+			List<ProductOutputRowItem> po = new ArrayList<>();
+			List<EnergyCostRowItem> ec = new ArrayList<>();
+			List<SystemCostRowItem> sc = new ArrayList<>();
+			List<WasteMgmtCostRowItem> wt = new ArrayList<>();
+
+			final int tableCount = readVarInt(in);
+			for(int t = 0; t < tableCount; t++) {
+				final byte tableId = in.readByte();
+				final Object[][] columns = readColumns(in, strings);
+				final int rows = columns.length == 0 ? 0 : columns[0].length;
+				switch (tableId) {
+				case TABLE_MATERIAL_INPUT:
+					for(int i = 0; i < rows; i++) {
+						MaterialInputRowItem item = new MaterialInputRowItem();
+						item.setSource(stringAt(columns, 0, i));
+						item.setPartNo(stringAt(columns, 1, i));
+						item.setPartName(stringAt(columns, 2, i));
+						item.setUnit(stringAt(columns, 3, i));
+						item.setUnitPrice(doubleAt(columns, 4, i));
+						item.setStdUsage(doubleAt(columns, 5, i));
+						item.setYield(doubleAt(columns, 6, i));
+						item.setActUsage(doubleAt(columns, 7, i));
+						mi.add(item);
+					}
+					break;
+				case TABLE_PRODUCT_OUTPUT:
+					for(int i = 0; i < rows; i++) {
+						ProductOutputRowItem item = new ProductOutputRowItem();
+						item.setPartNo(stringAt(columns, 0, i));
+						item.setPartName(stringAt(columns, 1, i));
+						item.setUnit(stringAt(columns, 2, i));
+						item.setUnitPrice(doubleAt(columns, 3, i));
+						item.setQuantityPass(doubleAt(columns, 4, i));
+						item.setQuantityNG(doubleAt(columns, 5, i));
+						po.add(item);
+					}
+					break;
+				case TABLE_ENERGY_COST:
+					for(int i = 0; i < rows; i++) {
+						EnergyCostRowItem item = new EnergyCostRowItem();
+						item.setItem(stringAt(columns, 0, i));
+						item.setUnit(stringAt(columns, 1, i));
+						item.setUnitPrice(doubleAt(columns, 2, i));
+						item.setStdUsage(doubleAt(columns, 3, i));
+						item.setLoad(doubleAt(columns, 4, i));
+						item.setActUsage(doubleAt(columns, 5, i));
+						ec.add(item);
+					}
+					break;
+				case TABLE_SYSTEM_COST:
+					for(int i = 0; i < rows; i++) {
+						SystemCostRowItem item = new SystemCostRowItem();
+						item.setItem(stringAt(columns, 0, i));
+						item.setUnit(stringAt(columns, 1, i));
+						item.setUnitPrice(doubleAt(columns, 2, i));
+						item.setStdUsage(doubleAt(columns, 3, i));
+						item.setActUsage(doubleAt(columns, 4, i));
+						sc.add(item);
+					}
+					break;
+				case TABLE_WASTE_MGMT_COST:
+					for(int i = 0; i < rows; i++) {
+						WasteMgmtCostRowItem item = new WasteMgmtCostRowItem();
+						item.setItem(stringAt(columns, 0, i));
+						item.setUnit(stringAt(columns, 1, i));
+						item.setUnitPrice(doubleAt(columns, 2, i));
+						item.setQuantity(doubleAt(columns, 3, i));
+						wt.add(item);
+					}
+					break;
+				default:
+					//: table of a later version, already skipped
+					break;
+				}
+			}
+
+			return new QcDecodedModel(bytes, process, note, displayUnit, mi, po, ec, sc, wt);
+		}
+		catch (IOException | RuntimeException e) {
+			throw new InvalidSettingsException("The QC settings is broken: " + e, e);
+		}
+	}
+
+	/**
+	 * Convert the settings to the legacy format of QcSettingsModel, which is the only format known by
+	 * QcSettingsPane.
+	 *
+	 * @param bytes compact or legacy settings, or null.
+	 * @return the legacy settings, the same array if it is not in compact format.
+	 * @throws InvalidSettingsException if the compact byte array can not be decoded.
+	 */
+	static byte[] toLegacy(final byte[] bytes) throws InvalidSettingsException {
+		if (!isCompact(bytes)) {
+			return bytes;
+		}
+		QcDecodedModel model = decode(bytes);
+
+		MaterialInputTableModel mi = new MaterialInputTableModel();
+		for(MaterialInputRowItem r : model.getMaterialInputItems()) {
+			mi.addRow(r);
+		}
+		ProductOutputTableModel po = new ProductOutputTableModel();
+		for(ProductOutputRowItem r : model.getProductOutputRowItems()) {
+			po.addRow(r);
+		}
+		EnergyCostTableModel ec = new EnergyCostTableModel();
+		for(EnergyCostRowItem r : model.getEnergyCostItems()) {
+			ec.addRow(r);
+		}
+		SystemCostTableModel sc = new SystemCostTableModel();
+		for(SystemCostRowItem r : model.getSystemCostItems()) {
+			sc.addRow(r);
+		}
+		WasteMgmtCostTableModel wt = new WasteMgmtCostTableModel();
+		for(WasteMgmtCostRowItem r : model.getWasteMgmtCostItems()) {
+			wt.addRow(r);
+		}
+		return new QcSettingsModel(model.getProcess(), model.getNote(), model.getDisplayUnit(), mi, po, ec, sc, wt)
+				.toByteArray();
+	}
+
+	private static void writeTableHeader(final DataOutputStream out, final byte tableId, final int rows,
+			final int columns) throws IOException {
+		out.writeByte(tableId);
+		writeVarInt(out, rows);
+		writeVarInt(out, columns);
+	}
+
+	private static <T> void writeStringColumn(final DataOutputStream out, final StringTable strings,
+			final List<T> rows, final Function<T, String> getter) throws IOException {
+		out.writeByte(COLUMN_STRING);
+		for(T r : rows) {
+			writeVarInt(out, strings.id(getter.apply(r)));
+		}
+	}
+
+	private static <T> void writeDoubleColumn(final DataOutputStream out, final List<T> rows,
+			final Function<T, Double> getter) throws IOException {
+		out.writeByte(COLUMN_DOUBLE);
+		for(T r : rows) {
+			Double value = getter.apply(r);
+			out.writeLong(value == null ? NULL_DOUBLE_BITS : Double.doubleToRawLongBits(value));
+		}
+	}
+
+	/**
+	 * Read the columns of a table, String[] for string columns and Double[] for number columns,
+	 * the column of unknown kind is an error because its length is unknown.
+	 */
+	private static Object[][] readColumns(final DataInputStream in, final String[] strings) throws IOException {
+		final int rows = readVarInt(in);
+		final int columnCount = readCount(in, 1);
+		final Object[][] columns = new Object[columnCount][];
+		for(int c = 0; c < columnCount; c++) {
+			final byte kind = in.readByte();
+			if (kind == COLUMN_STRING) {
+				checkCount(in, rows, 1);
+				String[] values = new String[rows];
+				for(int i = 0; i < rows; i++) {
+					values[i] = readString(in, strings);
+				}
+				columns[c] = values;
+			}
+			else if (kind == COLUMN_DOUBLE) {
+				checkCount(in, rows, 8);
+				Double[] values = new Double[rows];
+				for(int i = 0; i < rows; i++) {
+					long bits = in.readLong();
+					values[i] = bits == NULL_DOUBLE_BITS ? null : Double.longBitsToDouble(bits);
+				}
+				columns[c] = values;
+			}
+			else {
+				throw new IOException("Unknown column kind " + kind);
+			}
+		}
+		return columns;
+	}
+
+	private static String stringAt(final Object[][] columns, final int column, final int row) throws IOException {
+		if (column >= columns.length) {
+			return null;
+		}
+		if (!(columns[column] instanceof String[])) {
+			throw new IOException("Column " + column + " is not a string column");
+		}
+		return ((String[])columns[column])[row];
+	}
+
+	private static Double doubleAt(final Object[][] columns, final int column, final int row) throws IOException {
+		if (column >= columns.length) {
+			return null;
+		}
+		if (!(columns[column] instanceof Double[])) {
+			throw new IOException("Column " + column + " is not a number column");
+		}
+		return ((Double[])columns[column])[row];
+	}
+
+	private static String[] readStringTable(final DataInputStream in) throws IOException {
+		final int count = readCount(in, 1);
+		final String[] strings = new String[count + 1];
+		for(int i = 1; i <= count; i++) {
+			final byte[] utf8 = new byte[readCount(in, 1)];
+			in.readFully(utf8);
+			strings[i] = new String(utf8, StandardCharsets.UTF_8);
+		}
+		return strings;
+	}
+
+	private static String readString(final DataInputStream in, final String[] strings) throws IOException {
+		final int id = readVarInt(in);
+		if (id >= strings.length) {
+			throw new IOException("Unknown string id " + id);
+		}
+		return strings[id];
+	}
+
+	/**
+	 * Read the count of the elements which follow, each of them at least minBytes long.
+	 */
+	private static int readCount(final DataInputStream in, final int minBytes) throws IOException {
+		final int count = readVarInt(in);
+		checkCount(in, count, minBytes);
+		return count;
+	}
+
+	/**
+	 * A count is checked against the rest of the body before an array is allocated by it, so a broken
+	 * or hostile byte array is rejected instead of running out of memory.
+	 */
+	private static void checkCount(final DataInputStream in, final int count, final int minBytes) throws IOException {
+		if ((long) count * minBytes > in.available()) {
+			throw new IOException("Count " + count + " exceeds the rest of QC settings");
+		}
+	}
+
+	/**
+	 * Unsigned LEB128.
+	 */
+	private static void writeVarInt(final DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private static int readVarInt(final InputStream in) throws IOException {
+		int value = 0;
+		for(int shift = 0; shift < 35; shift += 7) {
+			final int b = in.read();
+			if (b < 0) {
+				throw new IOException("Unexpected end of QC settings");
+			}
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				if (value < 0) {
+					throw new IOException("Negative length in QC settings");
+				}
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint in QC settings");
+	}
+
+	private static byte[] deflate(final byte[] bytes) {
+		final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+		try {
+			deflater.setInput(bytes);
+			deflater.finish();
+			final ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2);
+			final byte[] buffer = new byte[4096];
+			while (!deflater.finished()) {
+				out.write(buffer, 0, deflater.deflate(buffer));
+			}
+			return out.toByteArray();
+		}
+		finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Inflate the body, it is never longer than its length or {@link #MAX_BODY_LENGTH}.
+	 *
+	 * @param bytes the settings bytes.
+	 * @param offset the offset of the deflated body in the bytes.
+	 * @param bodyLength the length of the inflated body, or -1 if it is not known.
+	 * @return the inflated body.
+	 * @throws InvalidSettingsException if the body is broken, or longer than its length or the maximum.
+	 */
+	private static byte[] inflate(final byte[] bytes, final int offset, final int bodyLength)
+			throws InvalidSettingsException {
+		final int maxLength = (bodyLength >= 0) ? bodyLength : MAX_BODY_LENGTH;
+		final Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(bytes, offset, bytes.length - offset);
+			final ByteArrayOutputStream out = new ByteArrayOutputStream(
+					(bodyLength >= 0) ? bodyLength : (int) Math.min(MAX_BODY_LENGTH, (bytes.length - offset) * 4L));
+			final byte[] buffer = new byte[4096];
+			while (!inflater.finished()) {
+				final int n = inflater.inflate(buffer, 0, (int) Math.min(buffer.length, maxLength - out.size() + 1L));
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new InvalidSettingsException("The QC settings is broken: the body is truncated.");
+				}
+				if (out.size() + n > maxLength) {
+					throw new InvalidSettingsException("The QC settings is broken: the body is longer than "
+							+ maxLength + " bytes.");
+				}
+				out.write(buffer, 0, n);
+			}
+			if (bodyLength >= 0 && out.size() != bodyLength) {
+				throw new InvalidSettingsException("The QC settings is broken: the body has " + out.size()
+						+ " bytes instead of " + bodyLength + ".");
+			}
+			return out.toByteArray();
+		}
+		catch (DataFormatException e) {
+			throw new InvalidSettingsException("The QC settings is broken: " + e, e);
+		}
+		finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Strings in the order of first use, id 0 is null.
+	 */
+	private static final class StringTable {
+		private final Map<String, Integer> m_ids = new HashMap<>();
+		private final List<String> m_strings = new ArrayList<>();
+
+		int id(final String s) {
+			if (s == null) {
+				return 0;
+			}
+			Integer id = m_ids.get(s);
+			if (id == null) {
+				m_strings.add(s);
+				id = m_strings.size();
+				m_ids.put(s, id);
+			}
+			return id;
+		}
+
+		void writeTo(final DataOutputStream out) throws IOException {
+			writeVarInt(out, m_strings.size());
+			for(String s : m_strings) {
+				final byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+				writeVarInt(out, utf8.length);
+				out.write(utf8);
+			}
+		}
+	}
+}
@@ -0,0 +1,242 @@
+package org.greenopendata.node.mfca.qc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.KNIMEConstants;
+import org.knime.core.util.ThreadPool;
+
+/**
+ * Monte Carlo simulation of the MFCA calculation. Every scenario scales the totals of calculation
+ * by random factors: material unit prices, material yield, energy cost, system cost and waste
+ * management unit prices. The scenarios are evaluated on the primitive totals of
+ * {@link QcCalcAccumulator}, the settings are never decoded again.
+ *
+ * The scenarios run in blocks on the KNIME global thread pool. Every scenario has its own random
+ * generator seeded by the seed and the scenario number, so the result does not depend on the number
+ * of threads. The values of all scenarios are kept for exact percentiles, 88 bytes per scenario, which
+ * bounds the number of scenarios, see {@link #MAX_SCENARIOS}.
+ *
+ * @author Green Open Data
+ */
+final class QcSimulation {
+	/**
+	 * The distribution of the factors, the range is relative to the base value.
+	 */
+	enum Distribution {
+		UNIFORM("Uniform"),
+		TRIANGULAR("Triangular"),
+		/** The range is two standard deviations. */
+		NORMAL("Normal");
+
+		private final String m_label;
+
+		Distribution(final String label) {
+			m_label = label;
+		}
+
+		String getLabel() {
+			return m_label;
+		}
+
+		/**
+		 * @return the distribution of the settings value, UNIFORM if it is unknown.
+		 */
+		static Distribution fromSettings(final String value) {
+			for(Distribution d : values()) {
+				if (d.name().equals(value)) {
+					return d;
+				}
+			}
+			return UNIFORM;
+		}
+	}
+
+	/**
+	 * The statistics rows of the simulation result.
+	 */
+	static final String[] STATISTICS = { "base", "mean", "std_dev", "p05", "p50", "p95" };
+
+	/**
+	 * The maximum number of scenarios, their values take 8.8 MB.
+	 */
+	static final int MAX_SCENARIOS = 100000;
+
+	/**
+	 * Scenarios of one task.
+	 */
+	private static final int BLOCK_SIZE = 1024;
+
+	/**
+	 * The smallest yield factor, the material usage is divided by it.
+	 */
+	private static final double MIN_YIELD_FACTOR = 0.01;
+
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	private final int m_scenarios;
+	private final long m_seed;
+	private final Distribution m_distribution;
+	private final double m_priceRange;
+	private final double m_yieldRange;
+	private final double m_energyRange;
+	private final double m_systemRange;
+
+	/**
+	 * @param scenarios the number of scenarios.
+	 * @param seed the random seed.
+	 * @param distribution the distribution of factors.
+	 * @param priceRange the relative range of material and waste management unit prices, e.g. 0.1 for ±10%.
+	 * @param yieldRange the relative range of material yield.
+	 * @param energyRange the relative range of energy cost.
+	 * @param systemRange the relative range of system cost.
+	 */
+	QcSimulation(final int scenarios, final long seed, final Distribution distribution, final double priceRange,
+			final double yieldRange, final double energyRange, final double systemRange) {
+		m_scenarios = scenarios;
+		m_seed = seed;
+		m_distribution = distribution;
+		m_priceRange = priceRange;
+		m_yieldRange = yieldRange;
+		m_energyRange = energyRange;
+		m_systemRange = systemRange;
+	}
+
+	/**
+	 * Run the simulation.
+	 *
+	 * @param totals the totals of calculation with all material rows.
+	 * @param exec for progress and cancellation.
+	 * @return the calculation values of every statistics row, see {@link #STATISTICS}.
+	 */
+	double[][] run(final QcCalcAccumulator totals, final ExecutionMonitor exec) throws Exception {
+		/*
+		 * The values of all scenarios by column, every task writes its own range.
+		 */
+		final double[][] columns = new double[QcCalcAccumulator.VALUE_COUNT][m_scenarios];
+
+		/*
+		 * The base scenario is evaluated before the tasks, fixed-point totals are made doubles once 
+		 * and not by the tasks sharing them.
+		 */
+		final double[][] result = new double[STATISTICS.length][QcCalcAccumulator.VALUE_COUNT];
+		totals.evaluate(1, 1, 1, 1, 1, result[0]);
+
+		final ThreadPool pool = KNIMEConstants.GLOBAL_THREAD_POOL.createSubPool();
+		final List<Future<?>> tasks = new ArrayList<>();
+		try {
+			for(int from = 0; from < m_scenarios; from += BLOCK_SIZE) {
+				final int start = from;
+				final int end = Math.min(from + BLOCK_SIZE, m_scenarios);
+				tasks.add(pool.enqueue(() -> runBlock(totals, start, end, columns)));
+			}
+			for(int i = 0; i < tasks.size(); i++) {
+				final Future<?> task = tasks.get(i);
+				try {
+					pool.runInvisible(task::get);	//: The waiting thread gives its place in the pool to the blocks.
+				}
+				catch (ExecutionException e) {
+					final Throwable cause = (e.getCause() instanceof ExecutionException) ? e.getCause().getCause() 
+							: e.getCause();
+					if (cause instanceof Exception) {
+						throw (Exception) cause;
+					}
+					throw e;
+				}
+				exec.checkCanceled();
+				exec.setProgress((i + 1) / (double) tasks.size());
+			}
+		}
+		finally {
+			for(Future<?> task : tasks) {
+				task.cancel(true);	//: Only after a failure or cancel.
+			}
+		}
+
+		for(int c = 0; c < QcCalcAccumulator.VALUE_COUNT; c++) {
+			final double[] values = columns[c];
+
+			double sum = 0;
+			for(double v : values) {
+				sum += v;
+			}
+			final double mean = sum / values.length;
+			double squares = 0;
+			for(double v : values) {
+				squares += (v - mean) * (v - mean);
+			}
+
+			Arrays.sort(values);
+			result[1][c] = mean;
+			result[2][c] = values.length > 1 ? Math.sqrt(squares / (values.length - 1)) : 0;
+			result[3][c] = percentile(values, 0.05);
+			result[4][c] = percentile(values, 0.50);
+			result[5][c] = percentile(values, 0.95);
+		}
+		return result;
+	}
+
+	private void runBlock(final QcCalcAccumulator totals, final int from, final int to, final double[][] columns) {
+		final double[] values = new double[QcCalcAccumulator.VALUE_COUNT];
+		for(int s = from; s < to; s++) {
+			final SplittableRandom random = new SplittableRandom(m_seed + s * GOLDEN_GAMMA);
+			final double materialPrice = Math.max(0, factor(random, m_priceRange));
+			final double materialYield = Math.max(MIN_YIELD_FACTOR, factor(random, m_yieldRange));
+			final double energy = Math.max(0, factor(random, m_energyRange));
+			final double system = Math.max(0, factor(random, m_systemRange));
+			final double wastePrice = Math.max(0, factor(random, m_priceRange));
+
+			totals.evaluate(materialPrice, materialYield, energy, system, wastePrice, values);
+			for(int c = 0; c < values.length; c++) {
+				columns[c][s] = values[c];
+			}
+		}
+	}
+
+	/**
+	 * @return a random factor around 1 within the relative range.
+	 */
+	private double factor(final SplittableRandom random, final double range) {
+		switch (m_distribution) {
+		case TRIANGULAR:
+			return 1 + range * (random.nextDouble() - random.nextDouble());
+		case NORMAL:
+			return 1 + range / 2 * gaussian(random);
+		default:
+			return 1 + range * (2 * random.nextDouble() - 1);
+		}
+	}
+
+	/**
+	 * Standard normal value by the polar method.
+	 */
+	private static double gaussian(final SplittableRandom random) {
+		double u;
+		double v;
+		double s;
+		do {
+			u = 2 * random.nextDouble() - 1;
+			v = 2 * random.nextDouble() - 1;
+			s = u * u + v * v;
+		} while (s >= 1 || s == 0);
+		return u * Math.sqrt(-2 * Math.log(s) / s);
+	}
+
+	/**
+	 * Percentile of sorted values with linear interpolation between the closest ranks.
+	 */
+	private static double percentile(final double[] sorted, final double p) {
+		if (sorted.length == 0) {
+			return Double.NaN;
+		}
+		final double rank = p * (sorted.length - 1);
+		final int lower = (int) Math.floor(rank);
+		final int upper = Math.min(lower + 1, sorted.length - 1);
+		return sorted[lower] + (rank - lower) * (sorted[upper] - sorted[lower]);
+	}
+}
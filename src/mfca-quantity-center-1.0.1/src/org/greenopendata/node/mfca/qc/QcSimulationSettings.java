@@ -0,0 +1,169 @@
+package org.greenopendata.node.mfca.qc;
+
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelDoubleBounded;
+import org.knime.core.node.defaultnodesettings.SettingsModelInteger;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+
+/**
+ * The settings of Monte Carlo simulation, shared by the node model and the dialog. The workflows
+ * saved by earlier versions have none of these settings, the simulation is disabled for them.
+ *
+ * @author Green Open Data
+ */
+final class QcSimulationSettings {
+	private static final String KEY_ENABLED = "simulation_enabled";
+	private static final String KEY_SCENARIOS = "simulation_scenarios";
+	private static final String KEY_SEED = "simulation_seed";
+	private static final String KEY_DISTRIBUTION = "simulation_distribution";
+	private static final String KEY_PRICE_RANGE = "simulation_price_range";
+	private static final String KEY_YIELD_RANGE = "simulation_yield_range";
+	private static final String KEY_ENERGY_RANGE = "simulation_energy_range";
+	private static final String KEY_SYSTEM_RANGE = "simulation_system_range";
+
+	private static final int DEFAULT_SCENARIOS = 10000;
+	private static final int DEFAULT_SEED = 20240525;
+	private static final double DEFAULT_PRICE_RANGE = 10;
+	private static final double DEFAULT_YIELD_RANGE = 5;
+	private static final double DEFAULT_ENERGY_RANGE = 10;
+	private static final double DEFAULT_SYSTEM_RANGE = 10;
+
+	/**
+	 * The ranges are percentages, less than 100 so that a factor stays positive in uniform and
+	 * triangular distribution.
+	 */
+	private static final double MAX_RANGE = 99;
+
+	private final SettingsModelBoolean m_enabled = new SettingsModelBoolean(KEY_ENABLED, false);
+
+	private final SettingsModelIntegerBounded m_scenarios =
+			new SettingsModelIntegerBounded(KEY_SCENARIOS, DEFAULT_SCENARIOS, 1, QcSimulation.MAX_SCENARIOS);
+
+	private final SettingsModelInteger m_seed = new SettingsModelInteger(KEY_SEED, DEFAULT_SEED);
+
+	private final SettingsModelString m_distribution =
+			new SettingsModelString(KEY_DISTRIBUTION, QcSimulation.Distribution.UNIFORM.name());
+
+	private final SettingsModelDoubleBounded m_priceRange =
+			new SettingsModelDoubleBounded(KEY_PRICE_RANGE, DEFAULT_PRICE_RANGE, 0, MAX_RANGE);
+
+	private final SettingsModelDoubleBounded m_yieldRange =
+			new SettingsModelDoubleBounded(KEY_YIELD_RANGE, DEFAULT_YIELD_RANGE, 0, MAX_RANGE);
+
+	private final SettingsModelDoubleBounded m_energyRange =
+			new SettingsModelDoubleBounded(KEY_ENERGY_RANGE, DEFAULT_ENERGY_RANGE, 0, MAX_RANGE);
+
+	private final SettingsModelDoubleBounded m_systemRange =
+			new SettingsModelDoubleBounded(KEY_SYSTEM_RANGE, DEFAULT_SYSTEM_RANGE, 0, MAX_RANGE);
+
+	void saveSettingsTo(final NodeSettingsWO settings) {
+		m_enabled.saveSettingsTo(settings);
+		m_scenarios.saveSettingsTo(settings);
+		m_seed.saveSettingsTo(settings);
+		m_distribution.saveSettingsTo(settings);
+		m_priceRange.saveSettingsTo(settings);
+		m_yieldRange.saveSettingsTo(settings);
+		m_energyRange.saveSettingsTo(settings);
+		m_systemRange.saveSettingsTo(settings);
+	}
+
+	void validateSettings(final NodeSettingsRO settings) throws InvalidSettingsException {
+		if (!settings.containsKey(KEY_ENABLED)) {
+			return;
+		}
+		m_enabled.validateSettings(settings);
+		m_scenarios.validateSettings(settings);
+		m_seed.validateSettings(settings);
+		m_distribution.validateSettings(settings);
+		m_priceRange.validateSettings(settings);
+		m_yieldRange.validateSettings(settings);
+		m_energyRange.validateSettings(settings);
+		m_systemRange.validateSettings(settings);
+	}
+
+	void loadSettingsFrom(final NodeSettingsRO settings) throws InvalidSettingsException {
+		if (!settings.containsKey(KEY_ENABLED)) {
+			m_enabled.setBooleanValue(false);
+			m_scenarios.setIntValue(DEFAULT_SCENARIOS);
+			m_seed.setIntValue(DEFAULT_SEED);
+			m_distribution.setStringValue(QcSimulation.Distribution.UNIFORM.name());
+			m_priceRange.setDoubleValue(DEFAULT_PRICE_RANGE);
+			m_yieldRange.setDoubleValue(DEFAULT_YIELD_RANGE);
+			m_energyRange.setDoubleValue(DEFAULT_ENERGY_RANGE);
+			m_systemRange.setDoubleValue(DEFAULT_SYSTEM_RANGE);
+			return;
+		}
+		m_enabled.loadSettingsFrom(settings);
+		m_scenarios.loadSettingsFrom(settings);
+		m_seed.loadSettingsFrom(settings);
+		m_distribution.loadSettingsFrom(settings);
+		m_priceRange.loadSettingsFrom(settings);
+		m_yieldRange.loadSettingsFrom(settings);
+		m_energyRange.loadSettingsFrom(settings);
+		m_systemRange.loadSettingsFrom(settings);
+	}
+
+	/**
+	 * Add the settings which change the simulation result to the fingerprint, nothing if it is disabled.
+	 */
+	void addTo(final QcResultCache.Fingerprint fingerprint) {
+		if (!isEnabled()) {
+			fingerprint.add(0L);
+			return;
+		}
+		fingerprint.add(1L).add(m_scenarios.getIntValue()).add(m_seed.getIntValue())
+				.add(m_distribution.getStringValue()).add(m_priceRange.getDoubleValue())
+				.add(m_yieldRange.getDoubleValue()).add(m_energyRange.getDoubleValue())
+				.add(m_systemRange.getDoubleValue());
+	}
+
+	boolean isEnabled() {
+		return m_enabled.getBooleanValue();
+	}
+
+	/**
+	 * @return the simulation of current settings.
+	 */
+	QcSimulation createSimulation() {
+		return new QcSimulation(m_scenarios.getIntValue(), m_seed.getIntValue(),
+				QcSimulation.Distribution.fromSettings(m_distribution.getStringValue()),
+				m_priceRange.getDoubleValue() / 100, m_yieldRange.getDoubleValue() / 100,
+				m_energyRange.getDoubleValue() / 100, m_systemRange.getDoubleValue() / 100);
+	}
+
+	SettingsModelBoolean getEnabledModel() {
+		return m_enabled;
+	}
+
+	SettingsModelIntegerBounded getScenariosModel() {
+		return m_scenarios;
+	}
+
+	SettingsModelInteger getSeedModel() {
+		return m_seed;
+	}
+
+	SettingsModelString getDistributionModel() {
+		return m_distribution;
+	}
+
+	SettingsModelDoubleBounded getPriceRangeModel() {
+		return m_priceRange;
+	}
+
+	SettingsModelDoubleBounded getYieldRangeModel() {
+		return m_yieldRange;
+	}
+
+	SettingsModelDoubleBounded getEnergyRangeModel() {
+		return m_energyRange;
+	}
+
+	SettingsModelDoubleBounded getSystemRangeModel() {
+		return m_systemRange;
+	}
+}
@@ -0,0 +1,222 @@
+package org.greenopendata.node.mfca.qc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.greenopendata.mfca.qc.mi.MaterialInputRowItem;
+import org.greenopendata.mfca.qc.po.ProductOutputRowItem;
+import org.greenopendata.mfca.qc.wt.WasteMgmtCostRowItem;
+import org.knime.core.node.InvalidSettingsException;
+
+/**
+ * The conversion of the units of material, waste and product quantities to kilogram, so that the
+ * material input, waste quantity, positive output and negative loss of the calculation are in the
+ * same unit and their balance is a mass balance.
+ *
+ * The table is compiled once per settings: every unit has a dense ID and the factor to kilogram by
+ * ID. The common mass units are built in, other units such as pieces are defined by one line each,
+ * {@code <unit> = <factor> [<unit>]}, the unit of the factor is kilogram if it is omitted, such as
+ * {@code pcs = 0.25} or {@code box = 12 pcs}. Units are compared ignoring case and surrounding
+ * spaces.
+ *
+ * A quantity is multiplied by the factor and its unit price divided by it, the cost stays the same.
+ *
+ * @author Green Open Data
+ */
+final class QcUnitConversion {
+	/**
+	 * The unit of the converted quantities.
+	 */
+	static final String BASE_UNIT = "kg";
+
+	private static final String[][] BUILT_IN = {
+		{ "1", "kg", "kgs", "kilogram", "kilograms" },
+		{ "0.001", "g", "gram", "grams" },
+		{ "0.000001", "mg", "milligram", "milligrams" },
+		{ "1000", "t", "ton", "tons", "tonne", "tonnes" },
+		{ "0.45359237", "lb", "lbs", "pound", "pounds" },
+		{ "0.028349523125", "oz", "ounce", "ounces" }
+	};
+
+	/**
+	 * The unit IDs by normalized unit name.
+	 */
+	private final Map<String, Integer> m_ids;
+
+	/**
+	 * The factors to kilogram by unit ID.
+	 */
+	private final double[] m_factors;
+
+	private QcUnitConversion(final Map<String, Integer> ids, final double[] factors) {
+		m_ids = ids;
+		m_factors = factors;
+	}
+
+	/**
+	 * Compile the built-in units and the units defined by the lines.
+	 *
+	 * @param definitions the unit definitions, one per line; empty lines and lines starting with #
+	 *            are ignored. A unit may be defined again, such as t for short ton.
+	 * @return the conversion table.
+	 * @throws InvalidSettingsException if a line is not a valid definition.
+	 */
+	static QcUnitConversion compile(final String definitions) throws InvalidSettingsException {
+		final Map<String, Integer> ids = new HashMap<>();
+		final List<Double> factors = new ArrayList<>();
+		for(String[] units : BUILT_IN) {
+			final double factor = Double.parseDouble(units[0]);
+			for(int i = 1; i < units.length; i++) {
+				define(ids, factors, units[i], factor);
+			}
+		}
+		final String[] lines = (definitions == null) ? new String[0] : definitions.split("\r?\n");
+		for(int n = 0; n < lines.length; n++) {
+			final String line = lines[n].trim();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			final int eq = line.indexOf('=');
+			final String[] value = (eq < 0) ? new String[0] : line.substring(eq + 1).trim().split("\\s+", 2);
+			if (eq <= 0 || value[0].isEmpty()) {
+				throw new InvalidSettingsException("Line " + (n + 1) + " of the units is not <unit> = <factor> [<unit>]: "
+						+ line);
+			}
+			double factor;
+			try {
+				factor = Double.parseDouble(value[0]);
+			}
+			catch (NumberFormatException e) {
+				throw new InvalidSettingsException("Line " + (n + 1) + " of the units has no valid factor: " + line, e);
+			}
+			if (value.length > 1) {
+				final Integer to = ids.get(normalize(value[1]));
+				if (to == null) {
+					throw new InvalidSettingsException("Line " + (n + 1) + " of the units converts to unknown unit "
+							+ value[1] + ", it must be defined on an earlier line.");
+				}
+				factor *= factors.get(to);
+			}
+			if (!(factor > 0) || Double.isInfinite(factor)) {
+				throw new InvalidSettingsException("Line " + (n + 1) + " of the units has no positive factor: " + line);
+			}
+			define(ids, factors, line.substring(0, eq), factor);
+		}
+
+		final double[] factorArray = new double[factors.size()];
+		for(int i = 0; i < factorArray.length; i++) {
+			factorArray[i] = factors.get(i);
+		}
+		return new QcUnitConversion(ids, factorArray);
+	}
+
+	private static void define(final Map<String, Integer> ids, final List<Double> factors, final String unit,
+			final double factor) {
+		final String name = normalize(unit);
+		final Integer id = ids.get(name);
+		if (id != null) {
+			factors.set(id, factor);
+		}
+		else {
+			ids.put(name, factors.size());
+			factors.add(factor);
+		}
+	}
+
+	private static String normalize(final String unit) {
+		return unit.trim().toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * @return the ID of the unit.
+	 * @throws IllegalArgumentException if the unit is not defined.
+	 */
+	int idOf(final String unit) {
+		Integer id = m_ids.get(unit);
+		if (id == null && unit != null) {
+			id = m_ids.get(normalize(unit));
+		}
+		if (id == null) {
+			throw new IllegalArgumentException("The unit \"" + unit
+					+ "\" can not be converted to kg, please define it in the units of the node settings.");
+		}
+		return id;
+	}
+
+	/**
+	 * @return the factor of the unit ID to kilogram.
+	 */
+	double getFactor(final int id) {
+		return m_factors[id];
+	}
+
+	/**
+	 * Add the factors to the fingerprint, the IDs are in the order of definition.
+	 */
+	void addTo(final QcResultCache.Fingerprint fingerprint) {
+		fingerprint.add(m_factors.length);
+		final List<String> names = new ArrayList<>(m_ids.keySet());
+		names.sort(null);
+		for(String name : names) {
+			fingerprint.add(name).add(m_factors[m_ids.get(name)]);
+		}
+	}
+
+	/**
+	 * Convert the quantities of the static material input, waste management and product output
+	 * items. Energy and system costs have no mass, they are not converted.
+	 *
+	 * @param model the decoded settings, not changed.
+	 * @return a new model which shares the energy and system cost items.
+	 * @throws InvalidSettingsException if an item has a unit which is not defined.
+	 */
+	QcDecodedModel applyTo(final QcDecodedModel model) throws InvalidSettingsException {
+		try {
+			final List<MaterialInputRowItem> materialInput = new ArrayList<>();
+			for(MaterialInputRowItem r : model.getMaterialInputItems()) {
+				final double factor = getFactor(idOf(r.getUnit()));
+				final MaterialInputRowItem copy = (MaterialInputRowItem) r.clone();
+				copy.setUnit(BASE_UNIT);
+				copy.setUnitPrice(divide(r.getUnitPrice(), factor));
+				copy.setStdUsage(multiply(r.getStdUsage(), factor));
+				copy.setActUsage(multiply(r.getActUsage(), factor));
+				materialInput.add(copy);
+			}
+			final List<WasteMgmtCostRowItem> wasteMgmtCost = new ArrayList<>();
+			for(WasteMgmtCostRowItem r : model.getWasteMgmtCostItems()) {
+				final double factor = getFactor(idOf(r.getUnit()));
+				final WasteMgmtCostRowItem copy = (WasteMgmtCostRowItem) r.clone();
+				copy.setUnit(BASE_UNIT);
+				copy.setUnitPrice(divide(r.getUnitPrice(), factor));
+				copy.setQuantity(multiply(r.getQuantity(), factor));
+				wasteMgmtCost.add(copy);
+			}
+			final List<ProductOutputRowItem> productOutput = new ArrayList<>();
+			for(ProductOutputRowItem r : model.getProductOutputRowItems()) {
+				final double factor = getFactor(idOf(r.getUnit()));
+				final ProductOutputRowItem copy = (ProductOutputRowItem) r.clone();
+				copy.setUnit(BASE_UNIT);
+				copy.setUnitPrice(divide(r.getUnitPrice(), factor));
+				copy.setQuantityPass(multiply(r.getQuantityPass(), factor));
+				copy.setQuantityNG(multiply(r.getQuantityNG(), factor));
+				productOutput.add(copy);
+			}
+			return new QcDecodedModel(null, model.getProcess(), model.getNote(), model.getDisplayUnit(), materialInput,
+					productOutput, model.getEnergyCostItems(), model.getSystemCostItems(), wasteMgmtCost);
+		}
+		catch (IllegalArgumentException e) {
+			throw new InvalidSettingsException(e.getMessage(), e);
+		}
+	}
+
+	private static Double multiply(final Double value, final double factor) {
+		return (value != null) ? value * factor : null;
+	}
+
+	private static Double divide(final Double value, final double factor) {
+		return (value != null) ? value / factor : null;
+	}
+}
@@ -1,9 +1,30 @@
 package org.greenopendata.node.mfca.qc;
 
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.Toolkit;
+import java.awt.datatransfer.DataFlavor;
+import java.io.File;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.SwingWorker;
 
+import org.greenopendata.mfca.qc.QcInfoPane;
 import org.greenopendata.mfca.qc.QcSettingsPane;
 import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeLogger;
 import org.knime.core.node.NotConfigurableException;
 import org.knime.core.node.defaultnodesettings.DialogComponent;
 import org.knime.core.node.port.PortObjectSpec;
@@ -14,17 +35,158 @@ import org.knime.core.node.port.PortObjectSpec;
  * @author Mahler Chou, Green Open Data, 2024/4/8, 5/5, 5/25
  */
 public final class QuantityCenterDialogComponent extends DialogComponent {			
+	private static final NodeLogger LOGGER = NodeLogger.getLogger(QuantityCenterDialogComponent.class);
+	
 	private SettingsModelByteArray m_model_byte_array;
 	private QcSettingsPane m_pane = new QcSettingsPane();
 	
+	/**
+	 * The settings pane with the bulk import bar above it and the preview below it.
+	 */
+	private final JPanel m_panel = new JPanel(new BorderLayout());
+	
+	private final JComboBox<QcBulkImport.Target> m_importTarget = new JComboBox<>(QcBulkImport.Target.values());
+	private final JButton m_pasteButton = new JButton("Paste rows");
+	private final JButton m_fileButton = new JButton("Import file...");
+	private final JLabel m_importStatus = new JLabel();
+	
+	private final QcPreviewPanel m_preview = new QcPreviewPanel();
+	
+	/**
+	 * The import being parsed, null if there is none.
+	 */
+	private SwingWorker<QcBulkImport.Result, Void> m_import;
+	
 	public QuantityCenterDialogComponent(SettingsModelByteArray model) {		
 		super(model);
 		this.m_model_byte_array = model;
+		
+		JPanel importBar = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		importBar.add(new JLabel("Import into"));
+		importBar.add(m_importTarget);
+		importBar.add(m_pasteButton);
+		importBar.add(m_fileButton);
+		importBar.add(m_importStatus);
+		m_pasteButton.setToolTipText("Append the rows of delimited text in the clipboard, such as cells copied from a spreadsheet.");
+		m_fileButton.setToolTipText("Append the rows of a CSV file, the columns are the ones of the table.");
+		m_pasteButton.addActionListener(e -> pasteRows());
+		m_fileButton.addActionListener(e -> importFile());
+		
+		m_panel.add(importBar, BorderLayout.NORTH);
+		m_panel.add(m_pane, BorderLayout.CENTER);
+		m_panel.add(m_preview, BorderLayout.SOUTH);
 	}
 	
 	@Override
 	public JPanel getComponentPanel() {
-		return this.m_pane;
+		return this.m_panel;
+	}
+	
+	private void pasteRows() {
+		String text;
+		try {
+			text = (String) Toolkit.getDefaultToolkit().getSystemClipboard().getData(DataFlavor.stringFlavor);
+		}
+		catch (Exception e) {
+			m_importStatus.setText("The clipboard has no text.");
+			return;
+		}
+		startImport((QcBulkImport.Target) m_importTarget.getSelectedItem(), () -> new StringReader(text));
+	}
+	
+	private void importFile() {
+		JFileChooser chooser = new JFileChooser();
+		if (chooser.showOpenDialog(m_panel) != JFileChooser.APPROVE_OPTION) {
+			return;
+		}
+		File file = chooser.getSelectedFile();
+		startImport((QcBulkImport.Target) m_importTarget.getSelectedItem(), 
+				() -> Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * The text of an import, opened on the background thread.
+	 */
+	private interface TextSource {
+		Reader open() throws Exception;
+	}
+	
+	/**
+	 * Parse and validate the rows in background, they are appended on the EDT only if every 
+	 * line is valid. The settings pane is restored once with all rows, so the pane computes its 
+	 * totals once instead of once for every row.
+	 */
+	private void startImport(QcBulkImport.Target target, TextSource source) {
+		if (m_import != null) {
+			return;
+		}
+		m_pasteButton.setEnabled(false);
+		m_fileButton.setEnabled(false);
+		m_importStatus.setText("Reading the rows...");
+		m_import = new SwingWorker<QcBulkImport.Result, Void>() {
+			@Override
+			protected QcBulkImport.Result doInBackground() throws Exception {
+				try (Reader text = source.open()) {
+					return new QcBulkImport(target).parse(text, () -> {
+						if (isCancelled()) {
+							throw new CancellationException();
+						}
+					});
+				}
+			}
+			
+			@Override
+			protected void done() {
+				m_import = null;
+				m_pasteButton.setEnabled(true);
+				m_fileButton.setEnabled(true);
+				try {
+					applyImport(get());
+				}
+				catch (CancellationException | InterruptedException e) {
+					m_importStatus.setText("");
+				}
+				catch (ExecutionException e) {
+					LOGGER.warn("The rows can not be imported: " + e.getCause().getMessage(), e.getCause());
+					m_importStatus.setText("The rows can not be imported: " + e.getCause().getMessage());
+				}
+			}
+		};
+		m_import.execute();
+	}
+	
+	private void applyImport(QcBulkImport.Result result) {
+		if (!result.isValid()) {
+			m_importStatus.setText("Nothing imported, some lines are not valid.");
+			JOptionPane.showMessageDialog(m_panel, result.getErrorMessage(), "Import into " + result.getTarget(), 
+					JOptionPane.ERROR_MESSAGE);
+			return;
+		}
+		byte[] bArr = encodeSettings(m_pane);
+		try {
+			if (!QcSettingsCodec.isCompact(bArr)) {
+				throw new InvalidSettingsException("the settings pane has no process information.");
+			}
+			QcDecodedModel model = QcBulkImport.append(QcDecodedModel.decode(bArr), result);
+			restoreSettings(m_pane, QcSettingsCodec.encode(model));
+			m_preview.attach(m_pane);
+			m_importStatus.setText(result.getRows().size() + " rows imported into " + result.getTarget() + ".");
+		}
+		catch (InvalidSettingsException e) {
+			LOGGER.warn("The rows can not be imported: " + e.getMessage(), e);
+			m_importStatus.setText("The rows can not be imported: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Stop the preview and the import in progress when the dialog is closed, the dialog may be 
+	 * kept and opened again, then the preview is attached again by {@link #updateComponent()}.
+	 */
+	void onClose() {
+		m_preview.detach();
+		if (m_import != null) {
+			m_import.cancel(true);
+		}
 	}
 
 	/**
@@ -33,7 +195,25 @@ public final class QuantityCenterDialogComponent extends DialogComponent {
 	@Override
 	protected void updateComponent() {
 		byte[] bArr = m_model_byte_array.getByteArray();
-		this.m_pane.setQcSettingsByteArray(bArr);
+		restoreSettings(this.m_pane, bArr);
+		m_preview.attach(this.m_pane);
+	}
+	
+	/**
+	 * Restore the settings pane from the settings bytes, compact or legacy format.
+	 */
+	static void restoreSettings(QcSettingsPane pane, byte[] bArr) {
+		/*
+		 * The settings pane only knows the legacy format of QcSettingsModel.
+		 */
+		try {
+			bArr = QcSettingsCodec.toLegacy(bArr);
+		}
+		catch (InvalidSettingsException e) {
+			LOGGER.warn("The QC settings can not be restored: " + e.getMessage(), e);
+			bArr = null;
+		}
+		pane.setQcSettingsByteArray(bArr);
 	}
 
 	/**
@@ -46,7 +226,7 @@ public final class QuantityCenterDialogComponent extends DialogComponent {
 			 * Save the data stream in settings model by 
 			 * replace its origin byte array.
 			 */
-			byte[] bArr = m_pane.getQcSettingsByteArray();		
+			byte[] bArr = encodeSettings(m_pane);		
 			m_model_byte_array.setByteArray(bArr);			
 		}
 		else {
@@ -54,12 +234,62 @@ public final class QuantityCenterDialogComponent extends DialogComponent {
 		}
 	}
 	
+	/**
+	 * The field of the settings pane which keeps its info pane, the pane has no getter for it.
+	 * It is null if the field is not found, then the settings are saved in legacy format.
+	 */
+	private static final Field INFO_PANE_FIELD = findInfoPaneField();
+	
+	private static Field findInfoPaneField() {
+		try {
+			Field field = QcSettingsPane.class.getDeclaredField("qcInfoPane");
+			field.setAccessible(true);
+			return field;
+		}
+		catch (ReflectiveOperationException | RuntimeException e) {
+			LOGGER.warn("The info pane of QC settings pane is not found, the settings are saved in legacy format.", e);
+			return null;
+		}
+	}
+	
+	/**
+	 * Encode the settings of the pane in compact format. The process, note and unit are kept by 
+	 * the info pane of the settings pane, if it is not available the legacy format is saved.
+	 */
+	static byte[] encodeSettings(QcSettingsPane pane) {
+		QcInfoPane info = getInfoPane(pane);
+		if (info == null) {
+			return pane.getQcSettingsByteArray();
+		}
+		QcDecodedModel model = new QcDecodedModel(null, info.getProcessName(), info.getNote(), info.getUnit(),
+				pane.getMaterialInputRowItems(), pane.getProductOutputRowItems(), pane.getEnergyCostRowItems(),
+				pane.getSystemCostRowItems(), pane.getWasteMgmtCostRowItems());
+		return QcSettingsCodec.encode(model);
+	}
+	
+	/**
+	 * @return the info pane of the settings pane, or null if it is not available.
+	 */
+	private static QcInfoPane getInfoPane(QcSettingsPane pane) {
+		if (INFO_PANE_FIELD == null) {
+			return null;
+		}
+		try {
+			return (QcInfoPane) INFO_PANE_FIELD.get(pane);
+		}
+		catch (IllegalAccessException e) {
+			return null;
+		}
+	}
+	
 	@Override
 	protected void checkConfigurabilityBeforeLoad(PortObjectSpec[] specs) throws NotConfigurableException {
 	}
 
 	@Override
 	protected void setEnabledComponents(boolean enabled) {
+		m_pasteButton.setEnabled(enabled && m_import == null);
+		m_fileButton.setEnabled(enabled && m_import == null);
 	}
 
 	@Override
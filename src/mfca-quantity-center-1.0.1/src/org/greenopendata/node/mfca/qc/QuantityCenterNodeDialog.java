@@ -8,6 +8,7 @@ import javax.swing.BoxLayout;
 import javax.swing.JPanel;
 
 import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataValue;
 import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeDialogPane;
 import org.knime.core.node.NodeSettingsRO;
@@ -15,6 +16,14 @@ import org.knime.core.node.NodeSettingsWO;
 import org.knime.core.node.NotConfigurableException;
 import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
 import org.knime.core.node.defaultnodesettings.DialogComponent;
+import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
+import org.knime.core.node.defaultnodesettings.DialogComponentButtonGroup;
+import org.knime.core.node.defaultnodesettings.DialogComponentColumnNameSelection;
+import org.knime.core.node.defaultnodesettings.DialogComponentLabel;
+import org.knime.core.node.defaultnodesettings.DialogComponentMultiLineString;
+import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
+import org.knime.core.node.defaultnodesettings.DialogComponentString;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
 import org.knime.core.node.port.PortObjectSpec;
 
@@ -36,6 +45,8 @@ public class QuantityCenterNodeDialog extends NodeDialogPane {
 
 	private SettingsModelByteArray m_settingsModel;	
 
+	private final QuantityCenterDialogComponent m_qcPaneComponent;
+
 	/**
 	 * New dialog pane for configuring the node. The dialog created here
 	 * will show up when double clicking on a node in KNIME Analytics Platform.
@@ -50,10 +61,173 @@ public class QuantityCenterNodeDialog extends NodeDialogPane {
 		
 		this.m_settingsModel = QuantityCenterNodeModel.createByteArraySettingsModel();
 
-		QuantityCenterDialogComponent qcPaneComponent = new QuantityCenterDialogComponent(this.m_settingsModel);
+		m_qcPaneComponent = new QuantityCenterDialogComponent(this.m_settingsModel);
 						
-		m_dialogComponents.add(qcPaneComponent);
-		m_currentPanel.add(qcPaneComponent.getComponentPanel());
+		m_dialogComponents.add(m_qcPaneComponent);
+		m_currentPanel.add(m_qcPaneComponent.getComponentPanel());
+		
+		/*
+		 * The handling of the material input port.
+		 */
+		JPanel materialInputPanel = new JPanel();
+		materialInputPanel.setLayout(new BoxLayout(materialInputPanel, BoxLayout.Y_AXIS));
+		super.addTab("Material Input", materialInputPanel);
+		
+		QcMaterialInputBinding.MissingValuePolicy[] policies = QcMaterialInputBinding.MissingValuePolicy.values();
+		String[] policyLabels = new String[policies.length];
+		String[] policyNames = new String[policies.length];
+		for(int i=0; i<policies.length; ++i) {
+			policyLabels[i] = policies[i].getLabel();
+			policyNames[i] = policies[i].name();
+		}
+		DialogComponentButtonGroup missingValueComponent = new DialogComponentButtonGroup(
+				QuantityCenterNodeModel.createMissingValuePolicySettingsModel(), "Missing values", true, 
+				policyLabels, policyNames);
+		missingValueComponent.getComponentPanel().setBorder(BorderFactory.createTitledBorder("Material input rows with missing values"));
+		
+		m_dialogComponents.add(missingValueComponent);
+		materialInputPanel.add(missingValueComponent.getComponentPanel());
+		
+		@SuppressWarnings("unchecked")
+		DialogComponentColumnNameSelection groupColumnComponent = new DialogComponentColumnNameSelection(
+				QuantityCenterNodeModel.createGroupColumnSettingsModel(), "Group by column", 0, false, true, 
+				DataValue.class);
+		groupColumnComponent.setToolTipText("One calculation row for every value of the column, <none> for a single calculation row.");
+		
+		m_dialogComponents.add(groupColumnComponent);
+		materialInputPanel.add(groupColumnComponent.getComponentPanel());
+		
+		DialogComponentNumber groupMemoryComponent = new DialogComponentNumber(
+				QuantityCenterNodeModel.createGroupMemorySettingsModel(), "Memory for groups (MB, 0 = automatic)", 64);
+		groupMemoryComponent.setToolTipText("Beyond it the group totals are spilled to disk, automatic is a quarter of the maximum heap.");
+		
+		m_dialogComponents.add(groupMemoryComponent);
+		materialInputPanel.add(groupMemoryComponent.getComponentPanel());
+		
+		DialogComponentBoolean incrementalComponent = new DialogComponentBoolean(
+				QuantityCenterNodeModel.createIncrementalSettingsModel(), "Incremental: read only the rows appended since the last execution");
+		incrementalComponent.setToolTipText("For append-only material input, the rows before them must be unchanged. Can not be used with a group column.");
+		
+		m_dialogComponents.add(incrementalComponent);
+		materialInputPanel.add(incrementalComponent.getComponentPanel());
+		
+		QcCalcAccumulator.Arithmetic[] arithmetics = QcCalcAccumulator.Arithmetic.values();
+		String[] arithmeticLabels = new String[arithmetics.length];
+		String[] arithmeticNames = new String[arithmetics.length];
+		for(int i=0; i<arithmetics.length; ++i) {
+			arithmeticLabels[i] = arithmetics[i].getLabel();
+			arithmeticNames[i] = arithmetics[i].name();
+		}
+		DialogComponentButtonGroup arithmeticComponent = new DialogComponentButtonGroup(
+				QuantityCenterNodeModel.createArithmeticSettingsModel(), "Arithmetic", true, 
+				arithmeticLabels, arithmeticNames);
+		arithmeticComponent.getComponentPanel().setBorder(BorderFactory.createTitledBorder("Arithmetic of the totals"));
+		arithmeticComponent.setToolTipText("In fixed point every value is rounded to 6 fraction digits and summed exactly, the totals are the same for any number of threads.");
+		
+		m_dialogComponents.add(arithmeticComponent);
+		materialInputPanel.add(arithmeticComponent.getComponentPanel());
+		
+		createSimulationTab();
+		createOverridesTab();
+		createUnitsTab();
+    }
+    
+    /**
+     * The conversion of quantities to kg, the unit definitions are enabled only if the units are converted.
+     */
+    private void createUnitsTab() {
+		JPanel unitsPanel = new JPanel();
+		unitsPanel.setLayout(new BoxLayout(unitsPanel, BoxLayout.Y_AXIS));
+		super.addTab("Units", unitsPanel);
+		
+		final SettingsModelBoolean convertUnits = QuantityCenterNodeModel.createConvertUnitsSettingsModel();
+		final SettingsModelString unitDefinitions = QuantityCenterNodeModel.createUnitDefinitionsSettingsModel();
+		
+		DialogComponentBoolean convertComponent = new DialogComponentBoolean(convertUnits, 
+				"Convert material, waste and product quantities to kg");
+		convertComponent.setToolTipText("The balance is a mass balance. g, mg, t, lb and oz are built in.");
+		
+		DialogComponentMultiLineString definitionsComponent = new DialogComponentMultiLineString(unitDefinitions, 
+				"Other units, one per line: <unit> = <factor> [<unit>], such as pcs = 0.25 or box = 12 pcs", false, 40, 8);
+		
+		m_dialogComponents.add(convertComponent);
+		m_dialogComponents.add(definitionsComponent);
+		unitsPanel.add(convertComponent.getComponentPanel());
+		unitsPanel.add(definitionsComponent.getComponentPanel());
+		
+		convertUnits.addChangeListener(e -> unitDefinitions.setEnabled(convertUnits.getBooleanValue()));
+		unitDefinitions.setEnabled(convertUnits.getBooleanValue());
+    }
+    
+    /**
+     * The prefix of the flow variables which override the values of static items, see QcParameterOverrides.
+     */
+    private void createOverridesTab() {
+		JPanel overridesPanel = new JPanel();
+		overridesPanel.setLayout(new BoxLayout(overridesPanel, BoxLayout.Y_AXIS));
+		super.addTab("Overrides", overridesPanel);
+		
+		DialogComponentString prefixComponent = new DialogComponentString(
+				QuantityCenterNodeModel.createOverridePrefixSettingsModel(), "Flow variable prefix (empty = no override)", false, 20);
+		prefixComponent.setToolTipText("<html>A numeric flow variable &lt;prefix&gt;&lt;slot&gt;.&lt;item&gt; overrides a value of the items "
+				+ "with the part number or item name,<br>such as qc.material_price.P-100 for the prefix qc.</html>");
+		
+		m_dialogComponents.add(prefixComponent);
+		overridesPanel.add(prefixComponent.getComponentPanel());
+		
+		DialogComponentLabel slotsComponent = new DialogComponentLabel("<html>Slots: material_price, material_usage, "
+				+ "material_yield (%), product_price, product_pass, product_ng,<br>energy_price, energy_usage, "
+				+ "system_price, system_usage, waste_price, waste_quantity.</html>");
+		overridesPanel.add(slotsComponent.getComponentPanel());
+    }
+    
+    /**
+     * The Monte Carlo simulation settings, the other settings are enabled only if the simulation is enabled.
+     */
+    private void createSimulationTab() {
+		JPanel simulationPanel = new JPanel();
+		simulationPanel.setLayout(new BoxLayout(simulationPanel, BoxLayout.Y_AXIS));
+		super.addTab("Simulation", simulationPanel);
+		
+		final QcSimulationSettings simulation = new QcSimulationSettings();
+		
+		QcSimulation.Distribution[] distributions = QcSimulation.Distribution.values();
+		String[] distributionLabels = new String[distributions.length];
+		String[] distributionNames = new String[distributions.length];
+		for(int i=0; i<distributions.length; ++i) {
+			distributionLabels[i] = distributions[i].getLabel();
+			distributionNames[i] = distributions[i].name();
+		}
+		
+		List<DialogComponent> components = new ArrayList<DialogComponent>();
+		components.add(new DialogComponentBoolean(simulation.getEnabledModel(), "Enable Monte Carlo simulation"));
+		components.add(new DialogComponentNumber(simulation.getScenariosModel(), "Scenarios", 1000));
+		components.add(new DialogComponentNumber(simulation.getSeedModel(), "Random seed", 1));
+		components.add(new DialogComponentButtonGroup(simulation.getDistributionModel(), "Distribution", false, 
+				distributionLabels, distributionNames));
+		components.add(new DialogComponentNumber(simulation.getPriceRangeModel(), "Unit price range (± %)", 1.0));
+		components.add(new DialogComponentNumber(simulation.getYieldRangeModel(), "Material yield range (± %)", 1.0));
+		components.add(new DialogComponentNumber(simulation.getEnergyRangeModel(), "Energy cost range (± %)", 1.0));
+		components.add(new DialogComponentNumber(simulation.getSystemRangeModel(), "System cost range (± %)", 1.0));
+		
+		for(DialogComponent comp : components) {
+			m_dialogComponents.add(comp);
+			simulationPanel.add(comp.getComponentPanel());
+		}
+		
+		simulation.getEnabledModel().addChangeListener(e -> updateSimulationEnabled(simulation));
+		updateSimulationEnabled(simulation);
+    }
+    
+    private static void updateSimulationEnabled(final QcSimulationSettings simulation) {
+		final boolean enabled = simulation.getEnabledModel().getBooleanValue();
+		simulation.getScenariosModel().setEnabled(enabled);
+		simulation.getSeedModel().setEnabled(enabled);
+		simulation.getDistributionModel().setEnabled(enabled);
+		simulation.getPriceRangeModel().setEnabled(enabled);
+		simulation.getYieldRangeModel().setEnabled(enabled);
+		simulation.getEnergyRangeModel().setEnabled(enabled);
+		simulation.getSystemRangeModel().setEnabled(enabled);
     }
     
 	/**
@@ -99,6 +273,14 @@ public class QuantityCenterNodeDialog extends NodeDialogPane {
 		saveAdditionalSettingsTo(settings);
 	}
 
+	/**
+	 * Stop the preview and the import of the QC settings, a closed dialog schedules no calculation.
+	 */
+	@Override
+	public void onClose() {
+		m_qcPaneComponent.onClose();
+	}
+
 	/**
 	 * This method can be overridden to load additional settings. Override this
 	 * method if you have mixed input types (different port types). Alternatively,
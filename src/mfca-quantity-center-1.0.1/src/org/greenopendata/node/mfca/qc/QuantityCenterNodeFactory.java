@@ -27,8 +27,8 @@ public class QuantityCenterNodeFactory
      */
     @Override
     public int getNrNodeViews() {
-		// The number of views the node should have, in this cases there is none.
-        return 0;
+		// The number of views the node should have, the cost breakdown, material flow and raw data.
+        return 1;
     }
 
     /**
@@ -37,8 +37,8 @@ public class QuantityCenterNodeFactory
     @Override
     public NodeView<QuantityCenterNodeModel> createNodeView(final int viewIndex,
             final QuantityCenterNodeModel nodeModel) {
-		// We return null as this example node does not provide a view. Also see "getNrNodeViews()".
-		return null;
+		// There is only one view. Also see "getNrNodeViews()".
+		return new QuantityCenterNodeView(nodeModel);
     }
 
     /**
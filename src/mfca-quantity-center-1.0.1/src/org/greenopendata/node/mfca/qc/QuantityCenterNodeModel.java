@@ -4,25 +4,27 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
 import org.greenopendata.mfca.qc.QcCalcRowItem;
 import org.greenopendata.mfca.qc.QcRawItem;
 import org.greenopendata.mfca.qc.QcRawItemType;
-import org.greenopendata.mfca.qc.QcSettingsModel;
-import org.greenopendata.mfca.qc.mi.MaterialInputRowItem;
 import org.greenopendata.mfca.qc.po.ProductOutputRowItem;
 import org.knime.core.data.DataCell;
 import org.knime.core.data.DataColumnSpec;
 import org.knime.core.data.DataColumnSpecCreator;
 import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTableSpec;
-import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.data.container.filter.TableFilter;
 import org.knime.core.data.def.DefaultRow;
 import org.knime.core.data.def.DoubleCell;
 import org.knime.core.data.def.StringCell;
-import org.knime.core.node.BufferedDataContainer;
 import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.BufferedDataTableHolder;
 import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.ExecutionMonitor;
@@ -31,15 +33,32 @@ import org.knime.core.node.NodeLogger;
 import org.knime.core.node.NodeModel;
 import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
 import org.knime.core.node.port.PortTypeRegistry;
+import org.knime.core.node.streamable.BufferedDataTableRowOutput;
+import org.knime.core.node.streamable.InputPortRole;
+import org.knime.core.node.streamable.OutputPortRole;
+import org.knime.core.node.streamable.PartitionInfo;
+import org.knime.core.node.streamable.PortInput;
+import org.knime.core.node.streamable.PortObjectInput;
+import org.knime.core.node.streamable.PortOutput;
+import org.knime.core.node.streamable.RowInput;
+import org.knime.core.node.streamable.RowOutput;
+import org.knime.core.node.streamable.StreamableOperator;
+import org.knime.core.node.workflow.NodeContainer;
+import org.knime.core.node.workflow.NodeContext;
+import org.knime.core.node.workflow.VariableType;
 
 /**
  * This class defining Quantity Center node's configuration.
  *  
  * @author Mahler Chou 2024.5.6
  */
-public final class QuantityCenterNodeModel extends NodeModel {
+public final class QuantityCenterNodeModel extends NodeModel implements BufferedDataTableHolder {
     
     /**
 	 * The logger is used to print info/warning/error messages to the KNIME console
@@ -48,6 +67,11 @@ public final class QuantityCenterNodeModel extends NodeModel {
 	 */
 	private static final NodeLogger LOGGER = NodeLogger.getLogger(QuantityCenterNodeModel.class);
 
+	/**
+	 * The progress and cancellation are checked once every 1024 material rows.
+	 */
+	private static final int PROGRESS_INTERVAL_MASK = 1024 - 1;
+
 	/**
 	 * The configuration name of Quantity Center node.
 	 */
@@ -59,31 +83,146 @@ public final class QuantityCenterNodeModel extends NodeModel {
 	 */
 	private SettingsModelByteArray m_settings = createByteArraySettingsModel();
 	
+	/**
+	 * The configuration name of the missing value handling of material input.
+	 */
+	private static final String KEY_CNFG_MISSING_VALUE_POLICY = "missing_value_policy";
+	
+	/**
+	 * How the material input rows with missing cells are handled, see QcMaterialInputBinding.
+	 */
+	private final SettingsModelString m_missingValuePolicy = createMissingValuePolicySettingsModel();
+	
+	/**
+	 * The configuration name of the group column of material input.
+	 */
+	private static final String KEY_CNFG_GROUP_COLUMN = "group_column";
+	
+	/**
+	 * The material input column whose values group the calculation, empty if there is no group.
+	 */
+	private final SettingsModelString m_groupColumn = createGroupColumnSettingsModel();
+	
+	/**
+	 * The configuration name of the memory budget of groups.
+	 */
+	private static final String KEY_CNFG_GROUP_MEMORY = "group_memory_budget_mb";
+	
+	/**
+	 * The heap in MB for the totals of groups, beyond it they are spilled to disk. 0 for a quarter 
+	 * of the maximum heap.
+	 */
+	private final SettingsModelIntegerBounded m_groupMemory = createGroupMemorySettingsModel();
+	
+	/**
+	 * The Monte Carlo simulation settings, the Calculation port has the statistics of the 
+	 * simulated scenarios if the simulation is enabled.
+	 */
+	private final QcSimulationSettings m_simulation = new QcSimulationSettings();
+	
+	/**
+	 * The configuration name of the incremental mode.
+	 */
+	private static final String KEY_CNFG_INCREMENTAL = "incremental";
+	
+	/**
+	 * In incremental mode only the material rows appended since the last execution are read, 
+	 * see QcIncrementalCheckpoint.
+	 */
+	private final SettingsModelBoolean m_incremental = createIncrementalSettingsModel();
+	
+	/**
+	 * The configuration name of the prefix of override flow variables.
+	 */
+	private static final String KEY_CNFG_OVERRIDE_PREFIX = "override_prefix";
+	
+	/**
+	 * The numeric flow variables with this prefix override the values of static items, see 
+	 * QcParameterOverrides. Empty if nothing is overridden.
+	 */
+	private final SettingsModelString m_overridePrefix = createOverridePrefixSettingsModel();
+	
+	/**
+	 * The configuration names of the unit conversion.
+	 */
+	private static final String KEY_CNFG_CONVERT_UNITS = "convert_units";
+	private static final String KEY_CNFG_UNIT_DEFINITIONS = "unit_definitions";
+	
+	/**
+	 * If the quantities are converted to kg, so that the balance is a mass balance.
+	 */
+	private final SettingsModelBoolean m_convertUnits = createConvertUnitsSettingsModel();
+	
+	/**
+	 * The units besides the built-in mass units, one definition per line, see QcUnitConversion.
+	 */
+	private final SettingsModelString m_unitDefinitions = createUnitDefinitionsSettingsModel();
+	
+	/**
+	 * The configuration name of the arithmetic of the totals.
+	 */
+	private static final String KEY_CNFG_ARITHMETIC = "arithmetic";
+	
+	/**
+	 * The arithmetic of the running totals, see QcCalcAccumulator.Arithmetic. In fixed point the 
+	 * totals do not depend on the order of the rows.
+	 */
+	private final SettingsModelString m_arithmetic = createArithmeticSettingsModel();
+	
+	/**
+	 * The unit conversion compiled from the settings, null if the units are not converted.
+	 */
+	private QcUnitConversion m_units = null;
+	
 	/**
 	 * This is the QC settings pane model that will be marshaled from m_settings byte array.
-	 * Due to different stage of process, the object state changes.
+	 * It is decoded only when the settings bytes change, every execution reuses it.
+	 */
+	private QcDecodedModel m_qc_model = null;
+	
+	/**
+	 * The time of decoding m_qc_model, for the execution metrics.
+	 */
+	private long m_decodeNanos = 0;
+	
+	/**
+	 * The Calculation results of recent executions by content fingerprint, kept over resets and
+	 * saved in the node internals.
 	 */
-	private QcSettingsModel m_qc_model = null;
+	private final QcResultCache m_resultCache = new QcResultCache();
+	
+	/**
+	 * The checkpoint of the last incremental execution, null if there is none. It is kept over 
+	 * resets and saved in the node internals.
+	 */
+	private QcIncrementalCheckpoint m_checkpoint = null;
+	
+	/**
+	 * The Calculation and Raw Data tables of last execution for the view, null if the node is not 
+	 * executed or was executed in streaming mode. They are saved with the node as internal tables.
+	 */
+	private BufferedDataTable m_calculationTable = null;
+	private BufferedDataTable m_rawDataTable = null;
 		
 	/**
 	 * Constructor for the node model.
 	 */
 	protected QuantityCenterNodeModel() {
 		/**
-		 * There are four output ports and one input port. 
-		 * Input port  : Material Input (Optional)
+		 * There are four output ports and two input ports. 
+		 * Input ports : Material Input (Optional) and Unit Prices (Optional)
 		 * Output ports: Product Output, Negative Output, Calculation and Raw Data.
 		 */
 		super(createInPorts(), createOutPorts());		
 	}
 	
 	/**
-	 * In-Port would be material input port (optional)
+	 * In-Ports would be material input port (optional) and unit price port (optional)
 	 */
 	private static PortType[] createInPorts() {
 		PortType optionalType = PortTypeRegistry.getInstance().getPortType(BufferedDataTable.class, true);
-		PortType[] inPortList = new PortType[1];
-		inPortList[0] = optionalType;
+		PortType[] inPortList = new PortType[2];
+		Arrays.fill(inPortList, optionalType);
 		return inPortList;
 	}
 
@@ -105,6 +244,146 @@ public final class QuantityCenterNodeModel extends NodeModel {
 		return new SettingsModelByteArray(KEY_CNFG_QC);
 	}
 
+	/**
+	 * Create a settings model of the missing value handling of material input, failing by default 
+	 * as the earlier versions did.
+	 * @return a new SettingsModelString with the name of a MissingValuePolicy.
+	 */
+	static SettingsModelString createMissingValuePolicySettingsModel() {
+		return new SettingsModelString(KEY_CNFG_MISSING_VALUE_POLICY, QcMaterialInputBinding.MissingValuePolicy.FAIL.name());
+	}
+	
+	/**
+	 * Create a settings model of the group column of material input, no group by default.
+	 * @return a new SettingsModelString with the column name.
+	 */
+	static SettingsModelString createGroupColumnSettingsModel() {
+		return new SettingsModelString(KEY_CNFG_GROUP_COLUMN, "");
+	}
+	
+	/**
+	 * Create a settings model of the memory budget of groups in MB, automatic by default.
+	 * @return a new SettingsModelIntegerBounded.
+	 */
+	static SettingsModelIntegerBounded createGroupMemorySettingsModel() {
+		return new SettingsModelIntegerBounded(KEY_CNFG_GROUP_MEMORY, 0, 0, Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * Create a settings model of the incremental mode, disabled by default.
+	 * @return a new SettingsModelBoolean.
+	 */
+	static SettingsModelBoolean createIncrementalSettingsModel() {
+		return new SettingsModelBoolean(KEY_CNFG_INCREMENTAL, false);
+	}
+	
+	/**
+	 * Create a settings model of the prefix of override flow variables, no override by default.
+	 * @return a new SettingsModelString.
+	 */
+	static SettingsModelString createOverridePrefixSettingsModel() {
+		return new SettingsModelString(KEY_CNFG_OVERRIDE_PREFIX, "");
+	}
+	
+	/**
+	 * Create a settings model of the unit conversion, disabled by default.
+	 * @return a new SettingsModelBoolean.
+	 */
+	static SettingsModelBoolean createConvertUnitsSettingsModel() {
+		return new SettingsModelBoolean(KEY_CNFG_CONVERT_UNITS, false);
+	}
+	
+	/**
+	 * Create a settings model of the unit definitions, none besides the built-in units by default.
+	 * @return a new SettingsModelString.
+	 */
+	static SettingsModelString createUnitDefinitionsSettingsModel() {
+		return new SettingsModelString(KEY_CNFG_UNIT_DEFINITIONS, "");
+	}
+	
+	/**
+	 * Create a settings model of the arithmetic of the totals, floating point by default as the 
+	 * earlier versions did.
+	 * @return a new SettingsModelString with the name of an Arithmetic.
+	 */
+	static SettingsModelString createArithmeticSettingsModel() {
+		return new SettingsModelString(KEY_CNFG_ARITHMETIC, QcCalcAccumulator.Arithmetic.FLOATING_POINT.name());
+	}
+	
+	/**
+	 * @return the group column name, or null if the calculation is not grouped.
+	 */
+	private String getGroupColumn() {
+		String column = m_groupColumn.getStringValue();
+		return (column == null || column.isEmpty() || "<none>".equals(column)) ? null : column;
+	}
+	
+	/**
+	 * @return the memory budget of groups in bytes.
+	 */
+	private long getGroupMemoryBudget() {
+		final int megabytes = m_groupMemory.getIntValue();
+		return (megabytes > 0) ? (long) megabytes << 20 : Runtime.getRuntime().maxMemory() / 4;
+	}
+	
+	private QcMaterialInputBinding.MissingValuePolicy getMissingValuePolicy() {
+		return QcMaterialInputBinding.MissingValuePolicy.fromSettings(m_missingValuePolicy.getStringValue());
+	}
+	
+	private QcCalcAccumulator.Arithmetic getArithmetic() {
+		return QcCalcAccumulator.Arithmetic.fromSettings(m_arithmetic.getStringValue());
+	}
+	
+	/**
+	 * @return the overrides of the current flow variables, read again on every call because a loop 
+	 *         changes them without changing the settings.
+	 */
+	private QcParameterOverrides readOverrides() throws InvalidSettingsException {
+		final String prefix = m_overridePrefix.getStringValue();
+		if (prefix == null || prefix.isEmpty()) {
+			return QcParameterOverrides.NONE;
+		}
+		return QcParameterOverrides.read(prefix, getAvailableFlowVariables(VariableType.DoubleType.INSTANCE, 
+				VariableType.IntType.INSTANCE));
+	}
+	
+	/**
+	 * The key of everything an execution depends on besides the material rows. It is computed once 
+	 * per execution, the checkpoint keeps it and the result fingerprints start from it.
+	 * 
+	 * @param prices the unit price list, or null if the unit price port is not connected.
+	 * @return the fingerprint of the settings, overrides and unit prices.
+	 */
+	private byte[] createSettingsKey(final QcPriceIndex prices) throws InvalidSettingsException {
+		QcResultCache.Fingerprint fingerprint = new QcResultCache.Fingerprint();
+		fingerprint.add(m_settings.getByteArray()).add(getMissingValuePolicy().name()).add(getGroupColumn());
+		fingerprint.add(getArithmetic().name());
+		m_simulation.addTo(fingerprint);
+		readOverrides().addTo(fingerprint);
+		if (prices != null) {
+			prices.addTo(fingerprint);
+		}
+		else {
+			fingerprint.add(0L);
+		}
+		if (m_units != null) {
+			m_units.addTo(fingerprint);
+		}
+		else {
+			fingerprint.add(0L);
+		}
+		return fingerprint.finish();
+	}
+
+	/**
+	 * @return the index of the unit price table, built once for all nodes and executions with the 
+	 *         same table; null if the unit price port is not connected.
+	 */
+	private static QcPriceIndex getPriceIndex(final BufferedDataTable priceTable, final ExecutionContext exec) 
+			throws InvalidSettingsException, CanceledExecutionException {
+		return (priceTable != null) ? QcPriceIndex.of(priceTable, exec) : null;
+	}
+
 	/**
 	 * NODE CONFIGURATION 
 	 * 
@@ -120,19 +399,40 @@ public final class QuantityCenterNodeModel extends NodeModel {
 		 * execution of this node. I.e. this method precalculates the table spec of the
 		 * output table.
 		 */ 
+		if (m_simulation.isEnabled() && getGroupColumn() != null) {
+			throw new InvalidSettingsException("The simulation can not be used with a group column, please choose one of them.");
+		}
+		if (m_incremental.getBooleanValue() && getGroupColumn() != null) {
+			throw new InvalidSettingsException("The incremental mode can not be used with a group column, please choose one of them.");
+		}
 		if (inSpecs != null && inSpecs.length > 0) {
 			DataTableSpec inTableSpec = inSpecs[0];
 			if ( inTableSpec != null ) {
-				//: Check for material input table specs.
-				DataTableSpec materialInputTableSpec = createMaterialInputTableSpec();
-				String[] columnNames = materialInputTableSpec.getColumnNames();
-				for(String colName : columnNames) {
-					if (inTableSpec.findColumnIndex(colName) < 0) {
-						throw new InvalidSettingsException("A material input table must have column " + colName + ".");	
-					}
-				}
+				//: Check for material input columns, they are found by name and numbers must be numeric.
+				QcMaterialInputBinding.bind(inTableSpec, getMissingValuePolicy(), getGroupColumn());
 			}			
 		}
+		if (inSpecs != null && inSpecs.length > 1 && inSpecs[1] != null) {
+			//: The unit price table has part_no and numeric unit_price columns.
+			QcPriceIndex.checkSpec(inSpecs[1]);
+		}
+		
+		/*
+		 * The override flow variables are checked before execution, an override which matches no 
+		 * item is most likely a misspelled part number.
+		 */
+		final QcParameterOverrides overrides = readOverrides();
+		if (m_qc_model != null && !overrides.isEmpty()) {
+			overrides.applyTo(m_qc_model);
+			final Set<String> unmatched = overrides.getUnmatched(m_qc_model);
+			if (!unmatched.isEmpty()) {
+				setWarningMessage("The overrides match no item: " + String.join(", ", unmatched) + ".");
+			}
+		}
+		if (m_qc_model != null && m_units != null) {
+			//: Every static material, waste and product unit must be convertible.
+			m_units.applyTo(m_qc_model);
+		}
 		
 		/*
 		 * Creating the output table specification for output ports.
@@ -140,7 +440,7 @@ public final class QuantityCenterNodeModel extends NodeModel {
 		DataTableSpec[] outputTableSpec = new DataTableSpec[4];
 		outputTableSpec[0] = createProductOutputTableSpec();
 		outputTableSpec[1] = createNegativeOutputTableSpec();
-		outputTableSpec[2] = createCalculationTableSpec();
+		outputTableSpec[2] = createCalculationTableSpec(getGroupColumn() != null, m_simulation.isEnabled());
 		outputTableSpec[3] = createRawDataTableSpec();
 				
 		return outputTableSpec;
@@ -154,10 +454,12 @@ public final class QuantityCenterNodeModel extends NodeModel {
 	{
 		/*
 		 * The input data table to work with. The "inData" array will contain as many
-		 * input tables as specified in the constructor. In this case it can only be one
-		 * (see constructor).
+		 * input tables as specified in the constructor, the material input and the unit 
+		 * prices (see constructor).
 		 */
 		BufferedDataTable inputData = inData[0];
+		QcPriceIndex prices = getPriceIndex(inData[1], exec);
+		final byte[] settingsKey = createSettingsKey(prices);
 		
 		/*
 		 * Create the spec of the output table, for each double column of the input
@@ -167,222 +469,526 @@ public final class QuantityCenterNodeModel extends NodeModel {
 		DataTableSpec[] outputTableSpec = new DataTableSpec[4];
 		outputTableSpec[0] = createProductOutputTableSpec();
 		outputTableSpec[1] = createNegativeOutputTableSpec();
-		outputTableSpec[2] = createCalculationTableSpec();
+		outputTableSpec[2] = createCalculationTableSpec(getGroupColumn() != null, m_simulation.isEnabled());
 		outputTableSpec[3] = createRawDataTableSpec();		
 		
 		/*
 		 * The execution context provides storage capacity, in this case a
 		 * data container to which we will add rows sequentially. Note, this container
 		 * can handle arbitrary big data tables, it will buffer to disc if necessary.
-		 * The execution context is provided as an argument to the execute method by the
-		 * framework. Have a look at the methods of the "exec". There is a lot of
-		 * functionality to create and change data tables.
+		 * The containers are wrapped as row outputs, so that the normal execution and 
+		 * the streaming execution share the same code path.
 		 */
-		BufferedDataContainer[] containers = new BufferedDataContainer[4];
-		for(int i=0; i<containers.length; ++i) {
-			containers[i] = exec.createDataContainer(outputTableSpec[i]);
+		BufferedDataTableRowOutput[] rowOutputs = new BufferedDataTableRowOutput[4];
+		for(int i=0; i<rowOutputs.length; ++i) {
+			rowOutputs[i] = new BufferedDataTableRowOutput(exec.createDataContainer(outputTableSpec[i]));
 		}		
-				
-		if (this.m_qc_model == null) {
+		
+		/*
+		 * Only the bound material columns are read from the input table, the other columns of 
+		 * a wide upstream table are not decoded. The rows are read by a row cursor, on the columnar
+		 * table backend the numbers are read as primitive doubles. A large table is read in ranges
+		 * on the global thread pool, see QcParallelScan.
+		 */
+		QcMaterialRowSource rowInput = null;
+		QcParallelScan parallelScan = null;
+		QcMaterialInputBinding binding = null;
+		QcIncrementalCheckpoint resume = null;
+		if (inputData != null) {
+			binding = QcMaterialInputBinding.bind(inputData.getDataTableSpec(), getMissingValuePolicy(), getGroupColumn());
+			binding.setPriceIndex(prices);
+			binding.setUnitConversion(m_units);
+			
 			/*
-			 * Means m_qc_model instance not yet prepared by any configuration done by user.  
+			 * In incremental mode the rows before the watermark of last execution are not read again, 
+			 * if the settings and those rows are unchanged.
 			 */
-			throw new RuntimeException("Please configure the node before execute!");
+			if (m_incremental.getBooleanValue() && m_checkpoint != null) {
+				if (m_checkpoint.canResume(settingsKey, inputData, binding.getColumnIndices())) {
+					resume = m_checkpoint;
+					LOGGER.info("Continuing the calculation after material input row " + resume.getWatermark() + ".");
+				}
+				else {
+					LOGGER.info("The settings or the material input rows have changed, all rows are read again.");
+				}
+			}
+			long fromRow = (resume != null) ? resume.getWatermark() : 0;
+			if (QcParallelScan.isApplicable(inputData, fromRow, getMissingValuePolicy(), getGroupColumn())) {
+				parallelScan = new QcParallelScan(inputData, fromRow, binding, outputTableSpec[3]);
+			}
+			else {
+				rowInput = QcMaterialRowSource.of(inputData.cursor(new TableFilter.Builder()
+						.withFromRowIndex(fromRow)
+						.withMaterializeColumnIndices(binding.getColumnIndices()).build()));
+			}
 		}
-		else {			
-			/*
-			 * Starting the calculation of MFCA. 
-			 */
-			LOGGER.info("Executing QC node for process " + m_qc_model.getProcess() + ".");	
+		long materialRowCount = (inputData != null) ? inputData.size() - (resume != null ? resume.getWatermark() : 0) : 0;
+		QcIncrementalCheckpoint checkpoint = execute(rowInput, parallelScan, inputData, materialRowCount, binding, prices, 
+				settingsKey, resume, rowOutputs, exec);
+		if (inputData != null && m_incremental.getBooleanValue()) {
+			m_checkpoint = checkpoint.withPrefixChecksum(QcIncrementalCheckpoint.prefixChecksum(inputData, 
+					binding.getColumnIndices(), checkpoint.getWatermark()));
+		}
+		
+		/*
+		 * Once we are done, the row outputs are closed and we return their tables. Here we need
+		 * to return as many tables as we specified in the constructor.
+		 */		
+		BufferedDataTable[] outputTables = new BufferedDataTable[4];
+		for(int i=0; i<rowOutputs.length; ++i) {
+			outputTables[i] = rowOutputs[i].getDataTable();
+		}
+		m_calculationTable = outputTables[2];
+		m_rawDataTable = outputTables[3];
+		return outputTables;
+	}
 
-			/*
-			 * The inData[0] is material input from previous QC, this would blend into calculation.
-			 * But notice that "Material" in QC setting pane is static, but inData[0] is dynamic. 
-			 */
-			final ArrayList<MaterialInputRowItem> dynamicMtlInputList = new ArrayList<>();
-			if (inputData != null) {
-				/*
-				 * Get the row iterator over the input table which returns each row one-by-one
-				 * from the input table.
-				 */
-				CloseableRowIterator rowIterator = inputData.iterator();
+	/**
+	 * STREAMING EXECUTION
+	 * 
+	 * The material input is consumed row by row, the Raw Data rows are pushed as soon as 
+	 * the material rows arrive. The Calculation port needs all material rows, hence the
+	 * input port is not distributable. The unit prices are indexed before any material row.
+	 */
+	@Override
+	public InputPortRole[] getInputPortRoles() {
+		return new InputPortRole[] { InputPortRole.NONDISTRIBUTED_STREAMABLE, InputPortRole.NONDISTRIBUTED_NONSTREAMABLE };
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public OutputPortRole[] getOutputPortRoles() {
+		OutputPortRole[] outputPortRoles = new OutputPortRole[4];
+		Arrays.fill(outputPortRoles, OutputPortRole.NONDISTRIBUTED);
+		return outputPortRoles;
+	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public StreamableOperator createStreamableOperator(final PartitionInfo partitionInfo, 
+			final PortObjectSpec[] inSpecs) throws InvalidSettingsException {
+		return new StreamableOperator() {
+			@Override
+			public void runFinal(final PortInput[] inputs, final PortOutput[] outputs, final ExecutionContext exec) 
+					throws Exception {
 				/*
-				 * A counter for how many rows have already been processed. This is used to
-				 * calculate the progress of the node, which is displayed as a loading bar under
-				 * the node icon.
-				 */				
-				while (rowIterator.hasNext()) {
-					DataRow currentRow = rowIterator.next();
-
-					MaterialInputRowItem materialRowItem = new MaterialInputRowItem();
-					
-					//: Make it into QC material data row.
-					StringCell partNoCell = (StringCell) currentRow.getCell(0);
-					StringCell partNameCell = (StringCell) currentRow.getCell(1);
-					StringCell unitCell = (StringCell) currentRow.getCell(2);
-					DoubleCell priceCell = (DoubleCell) currentRow.getCell(3);
-					DoubleCell quantityCell = (DoubleCell) currentRow.getCell(4);
-					
-					materialRowItem.setSource("dynamic");
-					materialRowItem.setPartNo(partNoCell.getStringValue());
-					materialRowItem.setPartName(partNameCell.getStringValue());
-					materialRowItem.setUnit(unitCell.getStringValue());
-					materialRowItem.setUnitPrice(priceCell.getDoubleValue());
-					materialRowItem.setStdUsage(1.0);
-					materialRowItem.setYield(1.0);
-					materialRowItem.setActUsage(quantityCell.getDoubleValue());
-					
-					dynamicMtlInputList.add(materialRowItem);
-
-					exec.checkCanceled();	//: Check if user hit cancel.
-				}				
-			}
-			
-			/*
-			 * Output Port 0 - Positive Product
-			 */
-			{
-				List<ProductOutputRowItem> list0 = this.m_qc_model.getProductOutputRowItems();
-				int i=0;
-				for(ProductOutputRowItem r : list0) {
-					ArrayList<DataCell> cells = new ArrayList<DataCell>();
-					
-					cells.add(new StringCell(r.getPartNo()));
-					cells.add(new StringCell(r.getPartName()));
-					cells.add(new StringCell(r.getUnit()));
-					cells.add(new DoubleCell(r.getUnitPrice()));
-					cells.add(new DoubleCell(r.getQuantityPass()));
-					cells.add(new DoubleCell(r.getUnitPrice() * r.getQuantityPass()));
-					 
-					DataRow new_row = new DefaultRow(i + "", cells);
-					containers[0].addRowToTable(new_row);
-					++i;
-				}					
-				exec.setProgress(0.25);
+				 * The optional input ports are null when they are not connected.
+				 */
+				RowInput rowInput = (RowInput) inputs[0];
+				QcPriceIndex prices = getPriceIndex((inputs[1] != null) 
+						? (BufferedDataTable) ((PortObjectInput) inputs[1]).getPortObject() : null, exec);
+				QcMaterialInputBinding binding = (rowInput != null) 
+						? QcMaterialInputBinding.bind(rowInput.getDataTableSpec(), getMissingValuePolicy(), getGroupColumn()) 
+						: null;
+				if (binding != null) {
+					binding.setPriceIndex(prices);
+					binding.setUnitConversion(m_units);
+				}
+				RowOutput[] rowOutputs = new RowOutput[outputs.length];
+				for(int i=0; i<outputs.length; ++i) {
+					rowOutputs[i] = (RowOutput) outputs[i];
+				}
+				execute((rowInput != null) ? QcMaterialRowSource.of(rowInput) : null, null, null, -1, binding, prices, 
+						createSettingsKey(prices), null, rowOutputs, exec);
 			}
+		};
+	}
 
+	/**
+	 * The execution shared by {@link #execute(BufferedDataTable[], ExecutionContext)} and the 
+	 * streamable operator. Every output is closed when this method returns normally.
+	 * 
+	 * @param inputData the material input rows, or null if the material input port is not connected or
+	 *            the rows are read by parallelScan.
+	 * @param parallelScan the scan of the material input rows in ranges, or null if they are read from
+	 *            inputData.
+	 * @param inputTable the buffered material input table, or null in streaming execution or if the 
+	 *            material input port is not connected. A cached result is found by its identity.
+	 * @param materialRowCount the number of rows of inputData for the progress, -1 if it is not known.
+	 * @param binding the material input columns, or null if there is no material input.
+	 * @param prices the unit price list, or null if the unit price port is not connected.
+	 * @param settingsKey the fingerprint of the settings, see {@link #createSettingsKey(QcPriceIndex)}.
+	 * @param resume the checkpoint of the rows before the rows read, or null if all rows are read.
+	 * @param portOutputs the row outputs for Product Output, Negative Loss, Calculation and Raw Data.
+	 * @param exec the execution context.
+	 * @return the checkpoint after the rows of inputData, without prefix checksum.
+	 */
+	private QcIncrementalCheckpoint execute(final QcMaterialRowSource inputData, final QcParallelScan parallelScan,
+			final BufferedDataTable inputTable, final long materialRowCount, final QcMaterialInputBinding binding, 
+			final QcPriceIndex prices, final byte[] settingsKey, final QcIncrementalCheckpoint resume, 
+			final RowOutput[] portOutputs, final ExecutionContext exec) throws Exception {
+		if (this.m_qc_model == null) {
 			/*
-			 * Output Port 1 - Negative Loss
+			 * Means m_qc_model instance not yet prepared by any configuration done by user.  
 			 */
-			{
-				List<ProductOutputRowItem> list0 = this.m_qc_model.getProductOutputRowItems();
-				int i=0;
-				for(ProductOutputRowItem r : list0) {
-					ArrayList<DataCell> cells = new ArrayList<DataCell>();
-					
-					cells.add(new StringCell(r.getPartNo()));
-					cells.add(new StringCell(r.getPartName()));
-					cells.add(new StringCell(r.getUnit()));
-					cells.add(new DoubleCell(r.getUnitPrice()));
-					cells.add(new DoubleCell(r.getQuantityNG()));
-					cells.add(new DoubleCell(r.getQuantityNG() * r.getUnitPrice()));
-					 
-					DataRow new_row = new DefaultRow(i + "", cells);
-					containers[1].addRowToTable(new_row);
-					++i;
-				}					
-				exec.setProgress(0.25);
+			throw new RuntimeException("Please configure the node before execute!");
+		}
+		
+		/*
+		 * The unit price list and the override flow variables are applied on a copy of the decoded 
+		 * settings, which are not decoded again when only the prices or flow variables change. 
+		 * An override is more specific than the price list, it is applied after it. Both are in 
+		 * the units of the items, the quantities are converted to kg last.
+		 */
+		final QcDecodedModel pricedModel = (prices != null) ? prices.applyTo(this.m_qc_model) : this.m_qc_model;
+		final QcDecodedModel overriddenModel = readOverrides().applyTo(pricedModel);
+		final QcDecodedModel qcModel = (m_units != null) ? m_units.applyTo(overriddenModel) : overriddenModel;
+		
+		/*
+		 * Starting the calculation of MFCA. 
+		 */
+		LOGGER.info("Executing QC node for process " + qcModel.getProcess() + ".");	
+
+		/*
+		 * The rows, bytes and time of every output port are counted on their way out.
+		 */
+		final QcExecutionMetrics metrics = new QcExecutionMetrics(getNodeName(), qcModel.getProcess(), m_decodeNanos);
+		final RowOutput[] outputs = new RowOutput[portOutputs.length];
+		for(int i=0; i<outputs.length; ++i) {
+			outputs[i] = metrics.count(i, portOutputs[i]);
+		}
+
+		/*
+		 * The QC settings are already decoded. The running totals of calculation are seeded 
+		 * with the static items, before any dynamic material row is added.
+		 */
+		final List<ProductOutputRowItem> productOutputItems = qcModel.getProductOutputRowItems();
+		final List<QcRawItem> staticRawItems = qcModel.getRawItems();
+		
+		final QcCalcAccumulator calcTotals = (resume != null) ? resume.createTotals() 
+				: qcModel.createCalcTotals(getArithmetic());
+		
+		/*
+		 * Only the groups and the simulation are worth to be skipped by a cached result, see 
+		 * QcResultCache. Their result is keyed by the fingerprint of everything the Calculation port 
+		 * depends on: the settings key and every material row as it is read. When the rows before 
+		 * the watermark are not read, they are represented by the fingerprint of the execution which 
+		 * read them. A buffered table already fingerprinted is found by its identity instead, and 
+		 * then its rows are neither fingerprinted nor grouped again.
+		 */
+		final boolean grouped = getGroupColumn() != null;
+		final boolean cacheable = grouped || m_simulation.isEnabled();
+		QcResultCache.Fingerprint fingerprint = null;
+		byte[] identity = null;
+		byte[] resultKey = null;
+		QcResultCache.Entry cachedResult = null;
+		if (cacheable) {
+			final byte[] resumeKey = (resume != null) ? resume.getResultKey() : null;
+			if (inputTable != null) {
+				identity = QcResultCache.identityOf(new QcResultCache.Fingerprint().add(settingsKey).add(resumeKey), 
+						inputTable, (resume != null) ? resume.getWatermark() : 0);
+				resultKey = m_resultCache.getFingerprint(identity);
+				cachedResult = (resultKey != null) ? m_resultCache.get(resultKey) : null;
+			}
+			if (cachedResult == null) {
+				resultKey = null;
+				fingerprint = new QcResultCache.Fingerprint().add(settingsKey);
+				if (resume != null) {
+					fingerprint.add(resumeKey);
+				}
 			}
+		}
+		long rowsRead = 0;
+		
+		/*
+		 * The repeated text cells are shared by all rows, and the rows of a port are built in one 
+		 * cell buffer, see QcCellCache.
+		 */
+		final QcCellCache cellCache = new QcCellCache();
+		final StringCell processCell = cellCache.get(qcModel.getProcess());
+		final DataCell[] productCells = new DataCell[6];
 
-			/*
-			 * Output Port 2 - Calculations
-			 */
-			{
-				/* GET THE CALCULATION FROM QC NODE, THE DYNAMIC MTL. FROM INPUT PORT */
-				ArrayList<QcCalcRowItem> calcResult = m_qc_model.calculate(dynamicMtlInputList);
-				
-				int i=0;
-				for(QcCalcRowItem r : calcResult) {
-					ArrayList<DataCell> cells = new ArrayList<DataCell>();
-					
-					cells.add(new StringCell(r.getProcess()));
-					cells.add(new DoubleCell(r.getMaterial_input()));
-					cells.add(new DoubleCell(r.getMaterial_cost()));
-					cells.add(new DoubleCell(r.getEnergy_cost()));
-					cells.add(new DoubleCell(r.getSystem_cost()));
-					cells.add(new DoubleCell(r.getWaste_quantity()));
-					cells.add(new DoubleCell(r.getWaste_cost()));
-					cells.add(new DoubleCell(r.getPositive_product()));
-					cells.add(new DoubleCell(r.getPositive_output_cost()));
-					cells.add(new DoubleCell(r.getNagative_loss()));
-					cells.add(new DoubleCell(r.getNagative_loss_cost()));
-					cells.add(new DoubleCell(r.getBalance()));
-					
-					DataRow new_row = new DefaultRow(i + "", cells);
-					containers[2].addRowToTable(new_row);
-					++i;
-				}									
+		/*
+		 * Output Port 0 - Positive Product
+		 * 
+		 * Product Output and Negative Loss only depend on the node settings, they are pushed 
+		 * before any material row is read so the following nodes can start right away.
+		 */
+		{
+			int i=0;
+			for(ProductOutputRowItem r : productOutputItems) {
+				productCells[0] = cellCache.get(r.getPartNo());
+				productCells[1] = cellCache.get(r.getPartName());
+				productCells[2] = cellCache.get(r.getUnit());
+				productCells[3] = new DoubleCell(r.getUnitPrice());
+				productCells[4] = new DoubleCell(r.getQuantityPass());
+				productCells[5] = new DoubleCell(r.getUnitPrice() * r.getQuantityPass());
+				 
+				DataRow new_row = new DefaultRow(QcCellCache.rowKey(i), productCells);
+				outputs[0].push(new_row);
+				++i;
+			}					
+			outputs[0].close();
+		}
+
+		/*
+		 * Output Port 1 - Negative Loss
+		 */
+		{
+			int i=0;
+			for(ProductOutputRowItem r : productOutputItems) {
+				productCells[0] = cellCache.get(r.getPartNo());
+				productCells[1] = cellCache.get(r.getPartName());
+				productCells[2] = cellCache.get(r.getUnit());
+				productCells[3] = new DoubleCell(r.getUnitPrice());
+				productCells[4] = new DoubleCell(r.getQuantityNG());
+				productCells[5] = new DoubleCell(r.getQuantityNG() * r.getUnitPrice());
+				 
+				DataRow new_row = new DefaultRow(QcCellCache.rowKey(i), productCells);
+				outputs[1].push(new_row);
+				++i;
+			}					
+			outputs[1].close();
+		}
+
+		/*
+		 * Output Port 3 - Raw Items (Dynamic Material Input)
+		 * 
+		 * The inputData is material input from previous QC, this would blend into calculation.
+		 * But notice that "Material" in QC setting pane is static, but inputData is dynamic.
+		 * This is the only pass over the material input: each row is read once, pushed to 
+		 * Raw Data and added to the running totals of calculation. Unit price and quantity 
+		 * are kept in primitive columns and summed by chunk. In group mode the rows are aggregated 
+		 * by group in background while the rows are being read. When the execution continues from 
+		 * a checkpoint, only the rows after the watermark are read and in Raw Data. A large buffered 
+		 * table is read by parallelScan instead, with the same rows and totals.
+		 * 
+		 * The input scan is most of the execution, its progress is by row and leaves the rest to 
+		 * the simulation if any.
+		 */
+		final double scanShare = m_simulation.isEnabled() ? 0.75 : 1.0;
+		QcGroupedCalculation groupedCalc = null;
+		Iterator<Map.Entry<String, QcCalcAccumulator>> groupTotals = null;
+		final long scanStart = System.nanoTime();
+		long calculationStart;
+		
+		long rowID=0;
+		final DataCell[] rawCells = new DataCell[8];
+		if (parallelScan != null) {
+			parallelScan.run(exec.createSubExecutionContext(scanShare), qcModel.getProcess(), calcTotals, fingerprint);
+			rowsRead = parallelScan.getRowsRead();
+			rowID = rowsRead;
+			metrics.addPortRows(3, rowsRead, parallelScan.getBytes());
+			exec.setProgress(scanShare);
+			metrics.addScanNanos(System.nanoTime() - scanStart);
+
+			calculationStart = System.nanoTime();
+			if (fingerprint != null) {
+				resultKey = fingerprint.add(rowID).finish();
+				cachedResult = m_resultCache.get(resultKey);
 			}
-			
-			/*
-			 * Output Port 3 - Raw Items
-			 */
-			{
-				int rowID=0;
-
-				//: Item from inTable (ie. Dynamic Material Input)
-				if (inputData != null) {
-					CloseableRowIterator rowIterator = inputData.iterator();
-					while(rowIterator.hasNext()) {
-						DataRow row = rowIterator.next();
-						
-						ArrayList<DataCell> cells = new ArrayList<DataCell>();
-						
-						cells.add(new StringCell(m_qc_model.getProcess()));
-						cells.add(new StringCell(QcRawItemType.DYNAMIC_MATERIAL_INPUT));
-						
-						cells.add(new StringCell(((StringCell) row.getCell(0)).getStringValue()));			// part_no
-						cells.add(new StringCell(((StringCell) row.getCell(1)).getStringValue()));			// part_name
-						cells.add(new StringCell(((StringCell) row.getCell(2)).getStringValue()));			// unit
-						cells.add(new DoubleCell(((DoubleCell) row.getCell(4)).getDoubleValue()));			// quantity
-						cells.add(new DoubleCell(((DoubleCell) row.getCell(3)).getDoubleValue()));			// unit_price
-						cells.add(new DoubleCell(
-								((DoubleCell) row.getCell(3)).getDoubleValue() *
-								((DoubleCell) row.getCell(4)).getDoubleValue()
-						));																					// monetary
-						
-						DataRow new_row = new DefaultRow(rowID + "", cells);
-						containers[3].addRowToTable(new_row);
-	
-						++rowID;
+		}
+		else if (inputData != null) {
+			final StringCell dynamicTypeCell = cellCache.get(QcRawItemType.DYNAMIC_MATERIAL_INPUT);
+			final QcMaterialColumns materialColumns = new QcMaterialColumns();
+			groupedCalc = (grouped && cachedResult == null) 
+					? new QcGroupedCalculation(getGroupMemoryBudget(), getArithmetic()) : null;
+			try {
+				while (inputData.forward()) {
+					if ((++rowsRead & PROGRESS_INTERVAL_MASK) == 0) {
+						reportScanProgress(exec, rowsRead, materialRowCount, scanShare);	//: Check if user hit cancel.
 					}
+					if (!inputData.read(binding)) {
+						continue;	//: The row with missing values is skipped.
 					}
+					final String partNo = binding.getPartNo();
+					final String partName = binding.getPartName();
+					final String unit = binding.getUnit();
+					final double unitPrice = binding.getUnitPrice();
+					final double quantity = binding.getQuantity();
+					if (fingerprint != null) {
+						fingerprint.addRow(binding);
+					}
+				
+					if (groupedCalc != null) {
+						groupedCalc.add(binding.getGroup(), unitPrice, quantity);
+					}
+					else if (!grouped && materialColumns.add(unitPrice, quantity)) {
+						materialColumns.flushTo(calcTotals);
+					}
+				
+					rawCells[0] = processCell;
+					rawCells[1] = dynamicTypeCell;
+				
+					rawCells[2] = cellCache.get(partNo);										// part_no
+					rawCells[3] = cellCache.get(partName);										// part_name
+					rawCells[4] = cellCache.get(unit);											// unit
+					rawCells[5] = new DoubleCell(quantity);										// quantity
+					rawCells[6] = new DoubleCell(unitPrice);									// unit_price
+					rawCells[7] = new DoubleCell(unitPrice * quantity);							// monetary
 				
-				//: Raw Item from QC Node
-				List<QcRawItem> list = this.m_qc_model.getRawItems();
-				for(QcRawItem r : list) {
-					ArrayList<DataCell> cells = new ArrayList<DataCell>();
-					
-					cells.add(new StringCell(r.getProcess()));
-					cells.add(new StringCell(r.getType()));
-					cells.add(new StringCell(r.getItemNo()));
-					cells.add(new StringCell(r.getItemName()));
-					cells.add(new StringCell(r.getUnit()));
-					cells.add(new DoubleCell(r.getQuantity()));
-					cells.add(new DoubleCell(r.getUnit_price()));
-					cells.add(new DoubleCell(r.getMonetary()));
-					 
-					DataRow new_row = new DefaultRow(rowID + "", cells);
-					containers[3].addRowToTable(new_row);
+					DataRow new_row = new DefaultRow(QcCellCache.rowKey(rowID), rawCells);
+					outputs[3].push(new_row);
 					++rowID;
-				}									
-			}								
+				}
+				materialColumns.flushTo(calcTotals);
+				exec.checkCanceled();
+				exec.setProgress(scanShare);
+				metrics.addScanNanos(System.nanoTime() - scanStart);
+				
+				calculationStart = System.nanoTime();
+				if (fingerprint != null) {
+					resultKey = fingerprint.add(rowID).finish();
+					cachedResult = m_resultCache.get(resultKey);
+				}
+				if (groupedCalc != null && cachedResult == null) {
+					groupTotals = groupedCalc.finish(qcModel);
+				}
+			}
+			finally {
+				if (groupedCalc != null && groupTotals == null) {
+					groupedCalc.cancel();	//: Otherwise the spilled groups are deleted after Calculation port.
+				}
+				inputData.close();	//: The cursor is released also when the execution fails.
+			}
+		}
+		else {
+			calculationStart = System.nanoTime();
+			if (fingerprint != null) {
+				resultKey = fingerprint.add(-1L).finish();
+				cachedResult = m_resultCache.get(resultKey);
+			}
+		}
+		if (identity != null && resultKey != null) {
+			m_resultCache.putFingerprint(identity, resultKey);
 		}
 		
 		/*
-		 * Once we are done, we close the container and return its table. Here we need
-		 * to return as many tables as we specified in the constructor. This node has
-		 * one output, hence return one table (wrapped in an array of tables).
+		 * The Raw Data rows of earlier incremental executions are not kept with the node, KNIME 
+		 * clears the output tables on reset, so Raw Data has only the rows after the watermark.
+		 */
+		final List<String> warnings = new ArrayList<String>();
+		if (binding != null && binding.getSkippedRows() > 0) {
+			warnings.add(binding.getSkippedRows() + " material input rows with missing values are skipped.");
+		}
+		if (resume != null) {
+			warnings.add("Incremental execution: Raw Data has only the " + rowsRead + " material input rows after row " 
+					+ resume.getWatermark() + ", the earlier rows are in the Calculation but not in Raw Data.");
+		}
+		if (!warnings.isEmpty()) {
+			setWarningMessage(String.join("\n", warnings));
+		}
+		
+		/*
+		 * Output Port 2 - Calculations
+		 */
+		try {
+			/* THE CALCULATION OF QC NODE, THE DYNAMIC MTL. FROM INPUT PORT ALREADY ADDED */
+			List<double[]> calcValues = null;	//: null if the rows are pushed while the groups are merged.
+			List<String> calcLabels = null;		//: The group or statistic of every row.
+			if (cachedResult != null) {
+				/* The same settings and material rows were calculated before. */
+				LOGGER.debug("The calculation of process " + qcModel.getProcess() + " is reused.");
+				calcValues = cachedResult.getValues();
+				calcLabels = cachedResult.getLabels();
+			}
+			else {
+				if (grouped && groupedCalc != null && groupedCalc.isSpilled()) {
+					/* 
+					 * Too many groups to be kept in memory, they are merged from disk while their rows 
+					 * are pushed and the result is not cached.
+					 */
+					LOGGER.info("The groups of process " + qcModel.getProcess() + " exceed the memory budget, they are merged from disk.");
+				}
+				else if (grouped) {
+					/* One row for every group, no row if there is no material input. */
+					calcValues = new ArrayList<double[]>();
+					calcLabels = new ArrayList<String>();
+					if (groupTotals != null) {
+						while (groupTotals.hasNext()) {
+							Map.Entry<String, QcCalcAccumulator> e = groupTotals.next();
+							calcLabels.add(e.getKey());
+							calcValues.add(e.getValue().getValues());
+						}
+					}
+				}
+				else if (m_simulation.isEnabled()) {
+					/* One row for every statistic of the simulated scenarios. */
+					calcValues = Arrays.asList(m_simulation.createSimulation().run(calcTotals, exec.createSubProgress(0.25)));
+					calcLabels = Arrays.asList(QcSimulation.STATISTICS);
+				}
+				else {
+					calcValues = Arrays.<double[]>asList(calcTotals.getValues());
+				}
+				if (calcValues != null && resultKey != null) {
+					m_resultCache.put(resultKey, calcLabels, calcValues);
+				}
+			}
+			metrics.addCalculationNanos(System.nanoTime() - calculationStart);
+			metrics.setCacheHit(cachedResult != null);
+			
+			int i=0;
+			if (calcValues != null) {
+				final DataCell[] calcCells = new DataCell[(calcLabels != null) ? 13 : 12];
+				for(double[] values : calcValues) {
+					StringCell label = (calcLabels != null) ? cellCache.get(calcLabels.get(i)) : null;
+					pushCalcRow(outputs[2], calcCells, i, qcModel.getProcess(), processCell, label, values);
+					++i;
+				}
+			}
+			else {
+				final DataCell[] calcCells = new DataCell[13];
+				while (groupTotals.hasNext()) {
+					Map.Entry<String, QcCalcAccumulator> e = groupTotals.next();
+					pushCalcRow(outputs[2], calcCells, i, qcModel.getProcess(), processCell, 
+							new StringCell(e.getKey()), e.getValue().getValues());
+					if ((++i & PROGRESS_INTERVAL_MASK) == 0) {
+						exec.checkCanceled();
+					}
+				}
+			}
+			outputs[2].close();
+		}
+		finally {
+			if (groupedCalc != null) {
+				groupedCalc.cancel();	//: Delete the spilled groups.
+			}
+		}
+		
+		/*
+		 * Output Port 3 - Raw Items (from QC Node)
 		 * 
-		 * Remember that container close first and then get data table.
-		 */		
-		BufferedDataTable[] outputTables = new BufferedDataTable[4];
-		for(int i=0; i<containers.length; ++i) {
-			containers[i].close();
-			outputTables[i] = containers[i].getTable();
+		 * After a parallel scan the static rows are one more table, concatenated after the tables 
+		 * of the ranges.
+		 */
+		{
+			final BufferedDataTableRowOutput staticRows = (parallelScan != null) 
+					? new BufferedDataTableRowOutput(exec.createDataContainer(createRawDataTableSpec())) : null;
+			final RowOutput rawOutput = (staticRows != null) ? metrics.count(3, staticRows) : outputs[3];
+			for(QcRawItem r : staticRawItems) {
+				rawCells[0] = cellCache.get(r.getProcess());
+				rawCells[1] = cellCache.get(r.getType());
+				rawCells[2] = cellCache.get(r.getItemNo());
+				rawCells[3] = cellCache.get(r.getItemName());
+				rawCells[4] = cellCache.get(r.getUnit());
+				rawCells[5] = new DoubleCell(r.getQuantity());
+				rawCells[6] = new DoubleCell(r.getUnit_price());
+				rawCells[7] = new DoubleCell(r.getMonetary());
+				 
+				DataRow new_row = new DefaultRow(QcCellCache.rowKey(rowID), rawCells);
+				rawOutput.push(new_row);
+				++rowID;
+			}									
+			rawOutput.close();
+			if (parallelScan != null) {
+				List<BufferedDataTable> rawTables = new ArrayList<BufferedDataTable>(parallelScan.getTables());
+				rawTables.add(staticRows.getDataTable());
+				//: The row keys of the ranges and the static rows are distinct by construction, they are not checked.
+				outputs[3].setFully(exec.createConcatenateTable(exec, Optional.empty(), false, 
+						rawTables.toArray(new BufferedDataTable[0])));
+			}
 		}
-		return outputTables;
+		
+		metrics.setMaterialRows(rowsRead);
+		metrics.finish();
+		publishMetrics(metrics);
+		
+		return new QcIncrementalCheckpoint(settingsKey, (resume != null ? resume.getWatermark() : 0) + rowsRead, 
+				null, resultKey, calcTotals);
 	}
 
 
@@ -399,6 +1005,15 @@ public final class QuantityCenterNodeModel extends NodeModel {
 		 * See the methods of the NodeSettingsWO.
 		 */				
 		this.m_settings.saveSettingsTo(settings);
+		this.m_missingValuePolicy.saveSettingsTo(settings);
+		this.m_groupColumn.saveSettingsTo(settings);
+		this.m_groupMemory.saveSettingsTo(settings);
+		this.m_simulation.saveSettingsTo(settings);
+		this.m_incremental.saveSettingsTo(settings);
+		this.m_overridePrefix.saveSettingsTo(settings);
+		this.m_convertUnits.saveSettingsTo(settings);
+		this.m_unitDefinitions.saveSettingsTo(settings);
+		this.m_arithmetic.saveSettingsTo(settings);
 		System.err.println("saveSettingsTo");
 	}
 
@@ -415,13 +1030,74 @@ public final class QuantityCenterNodeModel extends NodeModel {
 		 * (from the view) can be retrieved from the settings model.
 		 */
 		this.m_settings.loadSettingsFrom(settings);
+		
+		/*
+		 * The workflows saved by earlier versions have no missing value handling, they fail on missing values.
+		 */
+		if (settings.containsKey(KEY_CNFG_MISSING_VALUE_POLICY)) {
+			this.m_missingValuePolicy.loadSettingsFrom(settings);
+		}
+		else {
+			this.m_missingValuePolicy.setStringValue(QcMaterialInputBinding.MissingValuePolicy.FAIL.name());
+		}
+		if (settings.containsKey(KEY_CNFG_GROUP_COLUMN)) {
+			this.m_groupColumn.loadSettingsFrom(settings);
+		}
+		else {
+			this.m_groupColumn.setStringValue("");
+		}
+		if (settings.containsKey(KEY_CNFG_GROUP_MEMORY)) {
+			this.m_groupMemory.loadSettingsFrom(settings);
+		}
+		else {
+			this.m_groupMemory.setIntValue(0);
+		}
+		this.m_simulation.loadSettingsFrom(settings);
+		if (settings.containsKey(KEY_CNFG_INCREMENTAL)) {
+			this.m_incremental.loadSettingsFrom(settings);
+		}
+		else {
+			this.m_incremental.setBooleanValue(false);
+		}
+		if (settings.containsKey(KEY_CNFG_OVERRIDE_PREFIX)) {
+			this.m_overridePrefix.loadSettingsFrom(settings);
+		}
+		else {
+			this.m_overridePrefix.setStringValue("");
+		}
+		if (settings.containsKey(KEY_CNFG_CONVERT_UNITS)) {
+			this.m_convertUnits.loadSettingsFrom(settings);
+			this.m_unitDefinitions.loadSettingsFrom(settings);
+		}
+		else {
+			this.m_convertUnits.setBooleanValue(false);
+			this.m_unitDefinitions.setStringValue("");
+		}
+		if (settings.containsKey(KEY_CNFG_ARITHMETIC)) {
+			this.m_arithmetic.loadSettingsFrom(settings);
+		}
+		else {
+			this.m_arithmetic.setStringValue(QcCalcAccumulator.Arithmetic.FLOATING_POINT.name());
+		}
+		
+		/*
+		 * The unit conversion is compiled once per settings, not per execution.
+		 */
+		this.m_units = this.m_convertUnits.getBooleanValue() 
+				? QcUnitConversion.compile(this.m_unitDefinitions.getStringValue()) : null;
 	
 		/**
 		 * Marshal save byte array into object. This method will be called after user clicking 
-		 * node setting dialog "APPLY" or "OK" button.
+		 * node setting dialog "APPLY" or "OK" button, and also on every loop iteration whose 
+		 * settings are controlled by flow variables. The settings are decoded again only when 
+		 * the byte array is changed.
 		 */
 		final byte[] bArr = this.m_settings.getByteArray();
-		this.m_qc_model = QcSettingsModel.fromByteArray(bArr);		
+		if (this.m_qc_model == null || !this.m_qc_model.isDecodedFrom(bArr)) {
+			final long start = System.nanoTime();
+			this.m_qc_model = QcDecodedModel.decode(bArr);
+			this.m_decodeNanos = System.nanoTime() - start;
+		}
 	}
 
 	/**
@@ -436,6 +1112,30 @@ public final class QuantityCenterNodeModel extends NodeModel {
 		 * variables.
 		 */
 		this.m_settings.validateSettings(settings);
+		if (settings.containsKey(KEY_CNFG_MISSING_VALUE_POLICY)) {
+			this.m_missingValuePolicy.validateSettings(settings);
+		}
+		if (settings.containsKey(KEY_CNFG_GROUP_COLUMN)) {
+			this.m_groupColumn.validateSettings(settings);
+		}
+		if (settings.containsKey(KEY_CNFG_GROUP_MEMORY)) {
+			this.m_groupMemory.validateSettings(settings);
+		}
+		this.m_simulation.validateSettings(settings);
+		if (settings.containsKey(KEY_CNFG_INCREMENTAL)) {
+			this.m_incremental.validateSettings(settings);
+		}
+		if (settings.containsKey(KEY_CNFG_OVERRIDE_PREFIX)) {
+			this.m_overridePrefix.validateSettings(settings);
+		}
+		if (settings.containsKey(KEY_CNFG_CONVERT_UNITS)) {
+			this.m_convertUnits.validateSettings(settings);
+			this.m_unitDefinitions.validateSettings(settings);
+			QcUnitConversion.compile(settings.getString(KEY_CNFG_UNIT_DEFINITIONS));
+		}
+		if (settings.containsKey(KEY_CNFG_ARITHMETIC)) {
+			this.m_arithmetic.validateSettings(settings);
+		}
 	}
 
 	@Override
@@ -447,7 +1147,12 @@ public final class QuantityCenterNodeModel extends NodeModel {
 		 * method, models loaded in loadModelContent, and user settings set through
 		 * loadSettingsFrom - is all taken care of). Only load the internals
 		 * that need to be restored (e.g. data used by the views).
+		 * 
+		 * The cached Calculation results and the incremental checkpoint are restored, so the 
+		 * first execution after loading the workflow can reuse them.
 		 */
+		m_resultCache.load(nodeInternDir);
+		m_checkpoint = QcIncrementalCheckpoint.load(nodeInternDir);
 	}
 
 	@Override
@@ -460,6 +1165,10 @@ public final class QuantityCenterNodeModel extends NodeModel {
 		 * saveSettingsTo - is all taken care of). Save only the internals
 		 * that need to be preserved (e.g. data used by the views).
 		 */
+		m_resultCache.save(nodeInternDir);
+		if (m_checkpoint != null) {
+			m_checkpoint.save(nodeInternDir);
+		}
 	}
 
 	@Override
@@ -467,7 +1176,50 @@ public final class QuantityCenterNodeModel extends NodeModel {
 		/*
 		 * Code executed on a reset of the node. Models built during execute are cleared
 		 * and the data handled in loadInternals/saveInternals will be erased.
+		 * 
+		 * The cached Calculation results are kept on purpose, they are keyed by the content
+		 * of settings and material input, so a re-execution with the same content reuses them.
+		 * The incremental checkpoint is kept too, it is verified against the settings and the
+		 * material input of the next execution.
 		 */
+		m_calculationTable = null;
+		m_rawDataTable = null;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public BufferedDataTable[] getInternalTables() {
+		if (m_calculationTable == null || m_rawDataTable == null) {
+			return null;
+		}
+		return new BufferedDataTable[] { m_calculationTable, m_rawDataTable };
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setInternalTables(final BufferedDataTable[] tables) {
+		if (tables != null && tables.length == 2) {
+			m_calculationTable = tables[0];
+			m_rawDataTable = tables[1];
+		}
+	}
+	
+	/**
+	 * @return the Calculation table of last execution for the view, or null.
+	 */
+	BufferedDataTable getCalculationTable() {
+		return m_calculationTable;
+	}
+	
+	/**
+	 * @return the Raw Data table of last execution for the view, or null.
+	 */
+	BufferedDataTable getRawDataTable() {
+		return m_rawDataTable;
 	}
 	
 	/*==============================================================================================
@@ -475,29 +1227,83 @@ public final class QuantityCenterNodeModel extends NodeModel {
 	 *==============================================================================================*/
 
 	/**
-	 * DataTableSpec for Material Input.
-	 * @author Mahler Chou
-	 * @return Material Input data table spec.
+	 * Check for cancel and report the progress of the input scan, with the row number as message.
+	 * 
+	 * @param rows the number of material rows read.
+	 * @param total the number of material rows, -1 if it is not known as in streaming execution.
+	 * @param share the share of the input scan in the execution progress.
 	 */
-	private DataTableSpec createMaterialInputTableSpec() {
-		List<DataColumnSpec> columnSpecs = new ArrayList<>();
+	private static void reportScanProgress(final ExecutionMonitor exec, final long rows, final long total, 
+			final double share) throws CanceledExecutionException {
+		exec.checkCanceled();
+		if (total > 0) {
+			exec.setProgress(share * Math.min(rows, total) / total, () -> "Material row " + rows + " of " + total);
+		}
+		else {
+			exec.setMessage("Material row " + rows);
+		}
+	}
 
-		columnSpecs.add((new DataColumnSpecCreator("part_no", StringCell.TYPE)).createSpec());
-		columnSpecs.add((new DataColumnSpecCreator("part_name", StringCell.TYPE)).createSpec());
-		columnSpecs.add((new DataColumnSpecCreator("unit", StringCell.TYPE)).createSpec());
-		columnSpecs.add((new DataColumnSpecCreator("unit_price", DoubleCell.TYPE)).createSpec());
-		columnSpecs.add((new DataColumnSpecCreator("quantity", DoubleCell.TYPE)).createSpec());
+	/**
+	 * Push one row of Calculation port.
+	 * 
+	 * @param output the Calculation port.
+	 * @param cells the row buffer, 13 cells with a label and 12 without.
+	 * @param index the row index.
+	 * @param label the group or statistic cell of the row, null if there is no label column.
+	 * @param values the calculation values, see QcCalcAccumulator.
+	 */
+	private static void pushCalcRow(final RowOutput output, final DataCell[] cells, final int index, 
+			final String process, final StringCell processCell, final StringCell label, final double[] values) 
+			throws InterruptedException {
+		QcCalcRowItem r = QcCalcAccumulator.toCalcRowItem(process, values);
+		int c=0;
+		
+		cells[c++] = processCell;
+		if (label != null) {
+			cells[c++] = label;
+		}
+		cells[c++] = new DoubleCell(r.getMaterial_input());
+		cells[c++] = new DoubleCell(r.getMaterial_cost());
+		cells[c++] = new DoubleCell(r.getEnergy_cost());
+		cells[c++] = new DoubleCell(r.getSystem_cost());
+		cells[c++] = new DoubleCell(r.getWaste_quantity());
+		cells[c++] = new DoubleCell(r.getWaste_cost());
+		cells[c++] = new DoubleCell(r.getPositive_product());
+		cells[c++] = new DoubleCell(r.getPositive_output_cost());
+		cells[c++] = new DoubleCell(r.getNagative_loss());
+		cells[c++] = new DoubleCell(r.getNagative_loss_cost());
+		cells[c++] = new DoubleCell(r.getBalance());
+		
+		output.push(new DefaultRow(QcCellCache.rowKey(index), cells));
+	}
 
-		DataColumnSpec[] newColumnSpecsArray = columnSpecs.toArray(new DataColumnSpec[columnSpecs.size()]);		
-		return new DataTableSpec(newColumnSpecsArray);		
+	/**
+	 * Publish the metrics of an execution as flow variables, to JMX and to the log.
+	 */
+	private void publishMetrics(final QcExecutionMetrics metrics) {
+		for(Map.Entry<String, Double> e : metrics.toFlowVariables().entrySet()) {
+			pushFlowVariableDouble(e.getKey(), e.getValue());
+		}
+		QcMetricsRegistry.getInstance().record(metrics);
+		LOGGER.debug("Metrics of " + metrics);
 	}
-	
+
+	/**
+	 * @return the name and ID of the executing node, to tell the nodes apart in the metrics.
+	 */
+	private static String getNodeName() {
+		final NodeContext context = NodeContext.getContext();
+		final NodeContainer container = (context != null) ? context.getNodeContainer() : null;
+		return (container != null) ? container.getNameWithID() : "Quantity Center";
+	}
+
 	/**
 	 * DataTableSpec for Positive Output, this table should be viewed as material input to consequence node.
 	 * @author Mahler Chou
 	 * @return
 	 */
-	private DataTableSpec createProductOutputTableSpec() {
+	static DataTableSpec createProductOutputTableSpec() {
 		List<DataColumnSpec> columnSpecs = new ArrayList<>();
 
 		columnSpecs.add((new DataColumnSpecCreator("part_no", StringCell.TYPE)).createSpec());
@@ -511,7 +1317,7 @@ public final class QuantityCenterNodeModel extends NodeModel {
 		return new DataTableSpec(newColumnSpecsArray);
 	}
 		
-	private DataTableSpec createNegativeOutputTableSpec() {
+	static DataTableSpec createNegativeOutputTableSpec() {
 		List<DataColumnSpec> columnSpecs = new ArrayList<>();
 
 		columnSpecs.add((new DataColumnSpecCreator("part_no", StringCell.TYPE)).createSpec());
@@ -526,12 +1332,19 @@ public final class QuantityCenterNodeModel extends NodeModel {
 	}	 
 	
 	/**
-	 * The calculation table reveals the calculation results.
+	 * The calculation table reveals the calculation results, one row for every group in group mode 
+	 * and one row for every statistic in simulation mode.
 	 */
-	private DataTableSpec createCalculationTableSpec() {
+	static DataTableSpec createCalculationTableSpec(final boolean grouped, final boolean simulated) {
 		List<DataColumnSpec> columnSpecs = new ArrayList<>();
 
 		columnSpecs.add((new DataColumnSpecCreator("process", StringCell.TYPE)).createSpec());
+		if (grouped) {
+			columnSpecs.add((new DataColumnSpecCreator("group", StringCell.TYPE)).createSpec());
+		}
+		else if (simulated) {
+			columnSpecs.add((new DataColumnSpecCreator("statistic", StringCell.TYPE)).createSpec());
+		}
 		columnSpecs.add((new DataColumnSpecCreator("material_input", DoubleCell.TYPE)).createSpec());
 		columnSpecs.add((new DataColumnSpecCreator("material_cost", DoubleCell.TYPE)).createSpec());
 		columnSpecs.add((new DataColumnSpecCreator("energy_cost", DoubleCell.TYPE)).createSpec());
@@ -551,7 +1364,7 @@ public final class QuantityCenterNodeModel extends NodeModel {
 	/**
 	 * This will output the raw data for further data or report processing.
 	 */
-	private DataTableSpec createRawDataTableSpec() {
+	static DataTableSpec createRawDataTableSpec() {
 		List<DataColumnSpec> columnSpecs = new ArrayList<>();
 
 		columnSpecs.add((new DataColumnSpecCreator("process", StringCell.TYPE)).createSpec());
@@ -567,4 +1380,3 @@ public final class QuantityCenterNodeModel extends NodeModel {
 		return new DataTableSpec(newColumnSpecsArray);		
 	}
 }
-
@@ -4,7 +4,14 @@
  */
 package org.greenopendata.node.mfca.qc;
 
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import org.eclipse.core.runtime.Plugin;
+import org.knime.core.node.NodeLogger;
 import org.osgi.framework.BundleContext;
 
 /**
@@ -17,6 +24,8 @@ import org.osgi.framework.BundleContext;
  * @author Green Open Data
  */
 public class QuantityCenterNodePlugin extends Plugin {
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(QuantityCenterNodePlugin.class);
+
     // The shared instance.
     private static QuantityCenterNodePlugin plugin;
 
@@ -37,7 +46,7 @@ public class QuantityCenterNodePlugin extends Plugin {
     @Override
     public void start(final BundleContext context) throws Exception {
         super.start(context);
-
+        registerMetrics();
     }
 
     /**
@@ -48,10 +57,41 @@ public class QuantityCenterNodePlugin extends Plugin {
      */
     @Override
     public void stop(final BundleContext context) throws Exception {
+        unregisterMetrics();
         super.stop(context);
         plugin = null;
     }
 
+    /**
+     * Publish the metrics of Quantity Center executions by JMX, see QcMetricsMXBean. A failure only
+     * disables the JMX view, the nodes work without it.
+     */
+    private static void registerMetrics() {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(QcMetricsRegistry.OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(QcMetricsRegistry.getInstance(), name);
+            }
+        }
+        catch (JMException | SecurityException e) {
+            LOGGER.warn("The Quantity Center metrics can not be published by JMX: " + e.getMessage(), e);
+        }
+    }
+
+    private static void unregisterMetrics() {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(QcMetricsRegistry.OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        }
+        catch (JMException | SecurityException e) {
+            LOGGER.debug("The Quantity Center metrics can not be unregistered from JMX: " + e.getMessage(), e);
+        }
+    }
+
     /**
      * Returns the shared instance.
      * 
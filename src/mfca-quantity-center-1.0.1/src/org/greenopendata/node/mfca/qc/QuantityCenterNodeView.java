@@ -1,18 +1,39 @@
 package org.greenopendata.node.mfca.qc;
 
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.JScrollPane;
+import javax.swing.JTabbedPane;
+import javax.swing.JTable;
+import javax.swing.SwingWorker;
+
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.NodeLogger;
 import org.knime.core.node.NodeView;
 
 
 /**
- * This is an example implementation of the node view of the
- * "QuantityCenter" node.
+ * This is the node view of the "QuantityCenter" node: the cost breakdown and the material 
+ * flow of the Calculation port, and the Raw Data port.
  * 
- * As this example node does not have a view, this is just an empty stub of the 
- * NodeView class which not providing a real view pane.
+ * The costs are summed in background and the Raw Data rows are read by page only when they 
+ * are shown, so the view opens at once also for a very large result.
  *
  * @author Green Open Data
  */
 public class QuantityCenterNodeView extends NodeView<QuantityCenterNodeModel> {
+    
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(QuantityCenterNodeView.class);
+    
+    private final QcCostChartPanel m_breakdownPanel = new QcCostChartPanel(QcCostChartPanel.Mode.BREAKDOWN);
+    
+    private final QcCostChartPanel m_flowPanel = new QcCostChartPanel(QcCostChartPanel.Mode.FLOW);
+    
+    private final JTable m_rawDataTable = new JTable();
+    
+    private QcPagedTableModel m_rawDataModel = null;
+    
+    private SwingWorker<QcCostSummary, Void> m_summaryWorker = null;
 
     /**
      * Creates a new view.
@@ -21,9 +42,14 @@ public class QuantityCenterNodeView extends NodeView<QuantityCenterNodeModel> {
      */
     protected QuantityCenterNodeView(final QuantityCenterNodeModel nodeModel) {
         super(nodeModel);
-
-        // TODO instantiate the components of the view here.
-
+        
+        m_rawDataTable.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
+        
+        JTabbedPane tabs = new JTabbedPane();
+        tabs.addTab("Cost Breakdown", m_breakdownPanel);
+        tabs.addTab("Material Flow", m_flowPanel);
+        tabs.addTab("Raw Data", new JScrollPane(m_rawDataTable));
+        setComponent(tabs);
     }
 
     /**
@@ -31,16 +57,66 @@ public class QuantityCenterNodeView extends NodeView<QuantityCenterNodeModel> {
      */
     @Override
     protected void modelChanged() {
-
-        // TODO retrieve the new model from your nodemodel and 
-        // update the view.
         QuantityCenterNodeModel nodeModel = 
             (QuantityCenterNodeModel)getNodeModel();
         assert nodeModel != null;
         
-        // be aware of a possibly not executed nodeModel! The data you retrieve
-        // from your nodemodel could be null, emtpy, or invalid in any kind.
+        /*
+         * The node model is not executed yet if it has no tables.
+         */
+        stopUpdates();
+        final BufferedDataTable calculation = nodeModel.getCalculationTable();
+        final BufferedDataTable rawData = nodeModel.getRawDataTable();
+        
+        m_rawDataModel = new QcPagedTableModel(rawData);
+        m_rawDataTable.setModel(m_rawDataModel);
         
+        if (calculation == null) {
+            m_breakdownPanel.setSummary(null, "The node is not executed.");
+            m_flowPanel.setSummary(null, "The node is not executed.");
+            return;
+        }
+        m_breakdownPanel.setSummary(null, "Summing the costs…");
+        m_flowPanel.setSummary(null, "Summing the costs…");
+        final SwingWorker<QcCostSummary, Void> worker = new SwingWorker<QcCostSummary, Void>() {
+            @Override
+            protected QcCostSummary doInBackground() {
+                return QcCostSummary.of(calculation, rawData);
+            }
+            
+            @Override
+            protected void done() {
+                if (isCancelled() || m_summaryWorker != this) {
+                    return;
+                }
+                try {
+                    QcCostSummary summary = get();
+                    m_breakdownPanel.setSummary(summary, null);
+                    m_flowPanel.setSummary(summary, null);
+                }
+                catch (InterruptedException | ExecutionException e) {
+                    LOGGER.warn("The costs can not be summed: " + e.getMessage(), e);
+                    m_breakdownPanel.setSummary(null, "The costs can not be summed.");
+                    m_flowPanel.setSummary(null, "The costs can not be summed.");
+                }
+            }
+        };
+        m_summaryWorker = worker;
+        worker.execute();
+    }
+    
+    /**
+     * Stop the background work of the current model.
+     */
+    private void stopUpdates() {
+        if (m_summaryWorker != null) {
+            m_summaryWorker.cancel(true);
+            m_summaryWorker = null;
+        }
+        if (m_rawDataModel != null) {
+            m_rawDataModel.dispose();
+            m_rawDataModel = null;
+        }
     }
 
     /**
@@ -48,8 +124,8 @@ public class QuantityCenterNodeView extends NodeView<QuantityCenterNodeModel> {
      */
     @Override
     protected void onClose() {
-    
-        // TODO things to do when closing the view
+        stopUpdates();
+        m_rawDataTable.setModel(new QcPagedTableModel(null));
     }
 
     /**
@@ -57,9 +133,7 @@ public class QuantityCenterNodeView extends NodeView<QuantityCenterNodeModel> {
      */
     @Override
     protected void onOpen() {
-
-        // TODO things to do when opening the view
+        //: The view is filled by modelChanged(), which is called when the view is opened.
     }
 
 }
-
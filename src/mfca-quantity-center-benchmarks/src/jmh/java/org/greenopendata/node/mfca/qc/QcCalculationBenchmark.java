@@ -0,0 +1,100 @@
+package org.greenopendata.node.mfca.qc;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.greenopendata.mfca.qc.QcCalcRowItem;
+import org.greenopendata.mfca.qc.QcSettingsModel;
+import org.greenopendata.mfca.qc.mi.MaterialInputRowItem;
+import org.knime.core.node.InvalidSettingsException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The calculation of one Quantity Center over the dynamic material rows: QcSettingsModel.calculate()
+ * of mfca-commons over a list of row items, and the running totals of the node over chunks of
+ * primitive columns. Both are seeded with the same static items and give the same result.
+ *
+ * @author Green Open Data
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g" })
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class QcCalculationBenchmark {
+	/**
+	 * The static items of the settings, the same for every size of material rows.
+	 */
+	private static final int STATIC_ITEMS = 100;
+
+	@Param({ "10", "1000", "100000", "10000000" })
+	public int rows;
+
+	private QcSettingsModel m_settings;
+
+	private QcDecodedModel m_decoded;
+
+	private ArrayList<MaterialInputRowItem> m_items;
+
+	private double[] m_unitPrices;
+
+	private double[] m_quantities;
+
+	@Setup
+	public void setup() throws InvalidSettingsException {
+		m_settings = QcSyntheticData.settings("Calculation", STATIC_ITEMS);
+		m_decoded = QcDecodedModel.decode(m_settings.toByteArray());
+		m_items = QcSyntheticData.materialItems(rows);
+		m_unitPrices = new double[Math.min(rows, QcSyntheticData.POOL_SIZE)];
+		m_quantities = new double[m_unitPrices.length];
+		for(int i = 0; i < m_unitPrices.length; i++) {
+			m_unitPrices[i] = QcSyntheticData.unitPrice(i);
+			m_quantities[i] = QcSyntheticData.quantity(i);
+		}
+	}
+
+	@Benchmark
+	public ArrayList<QcCalcRowItem> commonsCalculate() {
+		return m_settings.calculate(m_items);
+	}
+
+	/**
+	 * The rows are added as the node reads them from the material input table, see
+	 * QuantityCenterNodeModel.execute().
+	 */
+	@Benchmark
+	public QcCalcRowItem columnarCalculate() {
+		return calculate(QcCalcAccumulator.Arithmetic.FLOATING_POINT);
+	}
+
+	@Benchmark
+	public QcCalcRowItem columnarCalculateFixedPoint() {
+		return calculate(QcCalcAccumulator.Arithmetic.FIXED_POINT);
+	}
+
+	private QcCalcRowItem calculate(final QcCalcAccumulator.Arithmetic arithmetic) {
+		final QcCalcAccumulator totals = m_decoded.createCalcTotals(arithmetic);
+		final QcMaterialColumns columns = new QcMaterialColumns();
+		for(int i = 0, p = 0; i < rows; i++) {
+			if (columns.add(m_unitPrices[p], m_quantities[p])) {
+				columns.flushTo(totals);
+			}
+			if (++p == m_unitPrices.length) {
+				p = 0;
+			}
+		}
+		columns.flushTo(totals);
+		return totals.toCalcRowItem(m_decoded.getProcess());
+	}
+}
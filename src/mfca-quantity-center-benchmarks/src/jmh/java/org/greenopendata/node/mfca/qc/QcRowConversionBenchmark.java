@@ -0,0 +1,100 @@
+package org.greenopendata.node.mfca.qc;
+
+import java.util.concurrent.TimeUnit;
+
+import org.greenopendata.mfca.qc.QcRawItemType;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.node.InvalidSettingsException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The per-row work of QuantityCenterNodeModel.execute() on the material input table: every row is
+ * read by the column binding and converted to a Raw Data row. The rows are consumed instead of
+ * written to a table, the table writing is measured end to end by the scale harness. The text
+ * cells and the row buffer are shared as in execute().
+ *
+ * The material rows have the mixed mass units of {@link QcSyntheticData#unit}, each in its own
+ * string as it is read from a table. The second benchmark converts them to the base unit.
+ *
+ * @author Green Open Data
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g" })
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class QcRowConversionBenchmark {
+	private static final String PROCESS = "Conversion";
+
+	@Param({ "10", "1000", "100000", "10000000" })
+	public int rows;
+
+	private DataRow[] m_pool;
+
+	private QcMaterialInputBinding m_binding;
+
+	private QcMaterialInputBinding m_convertingBinding;
+
+	@Setup
+	public void setup() throws InvalidSettingsException {
+		m_pool = QcSyntheticData.materialRowPool(rows);
+		m_binding = QcMaterialInputBinding.bind(QcSyntheticData.materialInputSpec(),
+				QcMaterialInputBinding.MissingValuePolicy.FAIL);
+		m_convertingBinding = m_binding.copy();
+		m_convertingBinding.setUnitConversion(QcUnitConversion.compile(""));
+	}
+
+	@Benchmark
+	public void readAndConvert(final Blackhole bh) {
+		convert(m_binding, bh);
+	}
+
+	@Benchmark
+	public void readAndConvertUnits(final Blackhole bh) {
+		convert(m_convertingBinding, bh);
+	}
+
+	/**
+	 * The loop body of the material rows in execute(), without the calculation and the fingerprint.
+	 */
+	private void convert(final QcMaterialInputBinding binding, final Blackhole bh) {
+		final QcCellCache cellCache = new QcCellCache();
+		final StringCell processCell = cellCache.get(PROCESS);
+		final StringCell dynamicTypeCell = cellCache.get(QcRawItemType.DYNAMIC_MATERIAL_INPUT);
+		final DataCell[] rawCells = new DataCell[8];
+		for(int i = 0, p = 0; i < rows; i++) {
+			binding.read(m_pool[p]);
+			if (++p == m_pool.length) {
+				p = 0;
+			}
+			final double unitPrice = binding.getUnitPrice();
+			final double quantity = binding.getQuantity();
+
+			rawCells[0] = processCell;
+			rawCells[1] = dynamicTypeCell;
+			rawCells[2] = cellCache.get(binding.getPartNo());
+			rawCells[3] = cellCache.get(binding.getPartName());
+			rawCells[4] = cellCache.get(binding.getUnit());
+			rawCells[5] = new DoubleCell(quantity);
+			rawCells[6] = new DoubleCell(unitPrice);
+			rawCells[7] = new DoubleCell(unitPrice * quantity);
+			bh.consume(new DefaultRow(QcCellCache.rowKey(i), rawCells));
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package org.greenopendata.node.mfca.qc;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.greenopendata.mfca.qc.QcRawItem;
+import org.greenopendata.mfca.qc.QcSettingsModel;
+import org.knime.core.node.InvalidSettingsException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The QC settings of the node, serialized by the mfca-commons QcSettingsModel in the legacy format
+ * and by {@link QcSettingsCodec} in the compact format, and their raw items.
+ *
+ * The items are the material input items of the settings, the other tables have fewer items, see
+ * {@link QcSyntheticData#settings}. The legacy format is a Java serialization of the whole object
+ * graph, the largest size needs a heap of some GB.
+ *
+ * @author Green Open Data
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx6g" })
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class QcSettingsBenchmark {
+	@Param({ "10", "1000", "100000", "1000000" })
+	public int items;
+
+	private QcSettingsModel m_settings;
+
+	private byte[] m_legacyBytes;
+
+	private QcDecodedModel m_decoded;
+
+	private byte[] m_compactBytes;
+
+	@Setup
+	public void setup() throws InvalidSettingsException {
+		m_settings = QcSyntheticData.settings("Settings", items);
+		m_legacyBytes = m_settings.toByteArray();
+		m_decoded = QcDecodedModel.decode(m_legacyBytes);
+		m_compactBytes = QcSettingsCodec.encode(m_decoded);
+	}
+
+	@Benchmark
+	public byte[] legacyToByteArray() {
+		return m_settings.toByteArray();
+	}
+
+	@Benchmark
+	public QcSettingsModel legacyFromByteArray() {
+		return QcSettingsModel.fromByteArray(m_legacyBytes);
+	}
+
+	@Benchmark
+	public byte[] compactEncode() {
+		return QcSettingsCodec.encode(m_decoded);
+	}
+
+	@Benchmark
+	public QcDecodedModel compactDecode() throws InvalidSettingsException {
+		return QcSettingsCodec.decode(m_compactBytes);
+	}
+
+	/**
+	 * The raw items are made again from the settings tables on every call.
+	 */
+	@Benchmark
+	public List<QcRawItem> legacyGetRawItems() {
+		return m_settings.getRawItems();
+	}
+
+	/**
+	 * The raw items are made once when the settings are decoded, as the node does it when the
+	 * settings bytes change.
+	 */
+	@Benchmark
+	public List<QcRawItem> decodedGetRawItems() throws InvalidSettingsException {
+		return QcSettingsCodec.decode(m_compactBytes).getRawItems();
+	}
+}
@@ -0,0 +1,291 @@
+package org.greenopendata.node.mfca.qc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.filestore.internal.NotInWorkflowDataRepository;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.DefaultNodeProgressMonitor;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.KNIMEConstants;
+import org.knime.core.node.Node;
+import org.knime.core.node.NodeFactory;
+import org.knime.core.node.NodeModel;
+import org.knime.core.node.NodeSettings;
+import org.knime.core.node.workflow.FlowObjectStack;
+import org.knime.core.node.workflow.NodeID;
+import org.knime.core.node.workflow.SingleNodeContainer.MemoryPolicy;
+
+/**
+ * Headless end-to-end run of chained Quantity Centers on synthetic plants, for sizing the executors
+ * and finding the scaling cliffs before a release. No workbench and no display is needed: every
+ * Quantity Center is a {@link Node} of its own with its own flow variable stacks and
+ * ExecutionContext, as a workflow would create it, and its node model is configured and executed
+ * directly.
+ *
+ * A plant is a chain of stages with the same number of Quantity Centers each, the fan-out. The
+ * material input of a Quantity Center is the Product Output of every Quantity Center of the stage
+ * before, concatenated with the shared synthetic material rows. The first stage has only the
+ * synthetic rows.
+ *
+ * Every stage reports the wall-clock time of its Quantity Centers, the peak heap and the bytes
+ * spilled to the temp directory by the tables written in the stage. The peak heap is the sum of the peaks of the heap
+ * pools since the stage began, an upper bound of the used heap. The spilled bytes are the size
+ * of the files of a temp directory of this run; the tables are kept until the end of the run, as
+ * in a workflow, so the size only grows.
+ *
+ * <pre>
+ * qc-scale-harness [--stages N] [--fanout F] [--rows V] [--items I]
+ *   --stages  the number of stages of the chain, 10 by default
+ *   --fanout  the number of Quantity Centers of every stage, 1 by default
+ *   --rows    the number of synthetic material rows of every Quantity Center, 100000 by default
+ *   --items   the number of material input items of the QC settings, 20 by default
+ * </pre>
+ *
+ * @author Green Open Data
+ */
+public final class QcScaleHarness {
+	private int m_stages = 10;
+
+	private int m_fanout = 1;
+
+	private long m_rows = 100000;
+
+	private int m_items = 20;
+
+	private final List<MemoryPoolMXBean> m_heapPools = new ArrayList<>();
+
+	/**
+	 * The file stores and tables of all nodes of the plant, as the data repository of a workflow.
+	 */
+	private final NotInWorkflowDataRepository m_dataRepository = NotInWorkflowDataRepository.newInstance();
+
+	private QcScaleHarness() {
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				m_heapPools.add(pool);
+			}
+		}
+	}
+
+	public static void main(final String[] args) throws Exception {
+		System.setProperty("java.awt.headless", "true");
+		final QcScaleHarness harness = new QcScaleHarness();
+		harness.parse(args);
+		harness.run();
+	}
+
+	private void parse(final String[] args) {
+		for(int i = 0; i < args.length; i++) {
+			final String value = (i + 1 < args.length) ? args[i + 1] : null;
+			switch (args[i]) {
+			case "--stages":
+				m_stages = Integer.parseInt(value);
+				break;
+			case "--fanout":
+				m_fanout = Integer.parseInt(value);
+				break;
+			case "--rows":
+				m_rows = Long.parseLong(value);
+				break;
+			case "--items":
+				m_items = Integer.parseInt(value);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]
+						+ ", the options are --stages, --fanout, --rows and --items.");
+			}
+			i++;
+		}
+		if (m_stages < 1 || m_fanout < 1 || m_rows < 0 || m_items < 0) {
+			throw new IllegalArgumentException("The stages and the fan-out must be positive, the rows and the items not negative.");
+		}
+	}
+
+	private void run() throws Exception {
+		final File tempDir = Files.createTempDirectory(
+				new File(KNIMEConstants.getKNIMETempDir()).toPath(), "qc-scale-harness-").toFile();
+		KNIMEConstants.setKNIMETempDir(tempDir);
+
+		//: The synthetic rows and the concatenated inputs are owned by a node of their own.
+		final ExecutionContext exec = createExecutionContext(createNode(0));
+
+		System.out.printf(Locale.ROOT, "Plant: %d stages x %d Quantity Centers, %d material rows and %d settings items each%n",
+				m_stages, m_fanout, m_rows, m_items);
+		System.out.printf(Locale.ROOT, "Temp directory: %s%n", tempDir);
+		System.out.printf(Locale.ROOT, "%6s %12s %12s %14s %16s%n", "stage", "input rows", "wall ms", "peak heap MB",
+				"spilled MB");
+
+		//: Every table is cleared by the execution context of the node which created it.
+		final Map<BufferedDataTable, ExecutionContext> tables = new LinkedHashMap<>();
+		final long syntheticStart = directorySize(tempDir.toPath());
+		final BufferedDataTable synthetic = createMaterialTable(exec);
+		tables.put(synthetic, exec);
+		long spilled = directorySize(tempDir.toPath());
+		System.out.printf(Locale.ROOT, "%6s %12d %12s %14s %16.1f%n", "input", synthetic.size(), "", "",
+				(spilled - syntheticStart) / 1048576.0);
+
+		final long nodesStart = spilled;
+		long totalNanos = 0;
+		long peakHeap = 0;
+		BufferedDataTable[] upstream = new BufferedDataTable[0];
+		for(int stage = 0; stage < m_stages; stage++) {
+			/*
+			 * The concatenated input is a view of the tables, as the Concatenate node of a workflow
+			 * makes it, it is not timed with the Quantity Centers.
+			 */
+			final BufferedDataTable input;
+			if (upstream.length == 0) {
+				input = synthetic;
+			}
+			else {
+				final BufferedDataTable[] inputs = Arrays.copyOf(upstream, upstream.length + 1);
+				inputs[upstream.length] = synthetic;
+				input = exec.createConcatenateTable(exec, Optional.of("_"), true, inputs);
+				tables.put(input, exec);
+			}
+
+			final QuantityCenterNodeModel[] models = new QuantityCenterNodeModel[m_fanout];
+			final ExecutionContext[] execs = new ExecutionContext[m_fanout];
+			for(int i = 0; i < m_fanout; i++) {
+				final Node node = createNode(stage * m_fanout + i + 1);
+				models[i] = createNodeModel(node, stage, i);
+				execs[i] = createExecutionContext(node);
+			}
+
+			resetPeakHeap();
+			final long stageStart = System.nanoTime();
+			final BufferedDataTable[] products = new BufferedDataTable[m_fanout];
+			for(int i = 0; i < m_fanout; i++) {
+				final BufferedDataTable[] outputs = execute(models[i], input, execs[i]);
+				products[i] = outputs[0];
+				for(BufferedDataTable output : outputs) {
+					tables.put(output, execs[i]);
+				}
+			}
+			upstream = products;
+
+			final long wallNanos = System.nanoTime() - stageStart;
+			totalNanos += wallNanos;
+			final long stagePeakHeap = getPeakHeap();
+			peakHeap = Math.max(peakHeap, stagePeakHeap);
+			final long size = directorySize(tempDir.toPath());
+			System.out.printf(Locale.ROOT, "%6d %12d %12.1f %14.1f %16.1f%n", stage, input.size(), wallNanos / 1e6,
+					stagePeakHeap / 1048576.0, (size - spilled) / 1048576.0);
+			spilled = size;
+		}
+		System.out.printf(Locale.ROOT, "Quantity Centers: %.1f ms, peak heap %.1f MB, spilled %.1f MB%n",
+				totalNanos / 1e6, peakHeap / 1048576.0, (spilled - nodesStart) / 1048576.0);
+
+		for(Map.Entry<BufferedDataTable, ExecutionContext> table : tables.entrySet()) {
+			table.getValue().clearTable(table.getKey());
+		}
+	}
+
+	/**
+	 * @return the synthetic material rows shared by all Quantity Centers.
+	 */
+	private BufferedDataTable createMaterialTable(final ExecutionContext exec) {
+		final BufferedDataContainer container = exec.createDataContainer(QcSyntheticData.materialInputSpec());
+		for(long i = 0; i < m_rows; i++) {
+			container.addRowToTable(QcSyntheticData.materialRow(i));
+		}
+		container.close();
+		return container.getTable();
+	}
+
+	/**
+	 * @param id the ID of the node in the plant.
+	 * @return a Quantity Center node with empty flow variable stacks, a workflow gives them to
+	 *         every node before it is configured.
+	 */
+	private static Node createNode(final int id) {
+		@SuppressWarnings("unchecked")
+		final NodeFactory<NodeModel> factory = (NodeFactory<NodeModel>) (NodeFactory<?>) new QuantityCenterNodeFactory();
+		final Node node = new Node(factory);
+		final NodeID nodeID = new NodeID(NodeID.ROOTID, id);
+		node.setFlowObjectStack(new FlowObjectStack(nodeID), new FlowObjectStack(nodeID));
+		return node;
+	}
+
+	private ExecutionContext createExecutionContext(final Node node) {
+		return new ExecutionContext(new DefaultNodeProgressMonitor(), node, MemoryPolicy.CacheSmallInMemory,
+				m_dataRepository);
+	}
+
+	/**
+	 * @return the node model of the Quantity Center with the synthetic QC settings of its own
+	 *         process name.
+	 */
+	private QuantityCenterNodeModel createNodeModel(final Node node, final int stage, final int index)
+			throws Exception {
+		final QuantityCenterNodeModel model = (QuantityCenterNodeModel) node.getNodeModel();
+		final QcDecodedModel qc = QcDecodedModel.decode(
+				QcSyntheticData.settings("QC-" + stage + "-" + index, m_items).toByteArray());
+		final SettingsModelByteArray qcSettings = QuantityCenterNodeModel.createByteArraySettingsModel();
+		qcSettings.setByteArray(QcSettingsCodec.encode(qc));
+
+		final NodeSettings settings = new NodeSettings("model");
+		model.saveSettingsTo(settings);
+		qcSettings.saveSettingsTo(settings);
+		model.validateSettings(settings);
+		model.loadValidatedSettingsFrom(settings);
+		return model;
+	}
+
+	private static BufferedDataTable[] execute(final QuantityCenterNodeModel model, final BufferedDataTable input,
+			final ExecutionContext exec) throws Exception {
+		model.configure(new DataTableSpec[] { input.getDataTableSpec(), null });
+		return model.execute(new BufferedDataTable[] { input, null }, exec);
+	}
+
+	private void resetPeakHeap() {
+		for(MemoryPoolMXBean pool : m_heapPools) {
+			pool.resetPeakUsage();
+		}
+	}
+
+	private long getPeakHeap() {
+		long bytes = 0;
+		for(MemoryPoolMXBean pool : m_heapPools) {
+			bytes += pool.getPeakUsage().getUsed();
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return the bytes of the files in the directory and its subdirectories.
+	 */
+	private static long directorySize(final Path dir) throws IOException {
+		try (Stream<Path> files = Files.walk(dir)) {
+			return files.filter(Files::isRegularFile).mapToLong(f -> {
+				try {
+					return Files.size(f);
+				}
+				catch (IOException e) {
+					//: The file of a table may be deleted while the directory is walked.
+					if (!Files.exists(f)) {
+						return 0;
+					}
+					throw new UncheckedIOException(e);
+				}
+			}).sum();
+		}
+	}
+}
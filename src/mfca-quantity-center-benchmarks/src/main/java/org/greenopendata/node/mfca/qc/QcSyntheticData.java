@@ -0,0 +1,196 @@
+package org.greenopendata.node.mfca.qc;
+
+import java.util.ArrayList;
+
+import org.greenopendata.mfca.qc.QcSettingsModel;
+import org.greenopendata.mfca.qc.ec.EnergyCostRowItem;
+import org.greenopendata.mfca.qc.ec.EnergyCostTableModel;
+import org.greenopendata.mfca.qc.mi.MaterialInputRowItem;
+import org.greenopendata.mfca.qc.mi.MaterialInputTableModel;
+import org.greenopendata.mfca.qc.po.ProductOutputRowItem;
+import org.greenopendata.mfca.qc.po.ProductOutputTableModel;
+import org.greenopendata.mfca.qc.sc.SystemCostRowItem;
+import org.greenopendata.mfca.qc.sc.SystemCostTableModel;
+import org.greenopendata.mfca.qc.wt.WasteMgmtCostRowItem;
+import org.greenopendata.mfca.qc.wt.WasteMgmtCostTableModel;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.data.def.StringCell;
+
+/**
+ * Synthetic QC settings and material input rows of any size, the same for every run.
+ *
+ * The material rows repeat a pool of {@link #POOL_SIZE} distinct parts, so that millions of rows
+ * take the memory of the pool and the part numbers have the cardinality of a real plant. A material
+ * input table has the columns of the Product Output port, the product of one Quantity Center is a
+ * material of the next one.
+ *
+ * @author Green Open Data
+ */
+final class QcSyntheticData {
+	/**
+	 * The number of distinct parts of the material rows.
+	 */
+	static final int POOL_SIZE = 4096;
+
+	static final String UNIT = "kg";
+
+	/**
+	 * The unit texts of the material rows, all of them are mass units of the built-in conversion.
+	 */
+	private static final String[] MATERIAL_UNITS = { "kg", "g", "t", " KG " };
+
+	private QcSyntheticData() {
+	}
+
+	static String partNo(final long index) {
+		return "P" + (index % POOL_SIZE);
+	}
+
+	static String partName(final long index) {
+		return "Part " + (index % POOL_SIZE);
+	}
+
+	/**
+	 * @return the unit text of the material row, a new string as if it was read from a table.
+	 */
+	static String unit(final long index) {
+		return new String(MATERIAL_UNITS[(int) (index % MATERIAL_UNITS.length)]);
+	}
+
+	static double unitPrice(final long index) {
+		return 1 + (index % 97) * 0.25;
+	}
+
+	static double quantity(final long index) {
+		return 1 + (index % 13);
+	}
+
+	/**
+	 * @param process the process name.
+	 * @param items the number of material input items, the other tables have fewer items.
+	 * @return the QC settings of the items.
+	 */
+	static QcSettingsModel settings(final String process, final int items) {
+		final MaterialInputTableModel materials = new MaterialInputTableModel();
+		for(int i = 0; i < items; i++) {
+			final MaterialInputRowItem item = new MaterialInputRowItem();
+			item.setSource("Supplier " + (i % 7));
+			item.setPartNo(partNo(i));
+			item.setPartName(partName(i));
+			item.setUnit(UNIT);
+			item.setUnitPrice(unitPrice(i));
+			item.setStdUsage(quantity(i));
+			item.setYield(0.95);
+			item.setActUsage(quantity(i));
+			materials.addRow(item);
+		}
+
+		final ProductOutputTableModel products = new ProductOutputTableModel();
+		for(int i = 0; i < items / 4 + 1; i++) {
+			final ProductOutputRowItem item = new ProductOutputRowItem();
+			item.setPartNo(process + "-" + i);
+			item.setPartName(process + " product " + i);
+			item.setUnit(UNIT);
+			item.setUnitPrice(unitPrice(i) * 2);
+			item.setQuantityPass(quantity(i) * 0.9);
+			item.setQuantityNG(quantity(i) * 0.1);
+			products.addRow(item);
+		}
+
+		final EnergyCostTableModel energy = new EnergyCostTableModel();
+		final SystemCostTableModel system = new SystemCostTableModel();
+		final WasteMgmtCostTableModel waste = new WasteMgmtCostTableModel();
+		for(int i = 0; i < items / 10 + 1; i++) {
+			final EnergyCostRowItem e = new EnergyCostRowItem();
+			e.setItem("Energy " + i);
+			e.setUnit("kWh");
+			e.setUnitPrice(0.12);
+			e.setStdUsage(quantity(i) * 10);
+			e.setLoad(0.8);
+			e.setActUsage(quantity(i) * 10);
+			energy.addRow(e);
+
+			final SystemCostRowItem s = new SystemCostRowItem();
+			s.setItem("System " + i);
+			s.setUnit("h");
+			s.setUnitPrice(25.0);
+			s.setStdUsage(quantity(i));
+			s.setActUsage(quantity(i));
+			system.addRow(s);
+
+			final WasteMgmtCostRowItem w = new WasteMgmtCostRowItem();
+			w.setItem("Waste " + i);
+			w.setUnit(UNIT);
+			w.setUnitPrice(0.5);
+			w.setQuantity(quantity(i) * 0.05);
+			waste.addRow(w);
+		}
+		return new QcSettingsModel(process, "Synthetic", UNIT, materials, products, energy, system, waste);
+	}
+
+	/**
+	 * @param rows the number of rows.
+	 * @return the dynamic material rows as the items of QcSettingsModel.calculate(), the items of
+	 *         the pool are repeated.
+	 */
+	static ArrayList<MaterialInputRowItem> materialItems(final int rows) {
+		final MaterialInputRowItem[] pool = new MaterialInputRowItem[Math.min(rows, POOL_SIZE)];
+		for(int i = 0; i < pool.length; i++) {
+			final MaterialInputRowItem item = new MaterialInputRowItem();
+			item.setSource("Material input");
+			item.setPartNo(partNo(i));
+			item.setPartName(partName(i));
+			item.setUnit(UNIT);
+			item.setUnitPrice(unitPrice(i));
+			item.setStdUsage(quantity(i));
+			item.setYield(1.0);
+			item.setActUsage(quantity(i));
+			pool[i] = item;
+		}
+		final ArrayList<MaterialInputRowItem> items = new ArrayList<>(rows);
+		for(int i = 0; i < rows; i++) {
+			items.add(pool[i % pool.length]);
+		}
+		return items;
+	}
+
+	/**
+	 * @return the spec of a material input table, the same as the Product Output port.
+	 */
+	static DataTableSpec materialInputSpec() {
+		return QuantityCenterNodeModel.createProductOutputTableSpec();
+	}
+
+	/**
+	 * @param index the row index.
+	 * @return the material input row of the index, a new row with new cells.
+	 */
+	static DataRow materialRow(final long index) {
+		final double unitPrice = unitPrice(index);
+		final double quantity = quantity(index);
+		return new DefaultRow("m" + index, new DataCell[] {
+			new StringCell(partNo(index)),
+			new StringCell(partName(index)),
+			new StringCell(unit(index)),
+			new DoubleCell(unitPrice),
+			new DoubleCell(quantity),
+			new DoubleCell(unitPrice * quantity)
+		});
+	}
+
+	/**
+	 * @param rows the number of rows.
+	 * @return the material input rows of the pool, to be read repeatedly as a larger table.
+	 */
+	static DataRow[] materialRowPool(final int rows) {
+		final DataRow[] pool = new DataRow[Math.min(rows, POOL_SIZE)];
+		for(int i = 0; i < pool.length; i++) {
+			pool[i] = materialRow(i);
+		}
+		return pool;
+	}
+}
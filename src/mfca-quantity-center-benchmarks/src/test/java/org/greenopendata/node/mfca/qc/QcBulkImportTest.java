@@ -0,0 +1,58 @@
+package org.greenopendata.node.mfca.qc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.greenopendata.mfca.qc.ec.EnergyCostRowItem;
+import org.greenopendata.mfca.qc.mi.MaterialInputRowItem;
+import org.junit.jupiter.api.Test;
+
+/**
+ * A yield or a load of the bulk import is a fraction up to 1 or a percentage with the percent sign,
+ * a bare number above 1 is rejected.
+ *
+ * @author Green Open Data
+ */
+class QcBulkImportTest {
+	private static QcBulkImport.Result parse(final QcBulkImport.Target target, final String text) throws IOException {
+		return new QcBulkImport(target).parse(new StringReader(text), () -> {
+		});
+	}
+
+	private static double yield(final String value) throws IOException {
+		final QcBulkImport.Result result = parse(QcBulkImport.Target.MATERIAL_INPUT,
+				"P-100,Steel,kg,2.5,10," + value + ",10.5\n");
+		assertTrue(result.isValid(), result.getErrorMessage());
+		return ((MaterialInputRowItem) result.getRows().get(0)).getYield();
+	}
+
+	@Test
+	void yieldIsFractionOrPercentage() throws IOException {
+		assertEquals(0.95, yield("0.95"), 1e-12);
+		assertEquals(0.95, yield("95%"), 1e-12);
+		assertEquals(0.95, yield("95 %"), 1e-12);
+		assertEquals(1.0, yield("1"), 1e-12);
+	}
+
+	@Test
+	void bareYieldAboveOneIsRejected() throws IOException {
+		final QcBulkImport.Result result = parse(QcBulkImport.Target.MATERIAL_INPUT,
+				"P-100,Steel,kg,2.5,10,95,10.5\n");
+		assertFalse(result.isValid());
+		assertTrue(result.getRows().isEmpty());
+		assertTrue(result.getErrorMessage().contains("95%"), result.getErrorMessage());
+	}
+
+	@Test
+	void loadAboveOneNeedsPercentSign() throws IOException {
+		assertFalse(parse(QcBulkImport.Target.ENERGY_COST, "Furnace,kWh,0.12,100,1.2,120\n").isValid());
+
+		final QcBulkImport.Result result = parse(QcBulkImport.Target.ENERGY_COST, "Furnace,kWh,0.12,100,120%,120\n");
+		assertTrue(result.isValid(), result.getErrorMessage());
+		assertEquals(1.2, ((EnergyCostRowItem) result.getRows().get(0)).getLoad(), 1e-12);
+	}
+}
@@ -0,0 +1,73 @@
+package org.greenopendata.node.mfca.qc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.greenopendata.mfca.qc.QcRawItem;
+import org.greenopendata.mfca.qc.QcRawItemType;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The cost summary of a group-by execution is the cost of one execution without group column.
+ *
+ * @author Green Open Data
+ */
+class QcCostSummaryTest {
+	private static final String[] GROUPS = { "A", "B", "C" };
+
+	private static final int ROWS = 1000;
+
+	private static final double DELTA = 1e-6;
+
+	@Test
+	void groupedRawDataIsSummedAsOneExecution() throws Exception {
+		final QcDecodedModel model = QcDecodedModel.decode(QcSyntheticData.settings("Groups", 20).toByteArray());
+
+		//: One execution without group column.
+		final QcCalcAccumulator ungrouped = model.createCalcTotals();
+		for(int i = 0; i < ROWS; i++) {
+			ungrouped.addMaterial(QcSyntheticData.unitPrice(i), QcSyntheticData.quantity(i));
+		}
+		final QcCostSummary expected = QcCostSummary.of(ungrouped.getValues());
+
+		/*
+		 * The Raw Data of the group-by execution: the dynamic material rows of all groups, then the
+		 * static items once. Every group row of Calculation has the static items.
+		 */
+		final List<QcRawItem> rawData = new ArrayList<>();
+		final QcCalcAccumulator[] groups = new QcCalcAccumulator[GROUPS.length];
+		for(int g = 0; g < groups.length; g++) {
+			groups[g] = model.createCalcTotals();
+		}
+		for(int i = 0; i < ROWS; i++) {
+			final QcRawItem item = new QcRawItem();
+			item.setProcess("Groups");
+			item.setType(QcRawItemType.DYNAMIC_MATERIAL_INPUT);
+			item.setQuantity(QcSyntheticData.quantity(i));
+			item.setUnit_price(QcSyntheticData.unitPrice(i));
+			item.setMonetary(item.getQuantity() * item.getUnit_price());
+			rawData.add(item);
+			groups[i % GROUPS.length].addMaterial(item.getUnit_price(), item.getQuantity());
+		}
+		rawData.addAll(model.getRawItems());
+
+		final QcCostSummary actual = QcCostSummary.ofRawItems(rawData.iterator());
+		for(int c = 0; c < QcCostSummary.INPUT_LABELS.length; c++) {
+			assertEquals(expected.getInputCost(c), actual.getInputCost(c), DELTA, QcCostSummary.INPUT_LABELS[c]);
+		}
+		assertEquals(expected.getTotalCost(), actual.getTotalCost(), DELTA);
+		assertEquals(expected.getPositiveOutputCost(), actual.getPositiveOutputCost(), DELTA);
+		assertEquals(expected.getNegativeLossCost(), actual.getNegativeLossCost(), DELTA);
+
+		//: The sum of the group rows has the static energy cost once for every group.
+		double groupEnergyCost = 0;
+		for(QcCalcAccumulator totals : groups) {
+			groupEnergyCost += totals.getValues()[QcCalcAccumulator.ENERGY_COST];
+		}
+		assertTrue(expected.getInputCost(1) > 0);
+		assertEquals(GROUPS.length * expected.getInputCost(1), groupEnergyCost, DELTA);
+	}
+}